@@ -0,0 +1,118 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.ConcurrentCuckooFilter;
+import com.github.mfondo.CuckooFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalability of {@link ConcurrentCuckooFilter} against a {@link CuckooFilter} guarded by a single lock. The filter
+ * starts half full; each thread then adds and removes its own keys while all threads look up the initial keys. Vary
+ * the thread count with {@code -t}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ConcurrentCuckooFilterBenchmark {
+
+    public enum Implementation {
+        CONCURRENT,
+        SYNCHRONIZED
+    }
+
+    @State(Scope.Benchmark)
+    public static class Filled {
+
+        @Param({"1048576"})
+        public int numBuckets;
+
+        @Param({"CONCURRENT", "SYNCHRONIZED"})
+        public Implementation implementation;
+
+        ConcurrentCuckooFilter<Integer> concurrentFilter;
+        CuckooFilter<Integer> filter;
+        Integer[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            if(implementation == Implementation.CONCURRENT) {
+                concurrentFilter = new ConcurrentCuckooFilter<Integer>(4, numBuckets, 500, 16);
+            } else {
+                filter = new CuckooFilter<Integer>(4, numBuckets, 500, 16);
+            }
+            Random random = new Random(42);
+            keys = new Integer[numBuckets * 2];
+            for(int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextInt();
+                add(keys[i]);
+            }
+        }
+
+        boolean add(Integer key) {
+            if(concurrentFilter != null) {
+                return concurrentFilter.add(key);
+            }
+            synchronized(filter) {
+                return filter.add(key);
+            }
+        }
+
+        boolean remove(Integer key) {
+            if(concurrentFilter != null) {
+                return concurrentFilter.remove(key);
+            }
+            synchronized(filter) {
+                return filter.remove(key);
+            }
+        }
+
+        boolean contains(Integer key) {
+            if(concurrentFilter != null) {
+                return concurrentFilter.contains(key);
+            }
+            synchronized(filter) {
+                return filter.contains(key);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next = (int) Thread.currentThread().getId() * 7919;
+        int own = (int) Thread.currentThread().getId() << 20;
+
+        int next(int length) {
+            next = (next + 1) % length;
+            return next;
+        }
+    }
+
+    @Benchmark
+    public boolean contains(Filled filled, Cursor cursor) {
+        return filled.contains(filled.keys[cursor.next(filled.keys.length)]);
+    }
+
+    @Benchmark
+    public boolean addRemove(Filled filled, Cursor cursor) {
+        Integer key = cursor.own++;
+        return filled.add(key) && filled.remove(key);
+    }
+}
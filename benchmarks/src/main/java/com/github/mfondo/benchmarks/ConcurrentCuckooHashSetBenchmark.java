@@ -0,0 +1,95 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.ConcurrentCuckooHashSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read scalability of {@link ConcurrentCuckooHashSet} against a synchronized {@link HashSet} and a
+ * {@link ConcurrentHashMap} backed set. Vary the thread count with {@code -t}, for example {@code -t 1}, {@code -t 8},
+ * {@code -t 32}, and compare the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ConcurrentCuckooHashSetBenchmark {
+
+    public enum Implementation {
+        CONCURRENT_CUCKOO,
+        SYNCHRONIZED_HASH_SET,
+        CONCURRENT_HASH_MAP
+    }
+
+    @State(Scope.Benchmark)
+    public static class Filled {
+
+        @Param({"1000000"})
+        public int size;
+
+        @Param({"CONCURRENT_CUCKOO", "SYNCHRONIZED_HASH_SET", "CONCURRENT_HASH_MAP"})
+        public Implementation implementation;
+
+        Set<Integer> set;
+        Integer[] keys;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            switch(implementation) {
+                case CONCURRENT_CUCKOO:
+                    set = new ConcurrentCuckooHashSet<Integer>(100, 0.9f, 4, CuckooHashSetBenchmark.HASH_1, CuckooHashSetBenchmark.HASH_2);
+                    break;
+                case SYNCHRONIZED_HASH_SET:
+                    set = Collections.synchronizedSet(new HashSet<Integer>());
+                    break;
+                case CONCURRENT_HASH_MAP:
+                    set = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+            Random random = new Random(42);
+            keys = new Integer[size];
+            for(int i = 0; i < size; i++) {
+                keys[i] = random.nextInt();
+                set.add(keys[i]);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next = (int) Thread.currentThread().getId() * 7919;
+
+        int next(int length) {
+            next = (next + 1) % length;
+            return next;
+        }
+    }
+
+    @Benchmark
+    public boolean contains(Filled filled, Cursor cursor) {
+        return filled.set.contains(filled.keys[cursor.next(filled.size)]);
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.CountingCuckooFilter;
+import com.github.mfondo.CuckooFilter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds a frequency-heavy stream - a share of the adds going to a few hot keys - into an empty filter. The plain filter
+ * fills the buckets of each hot key, kicks in vain once and is then full for every add to a full bucket, which the
+ * failedAdds counter shows. The counting one increments a counter and keeps the whole stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CountingCuckooFilterBenchmark {
+
+    private static final int NUM_BUCKETS = 1 << 14;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"0.1"})
+    public double hotShare;
+
+    private Integer[] stream;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        stream = new Integer[size];
+        //distinct keys filling about half of the entries, and 100 hot keys
+        int distinct = NUM_BUCKETS * 4 / 2;
+        for(int i = 0; i < size; i++) {
+            stream[i] = random.nextDouble() < hotShare ? -1 - random.nextInt(100) : random.nextInt(distinct);
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long failedAdds;
+    }
+
+    @Benchmark
+    public int cuckooFilter(Counters counters) {
+        CuckooFilter<Integer> filter = new CuckooFilter<Integer>(CuckooFilter.Layout.PACKED, 4, NUM_BUCKETS, 500, 16, false);
+        int added = 0;
+        for(Integer i : stream) {
+            if(filter.add(i)) {
+                added++;
+            }
+        }
+        counters.failedAdds += stream.length - added;
+        return added;
+    }
+
+    @Benchmark
+    public int countingCuckooFilter(Counters counters) {
+        CountingCuckooFilter<Integer> filter = new CountingCuckooFilter<Integer>(4, NUM_BUCKETS, 500, 16, 8);
+        int added = 0;
+        for(Integer i : stream) {
+            if(filter.add(i)) {
+                added++;
+            }
+        }
+        counters.failedAdds += stream.length - added;
+        return added;
+    }
+}
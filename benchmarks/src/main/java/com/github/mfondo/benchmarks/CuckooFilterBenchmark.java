@@ -0,0 +1,244 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.CuckooFilter;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady state throughput of {@link CuckooFilter} compared to Guava's {@link BloomFilter} sized for the same
+ * false positive rate.
+ *
+ * The filter has {@code size / (bucketEntries * loadFactor)} buckets, rounded up to a power of 2. The contains
+ * benchmarks time a single lookup. The add, remove and batch lookup benchmarks process all {@code size} keys per
+ * invocation, so divide by {@code size} for a per element figure. {@code offHeap} compares the on-heap int[] buckets with
+ * direct memory. The bloom filter is sized for the false positive rate of {@code bucketEntries} and
+ * {@code fingerprintBits}, so it runs once per combination of those, but not of the cuckoo only parameters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CuckooFilterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Keys {
+
+        @Param({"10000", "1000000"})
+        public int size;
+
+        @Param({"0.9"})
+        public float loadFactor;
+
+        @Param({"4", "8"})
+        public int bucketEntries;
+
+        @Param({"8", "12", "16"})
+        public int fingerprintBits;
+
+        Integer[] present;
+        Integer[] absent;
+        boolean[] out;
+
+        @Setup(Level.Trial)
+        public void setUpKeys() {
+            Random random = new Random(42);
+            Set<Integer> unique = new HashSet<Integer>();
+            while(unique.size() < size * 2) {
+                unique.add(random.nextInt());
+            }
+            Iterator<Integer> iterator = unique.iterator();
+            present = new Integer[size];
+            absent = new Integer[size];
+            for(int i = 0; i < size; i++) {
+                present[i] = iterator.next();
+                absent[i] = iterator.next();
+            }
+            out = new boolean[size];
+        }
+
+        int numBuckets() {
+            int minBuckets = (int) Math.ceil(size / (bucketEntries * (double) loadFactor));
+            return Integer.highestOneBit(minBuckets - 1) << 1;
+        }
+
+        /**
+         * @return upper bound of the cuckoo filter's false positive rate - 2 * bucketEntries / 2^fingerprintBits
+         */
+        double falsePositiveRate() {
+            return Math.min(0.5d, (2d * bucketEntries) / (1L << fingerprintBits));
+        }
+
+        BloomFilter<Integer> newFilledBloomFilter() {
+            BloomFilter<Integer> filter = BloomFilter.create(Funnels.integerFunnel(), size, falsePositiveRate());
+            for(Integer key : present) {
+                filter.put(key);
+            }
+            return filter;
+        }
+    }
+
+    /**
+     * Parameters that only apply to the cuckoo filter, kept out of {@link Keys} so that they do not multiply the bloom
+     * filter runs
+     */
+    @State(Scope.Benchmark)
+    public static class Cuckoo {
+
+        @Param({"500"})
+        public int maxInsertLoops;
+
+        @Param({"false", "true"})
+        public boolean offHeap;
+
+        //-p stats=true to measure what recording stats costs
+        @Param({"false"})
+        public boolean stats;
+
+        CuckooFilter<Integer> newFilledFilter(Keys keys) {
+            CuckooFilter<Integer> filter = new CuckooFilter<Integer>(keys.bucketEntries, keys.numBuckets(), maxInsertLoops, keys.fingerprintBits, offHeap);
+            filter.setStatsEnabled(stats);
+            for(Integer key : keys.present) {
+                filter.add(key);
+            }
+            return filter;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FilledCuckoo {
+
+        CuckooFilter<Integer> filter;
+
+        @Setup(Level.Trial)
+        public void setUp(Keys keys, Cuckoo cuckoo) {
+            filter = cuckoo.newFilledFilter(keys);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            filter.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FilledBloom {
+
+        BloomFilter<Integer> filter;
+
+        @Setup(Level.Trial)
+        public void setUp(Keys keys) {
+            filter = keys.newFilledBloomFilter();
+        }
+    }
+
+    /**
+     * Fresh copy for benchmarks that mutate the filter
+     */
+    @State(Scope.Thread)
+    public static class Mutable {
+
+        CuckooFilter<Integer> cuckooFilter;
+
+        @Setup(Level.Invocation)
+        public void setUp(Keys keys, Cuckoo cuckoo) {
+            cuckooFilter = cuckoo.newFilledFilter(keys);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            cuckooFilter.close();
+        }
+    }
+
+    /**
+     * Cursor into the key arrays so that consecutive lookups hit different buckets
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+
+        int next(int length) {
+            int ret = next;
+            if(++next >= length) {
+                next = 0;
+            }
+            return ret;
+        }
+    }
+
+    @Benchmark
+    public void cuckooAdd(Keys keys, Cuckoo cuckoo, Blackhole blackhole) {
+        CuckooFilter<Integer> filter = cuckoo.newFilledFilter(keys);
+        blackhole.consume(filter);
+        filter.close();
+    }
+
+    @Benchmark
+    public BloomFilter<Integer> bloomAdd(Keys keys) {
+        return keys.newFilledBloomFilter();
+    }
+
+    @Benchmark
+    public boolean cuckooContainsPresent(Keys keys, FilledCuckoo filled, Cursor cursor) {
+        return filled.filter.contains(keys.present[cursor.next(keys.size)]);
+    }
+
+    @Benchmark
+    public boolean cuckooContainsAbsent(Keys keys, FilledCuckoo filled, Cursor cursor) {
+        return filled.filter.contains(keys.absent[cursor.next(keys.size)]);
+    }
+
+    @Benchmark
+    public void cuckooContainsEachAbsent(Keys keys, FilledCuckoo filled, Blackhole blackhole) {
+        CuckooFilter<Integer> filter = filled.filter;
+        for(Integer key : keys.absent) {
+            blackhole.consume(filter.contains(key));
+        }
+    }
+
+    @Benchmark
+    public boolean[] cuckooContainsAllAbsent(Keys keys, FilledCuckoo filled) {
+        filled.filter.containsAll(keys.absent, keys.out);
+        return keys.out;
+    }
+
+    @Benchmark
+    public boolean bloomContainsPresent(Keys keys, FilledBloom filled, Cursor cursor) {
+        return filled.filter.mightContain(keys.present[cursor.next(keys.size)]);
+    }
+
+    @Benchmark
+    public boolean bloomContainsAbsent(Keys keys, FilledBloom filled, Cursor cursor) {
+        return filled.filter.mightContain(keys.absent[cursor.next(keys.size)]);
+    }
+
+    @Benchmark
+    public void cuckooRemove(Keys keys, Mutable mutable, Blackhole blackhole) {
+        CuckooFilter<Integer> filter = mutable.cuckooFilter;
+        for(Integer key : keys.present) {
+            blackhole.consume(filter.remove(key));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.CuckooFilter;
+import com.github.mfondo.Murmur3;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of keys that are fixed size records in a byte[] or direct {@link ByteBuffer}: building a String per key, as
+ * callers had to before, against hashing the bytes in place. Run with -prof gc to see the allocation per lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CuckooFilterBytesBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Records {
+
+        @Param({"1000000"})
+        public int size;
+
+        @Param({"16", "64"})
+        public int recordLength;
+
+        byte[] records;
+        ByteBuffer buffer;
+        CuckooFilter<String> stringFilter;
+        CuckooFilter<byte[]> bytesFilter;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            records = new byte[size * recordLength];
+            //ascii, so that the strings round trip
+            Random random = new Random(42);
+            for(int i = 0; i < records.length; i++) {
+                records[i] = (byte) ('a' + random.nextInt(26));
+            }
+            buffer = ByteBuffer.allocateDirect(records.length);
+            buffer.put(records);
+            int numBuckets = Integer.highestOneBit((int) (size / (4 * 0.9))) << 1;
+            stringFilter = new CuckooFilter<String>(CuckooFilter.Layout.PACKED, 4, numBuckets, 500, 16, false);
+            bytesFilter = new CuckooFilter<byte[]>(CuckooFilter.Layout.PACKED, 4, numBuckets, 500, 16, false, Murmur3.BYTES, 0);
+            //every other record, so that half the lookups are absent
+            for(int i = 0; i < size; i += 2) {
+                stringFilter.add(new String(records, i * recordLength, recordLength, StandardCharsets.US_ASCII));
+                bytesFilter.add(records, i * recordLength, recordLength);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+
+        int next(int length) {
+            int ret = next;
+            if(++next >= length) {
+                next = 0;
+            }
+            return ret;
+        }
+    }
+
+    @Benchmark
+    public boolean containsString(Records records, Cursor cursor) {
+        int offset = cursor.next(records.size) * records.recordLength;
+        return records.stringFilter.contains(new String(records.records, offset, records.recordLength, StandardCharsets.US_ASCII));
+    }
+
+    @Benchmark
+    public boolean containsBytes(Records records, Cursor cursor) {
+        int offset = cursor.next(records.size) * records.recordLength;
+        return records.bytesFilter.contains(records.records, offset, records.recordLength);
+    }
+
+    @Benchmark
+    public boolean containsByteBuffer(Records records, Cursor cursor) {
+        int offset = cursor.next(records.size) * records.recordLength;
+        return records.bytesFilter.contains(records.buffer, offset, records.recordLength);
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.CuckooFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup cost of the {@link CuckooFilter.Layout}s at the fingerprint sizes they all support, 4 entries per bucket and
+ * 90% full.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CuckooFilterLayoutBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Filled {
+
+        @Param({"262144"})
+        public int numBuckets;
+
+        @Param({"8", "12", "16"})
+        public int fingerprintBits;
+
+        @Param({"BIT_PACKED", "SEMI_SORTED", "PACKED"})
+        public CuckooFilter.Layout layout;
+
+        CuckooFilter<Integer> filter;
+        Integer[] present;
+        Integer[] absent;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            filter = new CuckooFilter<Integer>(layout, 4, numBuckets, 500, fingerprintBits, false);
+            Random random = new Random(42);
+            present = new Integer[numBuckets * 4 * 9 / 10];
+            absent = new Integer[present.length];
+            for(int i = 0; i < present.length; i++) {
+                present[i] = random.nextInt();
+                absent[i] = random.nextInt();
+                filter.add(present[i]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            filter.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+
+        int next(int length) {
+            int ret = next;
+            if(++next >= length) {
+                next = 0;
+            }
+            return ret;
+        }
+    }
+
+    @Benchmark
+    public boolean containsPresent(Filled filled, Cursor cursor) {
+        return filled.filter.contains(filled.present[cursor.next(filled.present.length)]);
+    }
+
+    @Benchmark
+    public boolean containsAbsent(Filled filled, Cursor cursor) {
+        return filled.filter.contains(filled.absent[cursor.next(filled.absent.length)]);
+    }
+}
@@ -0,0 +1,275 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.CuckooHashSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady state throughput of {@link CuckooHashSet} compared to {@link HashSet}.
+ *
+ * The contains benchmarks time a single lookup. The add, remove and iterate benchmarks process all
+ * {@code size} keys per invocation, so divide by {@code size} for a per element figure. Each benchmark comes in a cuckoo
+ * and a HashSet variant, so that the cuckoo only parameters do not repeat the HashSet runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CuckooHashSetBenchmark {
+
+    //non-negative so that the hash functions below never produce a negative position
+    static final CuckooHashSet.HashFunction<Integer> HASH_1 = new CuckooHashSet.HashFunction<Integer>() {
+        @Override
+        public int hash(Integer integer) {
+            return integer & Integer.MAX_VALUE;
+        }
+    };
+
+    static final CuckooHashSet.HashFunction<Integer> HASH_2 = new CuckooHashSet.HashFunction<Integer>() {
+        @Override
+        public int hash(Integer integer) {
+            int h = integer;
+            h = ((h >>> 16) ^ h) * 0x45d9f3b;
+            h = ((h >>> 16) ^ h) * 0x45d9f3b;
+            h = ((h >>> 16) ^ h);
+            return h & Integer.MAX_VALUE;
+        }
+    };
+
+    //further hash functions of d-ary sets
+    static final CuckooHashSet.HashFunction<Integer> HASH_3 = new CuckooHashSet.HashFunction<Integer>() {
+        @Override
+        public int hash(Integer integer) {
+            return (integer * 0x9E3779B9) & Integer.MAX_VALUE;
+        }
+    };
+
+    static final CuckooHashSet.HashFunction<Integer> HASH_4 = new CuckooHashSet.HashFunction<Integer>() {
+        @Override
+        public int hash(Integer integer) {
+            //murmur3 finalizer
+            int h = integer;
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h & Integer.MAX_VALUE;
+        }
+    };
+
+    static final List<CuckooHashSet.HashFunction<Integer>> HASH_FUNCTIONS = Arrays.asList(HASH_1, HASH_2, HASH_3, HASH_4);
+
+    @State(Scope.Benchmark)
+    public static class Keys {
+
+        @Param({"1000", "100000", "1000000"})
+        public int size;
+
+        @Param({"0.5", "0.9"})
+        public float loadFactor;
+
+        Integer[] present;
+        Integer[] absent;
+
+        @Setup(Level.Trial)
+        public void setUpKeys() {
+            Random random = new Random(42);
+            Set<Integer> unique = new HashSet<Integer>();
+            while(unique.size() < size * 2) {
+                unique.add(random.nextInt());
+            }
+            Iterator<Integer> iterator = unique.iterator();
+            present = new Integer[size];
+            absent = new Integer[size];
+            for(int i = 0; i < size; i++) {
+                present[i] = iterator.next();
+                absent[i] = iterator.next();
+            }
+        }
+
+        <S extends Set<Integer>> S fill(S set) {
+            for(Integer key : present) {
+                set.add(key);
+            }
+            return set;
+        }
+
+        HashSet<Integer> newFilledHashSet() {
+            return fill(new HashSet<Integer>(16, loadFactor));
+        }
+    }
+
+    /**
+     * Parameters that only apply to the cuckoo set, kept out of {@link Keys} so that they do not multiply the HashSet runs
+     */
+    @State(Scope.Benchmark)
+    public static class Cuckoo {
+
+        @Param({"100"})
+        public int maxInsertLoops;
+
+        @Param({"1", "4", "8"})
+        public int bucketEntries;
+
+        //2 to 4 - more for a d-ary set, for example -p hashFunctions=3
+        @Param({"2"})
+        public int hashFunctions;
+
+        //-p stats=true to measure what recording stats costs
+        @Param({"false"})
+        public boolean stats;
+
+        CuckooHashSet<Integer> newFilledSet(Keys keys) {
+            CuckooHashSet<Integer> set = new CuckooHashSet<Integer>(Integer.class, maxInsertLoops, keys.loadFactor, bucketEntries, HASH_FUNCTIONS.subList(0, hashFunctions), false);
+            set.setStatsEnabled(stats);
+            return keys.fill(set);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FilledCuckoo {
+
+        CuckooHashSet<Integer> set;
+
+        @Setup(Level.Trial)
+        public void setUp(Keys keys, Cuckoo cuckoo) {
+            set = cuckoo.newFilledSet(keys);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FilledHashSet {
+
+        HashSet<Integer> set;
+
+        @Setup(Level.Trial)
+        public void setUp(Keys keys) {
+            set = keys.newFilledHashSet();
+        }
+    }
+
+    /**
+     * Fresh copy for benchmarks that mutate the set
+     */
+    @State(Scope.Thread)
+    public static class MutableCuckoo {
+
+        CuckooHashSet<Integer> set;
+
+        @Setup(Level.Invocation)
+        public void setUp(Keys keys, Cuckoo cuckoo) {
+            set = cuckoo.newFilledSet(keys);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MutableHashSet {
+
+        HashSet<Integer> set;
+
+        @Setup(Level.Invocation)
+        public void setUp(Keys keys) {
+            set = keys.newFilledHashSet();
+        }
+    }
+
+    /**
+     * Cursor into the key arrays so that consecutive lookups hit different slots
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+
+        int next(int length) {
+            int ret = next;
+            if(++next >= length) {
+                next = 0;
+            }
+            return ret;
+        }
+    }
+
+    @Benchmark
+    public Set<Integer> cuckooAdd(Keys keys, Cuckoo cuckoo) {
+        return cuckoo.newFilledSet(keys);
+    }
+
+    @Benchmark
+    public Set<Integer> hashSetAdd(Keys keys) {
+        return keys.newFilledHashSet();
+    }
+
+    @Benchmark
+    public boolean cuckooContainsPresent(Keys keys, FilledCuckoo filled, Cursor cursor) {
+        return filled.set.contains(keys.present[cursor.next(keys.size)]);
+    }
+
+    @Benchmark
+    public boolean hashSetContainsPresent(Keys keys, FilledHashSet filled, Cursor cursor) {
+        return filled.set.contains(keys.present[cursor.next(keys.size)]);
+    }
+
+    @Benchmark
+    public boolean cuckooContainsAbsent(Keys keys, FilledCuckoo filled, Cursor cursor) {
+        return filled.set.contains(keys.absent[cursor.next(keys.size)]);
+    }
+
+    @Benchmark
+    public boolean hashSetContainsAbsent(Keys keys, FilledHashSet filled, Cursor cursor) {
+        return filled.set.contains(keys.absent[cursor.next(keys.size)]);
+    }
+
+    @Benchmark
+    public void cuckooRemove(Keys keys, MutableCuckoo mutable, Blackhole blackhole) {
+        removeAll(keys, mutable.set, blackhole);
+    }
+
+    @Benchmark
+    public void hashSetRemove(Keys keys, MutableHashSet mutable, Blackhole blackhole) {
+        removeAll(keys, mutable.set, blackhole);
+    }
+
+    @Benchmark
+    public void cuckooIterate(FilledCuckoo filled, Blackhole blackhole) {
+        iterate(filled.set, blackhole);
+    }
+
+    @Benchmark
+    public void hashSetIterate(FilledHashSet filled, Blackhole blackhole) {
+        iterate(filled.set, blackhole);
+    }
+
+    private static void removeAll(Keys keys, Set<Integer> set, Blackhole blackhole) {
+        for(Integer key : keys.present) {
+            blackhole.consume(set.remove(key));
+        }
+    }
+
+    private static void iterate(Set<Integer> set, Blackhole blackhole) {
+        for(Integer key : set) {
+            blackhole.consume(key);
+        }
+    }
+}
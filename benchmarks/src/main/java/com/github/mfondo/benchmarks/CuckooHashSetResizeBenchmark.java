@@ -0,0 +1,55 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.CuckooHashSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of single adds to a growing {@link CuckooHashSet}, with and without incremental resizing.
+ * The set is refilled from empty up to {@code size} elements over and over, so the samples include every resize on
+ * the way - compare the p99 and p99.99 percentiles.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CuckooHashSetResizeBenchmark {
+
+    @State(Scope.Thread)
+    public static class Growing {
+
+        @Param({"4000000"})
+        public int size;
+
+        @Param({"false", "true"})
+        public boolean incrementalResize;
+
+        CuckooHashSet<Integer> set;
+        int next;
+
+        Integer next() {
+            if(set == null || next >= size) {
+                set = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, CuckooHashSetBenchmark.HASH_1, CuckooHashSetBenchmark.HASH_2, incrementalResize);
+                next = 0;
+            }
+            return next++ * 0x9E3779B9;
+        }
+    }
+
+    @Benchmark
+    public boolean add(Growing growing) {
+        Integer key = growing.next();
+        return growing.set.add(key);
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.CuckooFilter;
+import com.github.mfondo.CuckooHashSet;
+import com.github.mfondo.InsertStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of filling a {@link CuckooFilter} and a {@link CuckooHashSet} to {@code load} with each {@link InsertStrategy}.
+ * Each invocation fills a new, fixed size table from empty, so divide by the number of keys for a per element figure
+ * - most of the difference is in the last few percent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertStrategyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Keys {
+
+        @Param({"65536"})
+        public int numBuckets;
+
+        @Param({"0.95"})
+        public double load;
+
+        @Param({"RANDOM_WALK", "BREADTH_FIRST"})
+        public InsertStrategy insertStrategy;
+
+        Integer[] keys;
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            keys = new Integer[(int) (numBuckets * 4 * load)];
+            for(int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextInt();
+            }
+        }
+    }
+
+    @Benchmark
+    public int filterFill(Keys keys) {
+        CuckooFilter<Integer> filter = new CuckooFilter<Integer>(4, keys.numBuckets, 500, 16);
+        filter.setInsertStrategy(keys.insertStrategy);
+        int added = 0;
+        for(Integer key : keys.keys) {
+            if(filter.add(key)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    @Benchmark
+    public int setFill(Keys keys) {
+        //loadFactor above 1 so that the table only grows when an insert fails
+        CuckooHashSet<Integer> set = new CuckooHashSet<Integer>(Integer.class, 500, 2f, 4, CuckooHashSetBenchmark.HASH_1, CuckooHashSetBenchmark.HASH_2);
+        set.setInsertStrategy(keys.insertStrategy);
+        for(Integer key : keys.keys) {
+            set.add(key);
+        }
+        return set.size();
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.mfondo.benchmarks;
+
+import com.github.mfondo.CuckooFilter;
+import com.github.mfondo.ShardedCuckooFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a filter to 90% load from an array of keys: one {@link CuckooFilter} adding them one at a time against
+ * {@link ShardedCuckooFilter#addAll(Object[], ForkJoinPool)} on a pool of {@code parallelism} threads.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedCuckooFilterBenchmark {
+
+    @Param({"1048576"})
+    public int numBuckets;
+
+    @Param({"16"})
+    public int shards;
+
+    @Param({"4"})
+    public int parallelism;
+
+    private Integer[] keys;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        keys = new Integer[numBuckets * 4 * 9 / 10];
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt();
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int single() {
+        CuckooFilter<Integer> filter = new CuckooFilter<Integer>(4, numBuckets, 500, 16);
+        int added = 0;
+        for(Integer key : keys) {
+            if(filter.add(key)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    @Benchmark
+    public int sharded() {
+        ShardedCuckooFilter<Integer> filter = new ShardedCuckooFilter<Integer>(shards, CuckooFilter.Layout.BIT_PACKED, 4,
+                numBuckets, 500, 16, false);
+        return filter.addAll(keys, pool);
+    }
+}
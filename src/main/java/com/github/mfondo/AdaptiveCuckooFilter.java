@@ -0,0 +1,235 @@
+package com.github.mfondo;
+
+/**
+ * {@link CuckooFilter} that can stop matching a non-member once told it is a false positive - the Adaptive Cuckoo
+ * Filter of Mitzenmacher, Pontarelli and Reviriego. Each entry holds selectorBits bits choosing which of 2^selectorBits
+ * fingerprint functions made its fingerprint. {@link #reportFalsePositive(Object)} moves the entries that matched the
+ * reported element to their next fingerprint function, which that element matches only by another 2^-fingerprintBits
+ * chance, so a non-member queried again and again costs at most one wasted lookup elsewhere.
+ *
+ * Re-encoding an entry needs its element, so the filter keeps each entry's element in a table of references next to
+ * the packed buckets, touched only by add, remove and reportFalsePositive - contains reads the buckets alone. Because
+ * elements are at hand, remove only removes the element itself, never a colliding one. A re-encoded entry may start
+ * matching an element fixed earlier, which then needs reporting again.
+ *
+ * The buckets are a {@link PackedEntryTable}, with the selector above the fingerprint. A failed add leaves the filter
+ * as it was.
+ */
+public class AdaptiveCuckooFilter<T> {
+
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private final int bucketEntries;
+    private final int fingerprintBits;
+    private final int fingerprintMask;
+    private final int selectors;
+    private final ElementHasher64<? super T> hashFunction;
+    private final int seed;
+    private final PackedEntryTable table;
+    //element of each entry of the table, at bucket * bucketEntries + entry
+    private final Object[] elements;
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of kicks on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param selectorBits number of bits choosing each entry's fingerprint function - fingerprintBits + selectorBits
+     *                     must be at most 32
+     */
+    public AdaptiveCuckooFilter(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int selectorBits) {
+        this(bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, selectorBits, Murmur3.HASH_CODE, 0);
+    }
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of kicks on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param selectorBits number of bits choosing each entry's fingerprint function - fingerprintBits + selectorBits
+     *                     must be at most 32
+     * @param hashFunction hashes elements - see {@link CuckooFilter}
+     * @param seed passed to hashFunction
+     */
+    public AdaptiveCuckooFilter(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int selectorBits,
+                                ElementHasher64<? super T> hashFunction, int seed) {
+        if(bucketEntries < 1 || (bucketEntries & (bucketEntries - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid bucket entries");
+        }
+        if(numBuckets < 1 || CuckooFilter.coveredBuckets(numBuckets) * bucketEntries > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid number of buckets");
+        }
+        if(maxInsertLoops < 1) {
+            throw new IllegalArgumentException("Invalid max insert loops");
+        }
+        if(fingerprintBits < 1 || selectorBits < 1 || fingerprintBits + selectorBits > Integer.SIZE) {
+            throw new IllegalArgumentException("Invalid fingerprint or selector bits");
+        }
+        if(hashFunction == null) {
+            throw new IllegalArgumentException("Invalid hash function");
+        }
+        this.bucketEntries = bucketEntries;
+        this.fingerprintBits = fingerprintBits;
+        this.hashFunction = hashFunction;
+        this.seed = seed;
+        fingerprintMask = (int) ((1L << fingerprintBits) - 1);
+        selectors = 1 << selectorBits;
+        //entries keep their fingerprint function when they move, so kicks go by the element's function 0 fingerprint
+        table = new PackedEntryTable(bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, fingerprintBits + selectorBits) {
+            @Override
+            int kickTarget(int bucket, int entry) {
+                return AdaptiveCuckooFilter.this.alternateIndex(bucket, elementHash(bucket, entry));
+            }
+
+            @Override
+            void moved(int fromBucket, int fromEntry, int toBucket, int toEntry) {
+                elements[toBucket * bucketEntries + toEntry] = elements[fromBucket * bucketEntries + fromEntry];
+                elements[fromBucket * bucketEntries + fromEntry] = null;
+            }
+        };
+        //as many as the table has, up to the next power of 2 of numBuckets, as an alternate bucket can be anything below
+        elements = new Object[(int) (table.coveredBuckets() * bucketEntries)];
+    }
+
+    /**
+     * @return true if the element was successfully added, false if no room could be made, in which case the filter is
+     * unchanged
+     */
+    public boolean add(T t) {
+        if(t == null) {
+            throw new IllegalArgumentException();
+        }
+        long hash = hashFunction.hash(t, seed);
+        int i1 = table.index(hash);
+        int i2 = alternateIndex(i1, hash);
+        int entry = fingerprint(hash, 0);
+        if(addToBucket(i1, entry, t) || addToBucket(i2, entry, t)) {
+            return true;
+        }
+        int i = table.makeRoom(i1, i2);
+        return i >= 0 && addToBucket(i, entry, t);
+    }
+
+    /**
+     * Removes one entry of t - unlike {@link CuckooFilter#remove(Object)}, never the entry of another element
+     * @return true if t was in the filter
+     */
+    public boolean remove(T t) {
+        long hash = hashFunction.hash(t, seed);
+        int i1 = table.index(hash);
+        return removeFromBucket(i1, t) || removeFromBucket(alternateIndex(i1, hash), t);
+    }
+
+    /**
+     * @return true if the filter possibly contains t, false if it definitely does not
+     */
+    public boolean contains(T t) {
+        long hash = hashFunction.hash(t, seed);
+        int i1 = table.index(hash);
+        return bucketContains(i1, hash) || bucketContains(alternateIndex(i1, hash), hash);
+    }
+
+    /**
+     * Re-encodes every entry that t, which the caller found is not a member, matches, so that contains(t) returns
+     * false
+     * @return true if any entry was re-encoded, false if t matched none or is a member
+     */
+    public boolean reportFalsePositive(T t) {
+        long hash = hashFunction.hash(t, seed);
+        int i1 = table.index(hash);
+        int i2 = alternateIndex(i1, hash);
+        if(bucketHolds(i1, t) || bucketHolds(i2, t)) {
+            return false;
+        }
+        boolean ret = reencode(i1, hash);
+        if(i2 != i1) {
+            ret |= reencode(i2, hash);
+        }
+        return ret;
+    }
+
+    /**
+     * @return fingerprint function selector's fingerprint of hash, never 0 which marks an empty entry, with the
+     * selector in the bits above it
+     */
+    private int fingerprint(long hash, int selector) {
+        //function 0 is the upper 32 bits as in CuckooFilter, the others a remix of the whole hash
+        long h = selector == 0 ? hash : CuckooHashing.mix64(hash + selector * GOLDEN_RATIO);
+        int fingerprint = (int) (h >>> Integer.SIZE) & fingerprintMask;
+        return (selector << fingerprintBits) | (fingerprint == 0 ? 1 : fingerprint);
+    }
+
+    //the other bucket of the element in index - from its function 0 fingerprint, which stays put when the entry's changes
+    private int alternateIndex(int index, long hash) {
+        return table.alternateIndex(index, fingerprint(hash, 0));
+    }
+
+    private boolean bucketContains(int bucket, long hash) {
+        for(int e = 0; e < bucketEntries; e++) {
+            int entry = table.get(bucket, e);
+            if(entry != 0 && entry == fingerprint(hash, entry >>> fingerprintBits)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean bucketHolds(int bucket, T t) {
+        for(int e = 0; e < bucketEntries; e++) {
+            if(t.equals(elements[bucket * bucketEntries + e])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //moves each entry of the bucket matching hash to its next fingerprint function that hash does not match
+    private boolean reencode(int bucket, long hash) {
+        boolean ret = false;
+        for(int e = 0; e < bucketEntries; e++) {
+            int entry = table.get(bucket, e);
+            if(entry == 0 || entry != fingerprint(hash, entry >>> fingerprintBits)) {
+                continue;
+            }
+            long elementHash = elementHash(bucket, e);
+            int selector = entry >>> fingerprintBits;
+            //gives up on the rare element whose every function matches hash's - it stays a false positive
+            for(int n = 1; n < selectors; n++) {
+                int s = (selector + n) & (selectors - 1);
+                int reencoded = fingerprint(elementHash, s);
+                if(reencoded != fingerprint(hash, s)) {
+                    table.set(bucket, e, reencoded);
+                    ret = true;
+                    break;
+                }
+            }
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long elementHash(int bucket, int entry) {
+        return hashFunction.hash((T) elements[bucket * bucketEntries + entry], seed);
+    }
+
+    //returns true if entry was stored in a free entry of the bucket
+    private boolean addToBucket(int bucket, int entry, T t) {
+        int e = table.add(bucket, entry);
+        if(e < 0) {
+            return false;
+        }
+        elements[bucket * bucketEntries + e] = t;
+        return true;
+    }
+
+    private boolean removeFromBucket(int bucket, T t) {
+        for(int e = 0; e < bucketEntries; e++) {
+            if(t.equals(elements[bucket * bucketEntries + e])) {
+                table.set(bucket, e, 0);
+                elements[bucket * bucketEntries + e] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+}
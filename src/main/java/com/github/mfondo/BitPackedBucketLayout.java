@@ -0,0 +1,102 @@
+package com.github.mfondo;
+
+/**
+ * bucketEntries occupancy bits followed by bucketEntries fingerprints of fingerprintBits bits each
+ */
+final class BitPackedBucketLayout extends BucketLayout {
+
+    BitPackedBucketLayout(int bucketEntries, int fingerprintBits) {
+        super(bucketEntries, fingerprintBits);
+    }
+
+    @Override
+    int bucketBits() {
+        return ((fingerprintBits * bucketEntries) + bucketEntries);
+    }
+
+    private long getEntryBitOffset(long bucketBitOffset, int entryNbr) {
+        return bucketBitOffset + (bucketEntries) + (entryNbr * fingerprintBits);
+    }
+
+    //return -1 if could not find one
+    private long getFirstEmptyEntryBitOffsetAndMarkPopulated(FilterStorage data, long bucketBitOffset) {
+        int entriesPopulatedBits = CuckooFilter.getBits(data, bucketBitOffset, bucketEntries);
+        int entriesPopulatedMask;
+        for(int i = 0; i < bucketEntries; i++) {
+            entriesPopulatedMask = 1 << i;
+            if((entriesPopulatedMask & entriesPopulatedBits) == 0) {
+                CuckooFilter.setBits(data, bucketBitOffset + i, 1, 1);
+                return bucketBitOffset + bucketEntries + (i * fingerprintBits);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    boolean add(FilterStorage data, long bucketBitOffset, int fingerprint) {
+        long entryBitOffset = getFirstEmptyEntryBitOffsetAndMarkPopulated(data, bucketBitOffset);
+        boolean added;
+        if(entryBitOffset >= 0) {
+            CuckooFilter.setBits(data, entryBitOffset, fingerprintBits, fingerprint);
+            added = true;
+        } else {
+            added = false;
+        }
+        return added;
+    }
+
+    @Override
+    boolean contains(FilterStorage data, long bucketBitOffset, int fingerprint) {
+        return containsOrRemove(data, bucketBitOffset, fingerprint, false);
+    }
+
+    @Override
+    boolean remove(FilterStorage data, long bucketBitOffset, int fingerprint) {
+        return containsOrRemove(data, bucketBitOffset, fingerprint, true);
+    }
+
+    /**
+     * @param remove if true, then the fingerprint will be removed and the entry marked as empty
+     * @return true of the bucket contains fingerprint
+     */
+    private boolean containsOrRemove(FilterStorage data, long bucketBitOffset, int fingerprint, boolean remove) {
+        int entriesPopulatedBits = CuckooFilter.getBits(data, bucketBitOffset, bucketEntries);
+        long entryBitOffset = bucketBitOffset + bucketEntries;
+        int storedFingerprint;
+        int entriesPopulatedMask;
+        for(int i = 0; i < bucketEntries; i++) {
+            entriesPopulatedMask = 1 << i;
+            if((entriesPopulatedMask & entriesPopulatedBits) != 0) {
+                storedFingerprint = CuckooFilter.getBits(data, entryBitOffset, fingerprintBits);
+                if(fingerprint == storedFingerprint) {
+                    if(remove) {
+                        //just mark the entry as empty - no need to overwrite the fingerprint value
+                        CuckooFilter.setBits(data, bucketBitOffset + i, 1, 0);
+                    }
+                    return true;
+                }
+            }
+            entryBitOffset += fingerprintBits;
+        }
+        return false;
+    }
+
+    @Override
+    int get(FilterStorage data, long bucketBitOffset, int entry) {
+        return CuckooFilter.getBits(data, getEntryBitOffset(bucketBitOffset, entry), fingerprintBits);
+    }
+
+    @Override
+    int occupied(FilterStorage data, long bucketBitOffset) {
+        return Integer.bitCount(CuckooFilter.getBits(data, bucketBitOffset, bucketEntries));
+    }
+
+    @Override
+    int swap(FilterStorage data, long bucketBitOffset, int entry, int fingerprint) {
+        long entryBitOffset = getEntryBitOffset(bucketBitOffset, entry);
+        int ret = CuckooFilter.getBits(data, entryBitOffset, fingerprintBits);
+        //this does not mark the entry as populated - the bucket is full
+        CuckooFilter.setBits(data, entryBitOffset, fingerprintBits, fingerprint);
+        return ret;
+    }
+}
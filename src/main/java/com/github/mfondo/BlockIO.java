@@ -0,0 +1,232 @@
+package com.github.mfondo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Moves int[] and long[] to and from channels in 64KB little-endian blocks, one bulk copy per block rather than one
+ * call per element. Variable length data goes through {@link #framedOutput(WritableByteChannel)} instead.
+ */
+final class BlockIO {
+
+    static final int BLOCK_BYTES = 1 << 16;
+
+    //direct memory is slow to allocate and only freed once the buffer is collected, so each thread keeps one block
+    private static final ThreadLocal<ByteBuffer> BLOCKS = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    };
+
+    private BlockIO() {
+    }
+
+    /**
+     * @return this thread's block, cleared - valid until the thread's next call
+     */
+    static ByteBuffer block() {
+        ByteBuffer block = BLOCKS.get();
+        block.clear();
+        return block;
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    static void writeInts(WritableByteChannel channel, ByteBuffer block, int[] src, int offset, int length) throws IOException {
+        final int blockInts = block.capacity() / 4;
+        int n;
+        while(length > 0) {
+            n = Math.min(length, blockInts);
+            block.clear();
+            block.asIntBuffer().put(src, offset, n);
+            block.limit(n * 4);
+            writeFully(channel, block);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    static void readInts(ReadableByteChannel channel, ByteBuffer block, int[] dst, int offset, int length) throws IOException {
+        final int blockInts = block.capacity() / 4;
+        int n;
+        while(length > 0) {
+            n = Math.min(length, blockInts);
+            block.clear();
+            block.limit(n * 4);
+            readFully(channel, block);
+            block.flip();
+            block.asIntBuffer().get(dst, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    static void writeLongs(WritableByteChannel channel, ByteBuffer block, long[] src, int offset, int length) throws IOException {
+        final int blockLongs = block.capacity() / 8;
+        int n;
+        while(length > 0) {
+            n = Math.min(length, blockLongs);
+            block.clear();
+            block.asLongBuffer().put(src, offset, n);
+            block.limit(n * 8);
+            writeFully(channel, block);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    static void readLongs(ReadableByteChannel channel, ByteBuffer block, long[] dst, int offset, int length) throws IOException {
+        final int blockLongs = block.capacity() / 8;
+        int n;
+        while(length > 0) {
+            n = Math.min(length, blockLongs);
+            block.clear();
+            block.limit(n * 8);
+            readFully(channel, block);
+            block.flip();
+            block.asLongBuffer().get(dst, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Stream that writes to channel in frames of up to 64KB, each preceded by its length as a little-endian int, and
+     * ends with an empty frame on close. {@link #framedInput(ReadableByteChannel)} can then read exactly what was
+     * written, without reading past it. Closing the stream does not close channel
+     */
+    static OutputStream framedOutput(WritableByteChannel channel) {
+        return new FramedOutputStream(channel);
+    }
+
+    /**
+     * Stream over the frames written by {@link #framedOutput(WritableByteChannel)}, at the end after the empty frame.
+     * Closing the stream does not close channel
+     */
+    static InputStream framedInput(ReadableByteChannel channel) {
+        return new FramedInputStream(channel);
+    }
+
+    private static final class FramedOutputStream extends OutputStream {
+
+        private final WritableByteChannel channel;
+        //the frame's length, then its bytes - its own buffer, as whoever fills the frame may use the thread's block
+        private final ByteBuffer frame = ByteBuffer.allocate(BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private boolean closed = false;
+
+        FramedOutputStream(WritableByteChannel channel) {
+            this.channel = channel;
+            frame.position(4);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(!frame.hasRemaining()) {
+                writeFrame();
+            }
+            frame.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int n;
+            while(len > 0) {
+                if(!frame.hasRemaining()) {
+                    writeFrame();
+                }
+                n = Math.min(len, frame.remaining());
+                frame.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        //writes the frame even if it is empty
+        private void writeFrame() throws IOException {
+            frame.putInt(0, frame.position() - 4);
+            frame.flip();
+            writeFully(channel, frame);
+            frame.clear();
+            frame.position(4);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(!closed) {
+                closed = true;
+                if(frame.position() > 4) {
+                    writeFrame();
+                }
+                writeFrame();
+            }
+        }
+    }
+
+    private static final class FramedInputStream extends InputStream {
+
+        private final ReadableByteChannel channel;
+        private final ByteBuffer frame = ByteBuffer.allocate(BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private boolean ended = false;
+
+        FramedInputStream(ReadableByteChannel channel) {
+            this.channel = channel;
+            frame.limit(0);
+        }
+
+        //false at the empty frame
+        private boolean nextFrame() throws IOException {
+            while(!ended && !frame.hasRemaining()) {
+                frame.clear();
+                frame.limit(4);
+                readFully(channel, frame);
+                int length = frame.getInt(0);
+                if(length < 0 || length > BLOCK_BYTES - 4) {
+                    throw new IOException("Corrupt frame length " + length);
+                }
+                frame.clear();
+                frame.limit(length);
+                readFully(channel, frame);
+                frame.flip();
+                ended = length == 0;
+            }
+            return frame.hasRemaining();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return nextFrame() ? frame.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) {
+                return 0;
+            }
+            if(!nextFrame()) {
+                return -1;
+            }
+            int n = Math.min(len, frame.remaining());
+            frame.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.mfondo;
+
+/**
+ * How {@link CuckooFilter} encodes the fingerprints of one bucket in its storage. A bucket is bucketBits() bits
+ * starting at a bit offset the filter computes.
+ *
+ * contains must not change any state, so that a filter that is no longer added to can be read by many threads.
+ */
+abstract class BucketLayout {
+
+    final int bucketEntries;
+    final int fingerprintBits;
+
+    BucketLayout(int bucketEntries, int fingerprintBits) {
+        this.bucketEntries = bucketEntries;
+        this.fingerprintBits = fingerprintBits;
+    }
+
+    static BucketLayout create(CuckooFilter.Layout layout, int bucketEntries, int fingerprintBits) {
+        switch(layout) {
+            case BIT_PACKED:
+                return new BitPackedBucketLayout(bucketEntries, fingerprintBits);
+            case SEMI_SORTED:
+                return new SemiSortedBucketLayout(bucketEntries, fingerprintBits);
+            case PACKED:
+                return new PackedBucketLayout(bucketEntries, fingerprintBits);
+            default:
+                throw new IllegalArgumentException("Unknown layout " + layout);
+        }
+    }
+
+    abstract int bucketBits();
+
+    /**
+     * @param bits lower fingerprintBits bits of the element's hash
+     * @return the fingerprint to store - layouts that mark empty entries with 0 must never return 0
+     */
+    int fingerprint(int bits) {
+        return bits;
+    }
+
+    /**
+     * @return true if fingerprint was stored in a free entry, false if the bucket is full
+     */
+    abstract boolean add(FilterStorage data, long bucketBitOffset, int fingerprint);
+
+    abstract boolean contains(FilterStorage data, long bucketBitOffset, int fingerprint);
+
+    /**
+     * Removes one entry equal to fingerprint
+     * @return true if there was one
+     */
+    abstract boolean remove(FilterStorage data, long bucketBitOffset, int fingerprint);
+
+    /**
+     * @param entry which entry of a full bucket, from 0 to bucketEntries - 1
+     * @return its fingerprint
+     */
+    abstract int get(FilterStorage data, long bucketBitOffset, int entry);
+
+    /**
+     * @return number of entries in use, for layouts where 0 marks an empty entry
+     */
+    int occupied(FilterStorage data, long bucketBitOffset) {
+        int ret = 0;
+        for(int i = 0; i < bucketEntries; i++) {
+            if(get(data, bucketBitOffset, i) != 0) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Kicks out an entry of a full bucket
+     * @param entry which entry, from 0 to bucketEntries - 1
+     * @return the fingerprint that was replaced by fingerprint
+     */
+    abstract int swap(FilterStorage data, long bucketBitOffset, int entry, int fingerprint);
+}
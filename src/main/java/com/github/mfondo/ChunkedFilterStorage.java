@@ -0,0 +1,131 @@
+package com.github.mfondo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link FilterStorage} in direct or mapped {@link ByteBuffer}s. A single buffer cannot hold more than 2^31 bytes, so
+ * larger storage is split into chunks of 2^28 ints.
+ *
+ * The memory is released by {@link #close()} rather than whenever the buffers happen to be collected.
+ */
+abstract class ChunkedFilterStorage implements FilterStorage {
+
+    static final int CHUNK_SHIFT = 28;
+    static final long CHUNK_INTS = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_INTS - 1;
+
+    private final long length;
+    private ByteBuffer[] chunks;
+
+    ChunkedFilterStorage(long length) {
+        if(length < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.length = length;
+    }
+
+    static int numChunks(long length) {
+        return Math.max(1, (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT));
+    }
+
+    static int chunkLength(long length, int chunk) {
+        return (int) Math.min(length - (chunk * CHUNK_INTS), CHUNK_INTS);
+    }
+
+    //subclass constructors hand over the buffers once they are set up
+    void setChunks(ByteBuffer[] chunks) {
+        this.chunks = chunks;
+    }
+
+    @Override
+    public int getInt(long index) {
+        return chunk(index).getInt(((int) (index & CHUNK_MASK)) << 2);
+    }
+
+    @Override
+    public void setInt(long index, int value) {
+        chunk(index).putInt(((int) (index & CHUNK_MASK)) << 2, value);
+    }
+
+    ByteBuffer chunk(long index) {
+        final ByteBuffer[] chunks = this.chunks;
+        if(chunks == null) {
+            //a freed buffer would read or write memory that may have been handed out again
+            throw new IllegalStateException("Storage is closed");
+        }
+        return chunks[(int) (index >>> CHUNK_SHIFT)];
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Direct and mapped memory is not paged like {@link PagedFilterStorage}, so it cannot cheaply copy on write
+     */
+    @Override
+    public FilterStorage snapshot() {
+        throw new UnsupportedOperationException("Snapshots need heap storage");
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer block = null;
+        for(long index = 0; index < length; index += CHUNK_INTS) {
+            ByteBuffer chunk = chunk(index).duplicate();
+            chunk.clear();
+            if(chunk(index).order() == ByteOrder.LITTLE_ENDIAN) {
+                //already in the stream's byte order - hand the memory to the channel as is
+                BlockIO.writeFully(channel, chunk);
+            } else {
+                if(block == null) {
+                    block = BlockIO.block();
+                }
+                while(chunk.hasRemaining()) {
+                    block.clear();
+                    while(block.hasRemaining() && chunk.hasRemaining()) {
+                        //duplicates are big-endian, like the chunk
+                        block.putInt(chunk.getInt());
+                    }
+                    block.flip();
+                    BlockIO.writeFully(channel, block);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void readFrom(ReadableByteChannel channel) throws IOException {
+        for(long index = 0; index < length; index += CHUNK_INTS) {
+            ByteBuffer chunk = chunk(index).duplicate();
+            chunk.clear();
+            BlockIO.readFully(channel, chunk);
+            if(chunk(index).order() != ByteOrder.LITTLE_ENDIAN) {
+                for(int i = 0; i < chunk.capacity(); i += 4) {
+                    chunk.putInt(i, Integer.reverseBytes(chunk.getInt(i)));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void force() {
+        //only mapped storage has somewhere to write back to
+    }
+
+    @Override
+    public void close() {
+        ByteBuffer[] chunks = this.chunks;
+        this.chunks = null;
+        if(chunks != null) {
+            for(ByteBuffer chunk : chunks) {
+                DirectBuffers.release(chunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.github.mfondo;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe {@link CuckooFilter} that many producers and consumers can share.
+ *
+ * Each bucket is one aligned 64 bit word of an {@link AtomicLongArray}, so bucketEntries * fingerprintBits must be at
+ * most 64. A fingerprint of 0 marks an empty entry instead of occupancy bits. Adding to a free entry and removing are
+ * a single CAS on the bucket's word, and contains never locks or writes.
+ *
+ * When both buckets are full, add searches for a chain of kicks ending in a free entry without changing anything, then
+ * moves the fingerprints back to front. Each move copies the fingerprint into its other bucket before clearing it from
+ * the old one, under the write locks of both buckets' stripes, so a failed add leaves the filter as it was - where
+ * {@link CuckooFilter}'s random walk moves fingerprints and parks the last one in its victim slot. Moves bump a
+ * version counter per stripe, so a contains or remove that did not find its fingerprint retries if a move could have
+ * carried it between the two buckets while they were read.
+ *
+ * Random numbers for kicks come from {@link ThreadLocalRandom} rather than a shared {@link java.util.Random}.
+ */
+public class ConcurrentCuckooFilter<T> {
+
+    private static final int MIN_STRIPES = 16;
+
+    //versions are spread 8 longs (one cache line) apart so that readers of one stripe do not see writes to another
+    private static final int VERSION_PADDING = 8;
+
+    private final int bucketMask;
+    private final int bucketEntries;
+    private final int maxInsertLoops;
+    private final int fingerprintBits;
+    private final long fingerprintMask;
+    private final AtomicLongArray data;
+
+    private final ReentrantLock[] locks;
+    private final AtomicLongArray versions;
+    private final int stripeMask;
+
+    //makeRoom's kick path, bucket and entry of each kick interleaved - per thread, so that full buckets do not allocate
+    private final ThreadLocal<int[]> paths = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[maxInsertLoops * 2];
+        }
+    };
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets - must be a power of 2
+     * @param maxInsertLoops maximum number of kicks on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint - bucketEntries * fingerprintBits must be at most 64
+     */
+    public ConcurrentCuckooFilter(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits) {
+        if(bucketEntries < 1 || (bucketEntries & (bucketEntries - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid bucket entries");
+        }
+        if(numBuckets < 1 || (numBuckets & (numBuckets - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid number of buckets");
+        }
+        if(maxInsertLoops < 1) {
+            throw new IllegalArgumentException("Invalid max insert loops");
+        }
+        if(fingerprintBits < 1 || fingerprintBits > Integer.SIZE || fingerprintBits * bucketEntries > Long.SIZE) {
+            throw new IllegalArgumentException("Invalid fingerprint bits");
+        }
+        this.bucketEntries = bucketEntries;
+        this.maxInsertLoops = maxInsertLoops;
+        this.fingerprintBits = fingerprintBits;
+        bucketMask = numBuckets - 1;
+        fingerprintMask = (1L << fingerprintBits) - 1;
+        data = new AtomicLongArray(numBuckets);
+        int stripes = Math.max(MIN_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1);
+        stripes = Math.min(stripes, numBuckets);
+        locks = new ReentrantLock[stripes];
+        for(int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        versions = new AtomicLongArray(stripes * VERSION_PADDING);
+        stripeMask = stripes - 1;
+    }
+
+    /**
+     * @param t element to add
+     * @return true if the element was successfully added. If false, the filter is unchanged
+     */
+    public boolean add(T t) {
+        if(t == null) {
+            throw new IllegalArgumentException();
+        }
+        int hash = t.hashCode();
+        int fingerprint = fingerprint(hash);
+        int i1 = index(hash);
+        int i2 = alternateIndex(i1, fingerprint);
+        while(true) {
+            if(addToBucket(i1, fingerprint) || addToBucket(i2, fingerprint)) {
+                return true;
+            }
+            if(!makeRoom(ThreadLocalRandom.current().nextBoolean() ? i1 : i2)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @param t element to remove
+     * @return true if the element was contained in the filter
+     */
+    public boolean remove(T t) {
+        return containsOrRemove(t, true);
+    }
+
+    /**
+     * @param t T
+     * @return true if the filter possibly contains T, false if it definitely does not contain T
+     */
+    public boolean contains(T t) {
+        return containsOrRemove(t, false);
+    }
+
+    private boolean containsOrRemove(T t, boolean remove) {
+        int hash = t.hashCode();
+        int fingerprint = fingerprint(hash);
+        int i1 = index(hash);
+        int i2 = alternateIndex(i1, fingerprint);
+        int stripe1 = stripe(i1);
+        int stripe2 = stripe(i2);
+        while(true) {
+            long version1 = version(stripe1);
+            long version2 = version(stripe2);
+            if(bucketContainsOrRemove(i1, fingerprint, remove) || bucketContainsOrRemove(i2, fingerprint, remove)) {
+                return true;
+            }
+            //not found - valid unless a move could have carried the fingerprint from one bucket to the other meanwhile
+            if((version1 & 1) == 0 && (version2 & 1) == 0 && version1 == version(stripe1) && version2 == version(stripe2)) {
+                return false;
+            }
+            Thread.yield();
+        }
+    }
+
+    private int fingerprint(int hash) {
+        //upper bits of a 64 bit mix of t.hashCode(), and never 0, which marks an empty entry
+        int fingerprint = (int) ((CuckooHashing.mix64(hash) >>> Integer.SIZE) & fingerprintMask);
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private int index(int hash) {
+        //lower bits of the same mix, independent of the fingerprint bits
+        return (int) CuckooHashing.mix64(hash) & bucketMask;
+    }
+
+    private int alternateIndex(int index, int fingerprint) {
+        //from http://stackoverflow.com/questions/664014/what-integer-hash-function-are-good-that-accepts-an-integer-hash-key
+        fingerprint = ((fingerprint >>> 16) ^ fingerprint) * 0x45d9f3b;
+        fingerprint = ((fingerprint >>> 16) ^ fingerprint) * 0x45d9f3b;
+        fingerprint = ((fingerprint >>> 16) ^ fingerprint);
+        return (index ^ fingerprint) & bucketMask;
+    }
+
+    private long getEntry(long bucket, int entry) {
+        return (bucket >>> (entry * fingerprintBits)) & fingerprintMask;
+    }
+
+    private long setEntry(long bucket, int entry, long fingerprint) {
+        int shift = entry * fingerprintBits;
+        return (bucket & ~(fingerprintMask << shift)) | (fingerprint << shift);
+    }
+
+    //returns -1 if the bucket is full
+    private int freeEntry(long bucket) {
+        for(int i = 0; i < bucketEntries; i++) {
+            if(getEntry(bucket, i) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //returns true if fingerprint was added to a free entry of the bucket
+    private boolean addToBucket(int index, long fingerprint) {
+        long bucket;
+        int entry;
+        do {
+            bucket = data.get(index);
+            entry = freeEntry(bucket);
+            if(entry < 0) {
+                return false;
+            }
+        } while(!data.compareAndSet(index, bucket, setEntry(bucket, entry, fingerprint)));
+        return true;
+    }
+
+    private boolean bucketContainsOrRemove(int index, long fingerprint, boolean remove) {
+        long bucket;
+        int entry;
+        do {
+            bucket = data.get(index);
+            entry = -1;
+            for(int i = 0; i < bucketEntries; i++) {
+                if(getEntry(bucket, i) == fingerprint) {
+                    entry = i;
+                    break;
+                }
+            }
+            if(entry < 0) {
+                return false;
+            }
+            if(!remove) {
+                return true;
+            }
+        } while(!data.compareAndSet(index, bucket, setEntry(bucket, entry, 0)));
+        return true;
+    }
+
+    /**
+     * Searches for a chain of kicks from bucket index ending in a bucket with a free entry, then applies it back to front
+     * @return false if no chain was found within maxInsertLoops kicks
+     */
+    private boolean makeRoom(int index) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int[] path = paths.get();
+        int pathLength = 0;
+        long bucket;
+        int entry;
+        long fingerprint;
+        while(true) {
+            bucket = data.get(index);
+            if(freeEntry(bucket) >= 0) {
+                break;
+            }
+            if(pathLength >= maxInsertLoops) {
+                return false;
+            }
+            entry = rand.nextInt(bucketEntries);
+            fingerprint = getEntry(bucket, entry);
+            path[pathLength * 2] = index;
+            path[pathLength * 2 + 1] = entry;
+            pathLength++;
+            index = alternateIndex(index, (int) fingerprint);
+        }
+        for(int i = pathLength - 1; i >= 0; i--) {
+            if(!move(path[i * 2], path[i * 2 + 1])) {
+                //someone else changed the path, the caller tries again
+                break;
+            }
+        }
+        return true;
+    }
+
+    //moves the fingerprint of entry into a free entry of its other bucket, returns false if it is no longer possible
+    private boolean move(int from, int entry) {
+        long fingerprint = getEntry(data.get(from), entry);
+        if(fingerprint == 0) {
+            return true;
+        }
+        int to = alternateIndex(from, (int) fingerprint);
+        int stripe1 = stripe(from);
+        int stripe2 = stripe(to);
+        locks[Math.min(stripe1, stripe2)].lock();
+        if(stripe1 != stripe2) {
+            locks[Math.max(stripe1, stripe2)].lock();
+        }
+        try {
+            incrementVersions(stripe1, stripe2);
+            try {
+                if(getEntry(data.get(from), entry) != fingerprint || !addToBucket(to, fingerprint)) {
+                    return false;
+                }
+                long bucket;
+                do {
+                    bucket = data.get(from);
+                    if(getEntry(bucket, entry) != fingerprint) {
+                        //removed concurrently - take back the copy
+                        bucketContainsOrRemove(to, fingerprint, true);
+                        return false;
+                    }
+                } while(!data.compareAndSet(from, bucket, setEntry(bucket, entry, 0)));
+                return true;
+            } finally {
+                incrementVersions(stripe1, stripe2);
+            }
+        } finally {
+            locks[stripe1].unlock();
+            if(stripe1 != stripe2) {
+                locks[stripe2].unlock();
+            }
+        }
+    }
+
+    private int stripe(int index) {
+        return index & stripeMask;
+    }
+
+    private long version(int stripe) {
+        return versions.get(stripe * VERSION_PADDING);
+    }
+
+    private void incrementVersions(int stripe1, int stripe2) {
+        versions.incrementAndGet(stripe1 * VERSION_PADDING);
+        if(stripe1 != stripe2) {
+            versions.incrementAndGet(stripe2 * VERSION_PADDING);
+        }
+    }
+}
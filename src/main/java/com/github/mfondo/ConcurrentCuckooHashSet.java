@@ -0,0 +1,490 @@
+package com.github.mfondo;
+
+import com.google.common.collect.AbstractIterator;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe {@link CuckooHashSet}, following the optimistic concurrency scheme of MemC3 and libcuckoo:
+ * https://www.cs.cmu.edu/~dga/papers/memc3-nsdi2013.pdf
+ * https://www.cs.princeton.edu/~mfreed/docs/cuckoo-eurosys14.pdf
+ *
+ * Buckets are mapped onto a fixed number of stripes. Each stripe has a write lock and a version counter that is odd
+ * while a writer is changing one of the stripe's buckets. contains never locks: it reads both of the element's buckets
+ * between two reads of their versions, and retries if a writer - for example a kick moving the element from one bucket
+ * to the other - got in between. Kicks first search for a path of elements ending in a free slot without holding any
+ * lock, then move the elements back to front one at a time, locking only the two buckets involved in each move. Every
+ * element is always in at least one of its buckets. Resize takes every stripe lock, so it cannot lose concurrent
+ * inserts or removes.
+ *
+ * Iteration is weakly consistent: an element that a concurrent insert moves may be missed or returned twice.
+ *
+ * Random numbers for kicks come from {@link ThreadLocalRandom}, and each thread keeps its own kick path array.
+ */
+public class ConcurrentCuckooHashSet<T> extends AbstractSet<T> {
+
+    private static final int DEFAULT_INITIAL_SIZE = 16;
+    private static final int MIN_STRIPES = 16;
+
+    //versions are spread 8 longs (one cache line) apart so that readers of one stripe do not see writes to another
+    private static final int VERSION_PADDING = 8;
+
+    private final CuckooHashSet.HashFunction<T> hashFunction1;
+    private final CuckooHashSet.HashFunction<T> hashFunction2;
+    private final int maxInsertLoops;
+    private final float loadFactor;
+    private final int bucketEntries;
+
+    private final ReentrantLock[] locks;
+    private final AtomicLongArray versions;
+    private final int stripeMask;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile AtomicReferenceArray<T> values;
+    //makeRoom's kick chain, the position of each element to move
+    private final ThreadLocal<int[]> paths = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[maxInsertLoops];
+        }
+    };
+
+    /**
+     * Uses {@link Object#hashCode()} as the hash function
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized
+     */
+    public ConcurrentCuckooHashSet(int maxInsertLoops, float loadFactor) {
+        this(maxInsertLoops, loadFactor, 1, new CuckooHashSet.HashFunction<T>() {
+            @Override
+            public int hash(T t) {
+                return t.hashCode();
+            }
+        }, null);
+    }
+
+    /**
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized - see {@link CuckooHashSet}
+     * @param bucketEntries number of slots per bucket - must be a power of 2, 1 is plain cuckoo hashing
+     * @param hashFunction1 first hash function
+     * @param hashFunction2 second hash function - must be independent of first hash function, or null to use a mix
+     *                      of hashFunction1's output - see CuckooHashing
+     */
+    public ConcurrentCuckooHashSet(int maxInsertLoops, float loadFactor, int bucketEntries, CuckooHashSet.HashFunction<T> hashFunction1, CuckooHashSet.HashFunction<T> hashFunction2) {
+        this(maxInsertLoops, loadFactor, bucketEntries, hashFunction1, hashFunction2, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized - see {@link CuckooHashSet}
+     * @param bucketEntries number of slots per bucket - must be a power of 2, 1 is plain cuckoo hashing
+     * @param hashFunction1 first hash function
+     * @param hashFunction2 second hash function - must be independent of first hash function, or null to use a mix
+     *                      of hashFunction1's output - see CuckooHashing
+     * @param concurrencyLevel estimated number of concurrently writing threads, rounded up to a power of 2 stripes
+     */
+    public ConcurrentCuckooHashSet(int maxInsertLoops, float loadFactor, int bucketEntries, CuckooHashSet.HashFunction<T> hashFunction1, CuckooHashSet.HashFunction<T> hashFunction2, int concurrencyLevel) {
+        if(maxInsertLoops < 1 || loadFactor <= 0 || Float.isNaN(loadFactor) || hashFunction1 == null || concurrencyLevel < 1) {
+            throw new IllegalArgumentException();
+        }
+        if(bucketEntries < 1 || (bucketEntries & (bucketEntries - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid bucket entries");
+        }
+        this.maxInsertLoops = maxInsertLoops;
+        this.loadFactor = loadFactor;
+        this.bucketEntries = bucketEntries;
+        this.hashFunction1 = hashFunction1;
+        this.hashFunction2 = hashFunction2;
+        int stripes = Math.max(MIN_STRIPES, Integer.highestOneBit(concurrencyLevel - 1) << 1);
+        locks = new ReentrantLock[stripes];
+        for(int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        versions = new AtomicLongArray(stripes * VERSION_PADDING);
+        stripeMask = stripes - 1;
+        values = new AtomicReferenceArray<T>(initialLength());
+    }
+
+    private int initialLength() {
+        return Math.max(DEFAULT_INITIAL_SIZE, bucketEntries * 2);
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() < 1;
+    }
+
+    private int bucket1(AtomicReferenceArray<T> values, T t) {
+        return CuckooHashing.position1(hashFunction1, hashFunction2, t, values.length() / 2 / bucketEntries);
+    }
+
+    private int bucket2(AtomicReferenceArray<T> values, T t) {
+        return CuckooHashing.position2(hashFunction1, hashFunction2, t, values.length() / 2 / bucketEntries);
+    }
+
+    //the bucket an element kicked out of bucket would move to
+    private int alternateBucket(AtomicReferenceArray<T> values, int bucket, T t) {
+        int bucket1 = bucket1(values, t);
+        return bucket == bucket1 ? bucket2(values, t) : bucket1;
+    }
+
+    private int stripe(int bucket) {
+        return bucket & stripeMask;
+    }
+
+    private long version(int stripe) {
+        return versions.get(stripe * VERSION_PADDING);
+    }
+
+    private void incrementVersion(int stripe) {
+        versions.incrementAndGet(stripe * VERSION_PADDING);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        T val = (T) o;
+        while(true) {
+            AtomicReferenceArray<T> values = this.values;
+            int bucket1 = bucket1(values, val);
+            int bucket2 = bucket2(values, val);
+            int stripe1 = stripe(bucket1);
+            int stripe2 = stripe(bucket2);
+            long version1 = version(stripe1);
+            long version2 = version(stripe2);
+            if((version1 & 1) == 0 && (version2 & 1) == 0) {
+                int pos = getPosition(values, val, bucket1, bucket2);
+                //nothing moved in or out of either bucket while they were read
+                if(version1 == version(stripe1) && version2 == version(stripe2) && values == this.values) {
+                    return pos >= 0;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    //returns -1 if val is in neither of its buckets
+    private int getPosition(AtomicReferenceArray<T> values, T val, int bucket1, int bucket2) {
+        int pos = bucket1 * bucketEntries;
+        for(int i = 0; i < bucketEntries; i++, pos++) {
+            if(val.equals(values.get(pos))) {
+                return pos;
+            }
+        }
+        pos = bucket2 * bucketEntries;
+        for(int i = 0; i < bucketEntries; i++, pos++) {
+            if(val.equals(values.get(pos))) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    //locks the stripes of both buckets, always lower stripe first so that writers cannot deadlock
+    private void lock(int stripe1, int stripe2) {
+        locks[Math.min(stripe1, stripe2)].lock();
+        if(stripe1 != stripe2) {
+            locks[Math.max(stripe1, stripe2)].lock();
+        }
+    }
+
+    private void unlock(int stripe1, int stripe2) {
+        locks[stripe1].unlock();
+        if(stripe1 != stripe2) {
+            locks[stripe2].unlock();
+        }
+    }
+
+    //only called with the stripe locks held - readers of the stripes retry until the matching endWrite
+    private void beginWrite(int stripe1, int stripe2) {
+        incrementVersion(stripe1);
+        if(stripe1 != stripe2) {
+            incrementVersion(stripe2);
+        }
+    }
+
+    private void endWrite(int stripe1, int stripe2) {
+        beginWrite(stripe1, stripe2);
+    }
+
+    /**
+     * @throws IllegalStateException if the hash functions collide so often that growing the table does not help
+     */
+    @Override
+    public boolean add(T t) {
+        if(t == null) {
+            throw new IllegalArgumentException();
+        }
+        int failedPaths = 0;
+        //of the table, by this add
+        int doublings = 0;
+        while(true) {
+            AtomicReferenceArray<T> values = this.values;
+            if(((float)size.get()) > (capacity(values) * loadFactor)) {
+                doublings = resize(values, doublings + 1);
+                continue;
+            }
+            int bucket1 = bucket1(values, t);
+            int bucket2 = bucket2(values, t);
+            int stripe1 = stripe(bucket1);
+            int stripe2 = stripe(bucket2);
+            lock(stripe1, stripe2);
+            try {
+                if(values != this.values) {
+                    //resized while waiting for the locks
+                    continue;
+                }
+                if(getPosition(values, t, bucket1, bucket2) >= 0) {
+                    return false;
+                }
+                int pos = freeSlot(values, bucket1);
+                if(pos < 0) {
+                    pos = freeSlot(values, bucket2);
+                }
+                if(pos >= 0) {
+                    beginWrite(stripe1, stripe2);
+                    values.set(pos, t);
+                    endWrite(stripe1, stripe2);
+                    size.incrementAndGet();
+                    return true;
+                }
+            } finally {
+                unlock(stripe1, stripe2);
+            }
+            //both buckets are full - make room and try again
+            if(!makeRoom(values, ThreadLocalRandom.current().nextBoolean() ? bucket1 : bucket2)) {
+                if(++failedPaths >= 2) {
+                    doublings = resize(values, doublings + 1);
+                    failedPaths = 0;
+                }
+            }
+        }
+    }
+
+    //default access for unit testing
+    int tableLength() {
+        return values.length();
+    }
+
+    //number of elements loadFactor is relative to
+    private int capacity(AtomicReferenceArray<T> values) {
+        return bucketEntries == 1 ? values.length() / 2 : values.length();
+    }
+
+    //returns -1 if the bucket is full
+    private int freeSlot(AtomicReferenceArray<T> values, int bucket) {
+        int pos = bucket * bucketEntries;
+        for(int i = 0; i < bucketEntries; i++, pos++) {
+            if(values.get(pos) == null) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Frees a slot in bucket by searching, without locks, for a chain of kicks ending in a free slot, then applying the
+     * chain back to front so that no element is ever out of the table.
+     * @return false if no chain was found within maxInsertLoops kicks
+     */
+    private boolean makeRoom(AtomicReferenceArray<T> values, int bucket) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int[] path = paths.get();
+        int pathLength = 0;
+        boolean found = false;
+        int pos;
+        T t;
+        while(!found && pathLength < maxInsertLoops) {
+            pos = bucket * bucketEntries + (bucketEntries > 1 ? rand.nextInt(bucketEntries) : 0);
+            t = values.get(pos);
+            if(t == null) {
+                //a slot was freed concurrently
+                found = true;
+            } else {
+                path[pathLength++] = pos;
+                bucket = alternateBucket(values, bucket, t);
+                found = freeSlot(values, bucket) >= 0;
+            }
+        }
+        if(!found) {
+            return false;
+        }
+        for(int i = pathLength - 1; i >= 0; i--) {
+            if(!move(values, path[i])) {
+                //the table changed under the path - the caller will look again
+                return true;
+            }
+        }
+        return true;
+    }
+
+    //moves the element at pos to a free slot in its other bucket, returns false if that is no longer possible
+    private boolean move(AtomicReferenceArray<T> values, int pos) {
+        T t = values.get(pos);
+        if(t == null) {
+            return true;
+        }
+        int fromBucket = pos / bucketEntries;
+        int toBucket = alternateBucket(values, fromBucket, t);
+        int stripe1 = stripe(fromBucket);
+        int stripe2 = stripe(toBucket);
+        lock(stripe1, stripe2);
+        try {
+            if(values != this.values || values.get(pos) != t) {
+                return false;
+            }
+            int to = freeSlot(values, toBucket);
+            if(to < 0) {
+                return false;
+            }
+            beginWrite(stripe1, stripe2);
+            values.set(to, t);
+            values.set(pos, null);
+            endWrite(stripe1, stripe2);
+            return true;
+        } finally {
+            unlock(stripe1, stripe2);
+        }
+    }
+
+    /**
+     * Doubles the table, and again until every element fits, unless another thread already replaced oldValues. Holds
+     * every stripe lock, so no writer can change the old table while it is copied.
+     * @param doublings number of doublings of the calling add so far, including this one
+     * @return number of doublings of the calling add after the resize, doublings - 1 if it did not resize
+     * @throws IllegalStateException if the add doubled the table too often - see {@link CuckooHashing#redouble(int, int)}
+     */
+    private int resize(AtomicReferenceArray<T> oldValues, int doublings) {
+        for(ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            if(oldValues != values) {
+                return doublings - 1;
+            }
+            AtomicReferenceArray<T> tmp = new AtomicReferenceArray<T>(CuckooHashing.redouble(oldValues.length(), doublings));
+            while(!addValues(oldValues, tmp)) {
+                tmp = new AtomicReferenceArray<T>(CuckooHashing.redouble(tmp.length(), ++doublings));
+            }
+            values = tmp;
+            return doublings;
+        } finally {
+            for(ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    //single threaded insert into a table that is not published yet, returns false if one of the values could not be placed
+    private boolean addValues(AtomicReferenceArray<T> from, AtomicReferenceArray<T> to) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        T t;
+        T kicked;
+        int bucket;
+        int pos;
+        outer:
+        for(int i = 0; i < from.length(); i++) {
+            t = from.get(i);
+            if(t == null) {
+                continue;
+            }
+            bucket = bucket1(to, t);
+            for(int loops = 0; loops < maxInsertLoops * 2; loops++) {
+                pos = freeSlot(to, bucket);
+                if(pos < 0) {
+                    pos = freeSlot(to, alternateBucket(to, bucket, t));
+                }
+                if(pos >= 0) {
+                    to.set(pos, t);
+                    continue outer;
+                }
+                pos = bucket * bucketEntries + (bucketEntries > 1 ? rand.nextInt(bucketEntries) : 0);
+                kicked = to.get(pos);
+                to.set(pos, t);
+                bucket = alternateBucket(to, bucket, kicked);
+                t = kicked;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if(o == null) {
+            return false;
+        }
+        T val = (T) o;
+        while(true) {
+            AtomicReferenceArray<T> values = this.values;
+            int bucket1 = bucket1(values, val);
+            int bucket2 = bucket2(values, val);
+            int stripe1 = stripe(bucket1);
+            int stripe2 = stripe(bucket2);
+            lock(stripe1, stripe2);
+            try {
+                if(values != this.values) {
+                    continue;
+                }
+                int pos = getPosition(values, val, bucket1, bucket2);
+                if(pos < 0) {
+                    return false;
+                }
+                beginWrite(stripe1, stripe2);
+                values.set(pos, null);
+                endWrite(stripe1, stripe2);
+                size.decrementAndGet();
+                return true;
+            } finally {
+                unlock(stripe1, stripe2);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for(ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            values = new AtomicReferenceArray<T>(initialLength());
+            size.set(0);
+        } finally {
+            for(ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final AtomicReferenceArray<T> values = this.values;
+        return new AbstractIterator<T>() {
+
+            private int currentPos = 0;
+
+            @Override
+            protected T computeNext() {
+                T t;
+                while(currentPos < values.length()) {
+                    t = values.get(currentPos++);
+                    if(t != null) {
+                        return t;
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+}
@@ -0,0 +1,181 @@
+package com.github.mfondo;
+
+/**
+ * {@link CuckooFilter} that counts how often each element was added. Each entry holds a fingerprint and a saturating
+ * counter of counterBits bits, so adding an element that is already in one of its buckets increments its entry instead
+ * of taking another one. A plain filter fills both buckets of a key added 2 * bucketEntries times, after which every
+ * add to those buckets sets off a kick chain that cannot succeed. Only when an entry's counter is saturated does the
+ * element take a further entry, and its count is the sum of its entries.
+ *
+ * The count of an element is never lower than the number of times it was added and not removed, but like contains it
+ * can be higher, by the count of another element with the same fingerprint in one of its buckets.
+ *
+ * Entries are fingerprintBits + counterBits bits in a {@link PackedEntryTable}, with the count above the fingerprint so
+ * that an empty entry, count 0, is 0. A failed add leaves the filter as it was.
+ */
+public class CountingCuckooFilter<T> {
+
+    private final int bucketEntries;
+    private final int fingerprintBits;
+    private final int fingerprintMask;
+    private final int maxCount;
+    private final ElementHasher64<? super T> hashFunction;
+    private final int seed;
+    private final PackedEntryTable table;
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of kicks on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param counterBits number of bits in each entry's counter - fingerprintBits + counterBits must be at most 32
+     */
+    public CountingCuckooFilter(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int counterBits) {
+        this(bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, counterBits, Murmur3.HASH_CODE, 0);
+    }
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of kicks on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param counterBits number of bits in each entry's counter - fingerprintBits + counterBits must be at most 32
+     * @param hashFunction hashes elements - see {@link CuckooFilter}
+     * @param seed passed to hashFunction
+     */
+    public CountingCuckooFilter(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int counterBits,
+                                ElementHasher64<? super T> hashFunction, int seed) {
+        if(bucketEntries < 1 || (bucketEntries & (bucketEntries - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid bucket entries");
+        }
+        if(numBuckets < 1) {
+            throw new IllegalArgumentException("Invalid number of buckets");
+        }
+        if(maxInsertLoops < 1) {
+            throw new IllegalArgumentException("Invalid max insert loops");
+        }
+        if(fingerprintBits < 1 || counterBits < 1 || fingerprintBits + counterBits > Integer.SIZE) {
+            throw new IllegalArgumentException("Invalid fingerprint or counter bits");
+        }
+        if(hashFunction == null) {
+            throw new IllegalArgumentException("Invalid hash function");
+        }
+        this.bucketEntries = bucketEntries;
+        this.fingerprintBits = fingerprintBits;
+        this.hashFunction = hashFunction;
+        this.seed = seed;
+        fingerprintMask = (int) ((1L << fingerprintBits) - 1);
+        maxCount = (int) ((1L << counterBits) - 1);
+        table = new PackedEntryTable(bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, fingerprintBits + counterBits);
+    }
+
+    /**
+     * Counts one more of t
+     * @return true if it was counted, false if neither of its buckets had a free entry or a counter of t below the
+     * maximum, and no room could be made. The filter is then unchanged
+     */
+    public boolean add(T t) {
+        if(t == null) {
+            throw new IllegalArgumentException();
+        }
+        long hash = hashFunction.hash(t, seed);
+        int fingerprint = fingerprint(hash);
+        int i1 = table.index(hash);
+        int i2 = table.alternateIndex(i1, fingerprint);
+        if(increment(i1, fingerprint) || increment(i2, fingerprint)) {
+            return true;
+        }
+        int newEntry = entry(fingerprint, 1);
+        if(table.add(i1, newEntry) >= 0 || table.add(i2, newEntry) >= 0) {
+            return true;
+        }
+        int i = table.makeRoom(i1, i2);
+        return i >= 0 && table.add(i, newEntry) >= 0;
+    }
+
+    /**
+     * Counts one less of t
+     * @return true if t was counted, as far as the filter can tell
+     */
+    public boolean remove(T t) {
+        long hash = hashFunction.hash(t, seed);
+        int fingerprint = fingerprint(hash);
+        int i1 = table.index(hash);
+        return decrement(i1, fingerprint) || decrement(table.alternateIndex(i1, fingerprint), fingerprint);
+    }
+
+    /**
+     * @return the number of times t was added and not removed, or more - see the class comment
+     */
+    public int count(T t) {
+        long hash = hashFunction.hash(t, seed);
+        int fingerprint = fingerprint(hash);
+        int i1 = table.index(hash);
+        int i2 = table.alternateIndex(i1, fingerprint);
+        int ret = bucketCount(i1, fingerprint);
+        if(i2 != i1) {
+            ret += bucketCount(i2, fingerprint);
+        }
+        return ret;
+    }
+
+    /**
+     * @return true if the filter possibly contains t, false if it definitely does not
+     */
+    public boolean contains(T t) {
+        return count(t) > 0;
+    }
+
+    private int fingerprint(long hash) {
+        return (int) (hash >>> Integer.SIZE) & fingerprintMask;
+    }
+
+    private int entry(int fingerprint, int count) {
+        return (count << fingerprintBits) | fingerprint;
+    }
+
+    private int countOf(int entry) {
+        return entry >>> fingerprintBits;
+    }
+
+    private int fingerprintOf(int entry) {
+        return entry & fingerprintMask;
+    }
+
+    //returns true if an entry of fingerprint below the maximum count was incremented
+    private boolean increment(int bucket, int fingerprint) {
+        for(int e = 0; e < bucketEntries; e++) {
+            int entry = table.get(bucket, e);
+            int count = countOf(entry);
+            if(count > 0 && count < maxCount && fingerprintOf(entry) == fingerprint) {
+                table.set(bucket, e, entry(fingerprint, count + 1));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //returns true if an entry of fingerprint was decremented, emptying it at 0
+    private boolean decrement(int bucket, int fingerprint) {
+        for(int e = 0; e < bucketEntries; e++) {
+            int entry = table.get(bucket, e);
+            int count = countOf(entry);
+            if(count > 0 && fingerprintOf(entry) == fingerprint) {
+                table.set(bucket, e, count == 1 ? 0 : entry(fingerprint, count - 1));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int bucketCount(int bucket, int fingerprint) {
+        int ret = 0;
+        for(int e = 0; e < bucketEntries; e++) {
+            int entry = table.get(bucket, e);
+            if(countOf(entry) > 0 && fingerprintOf(entry) == fingerprint) {
+                ret += countOf(entry);
+            }
+        }
+        return ret;
+    }
+}
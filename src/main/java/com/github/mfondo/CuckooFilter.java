@@ -1,5 +1,15 @@
 package com.github.mfondo;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Random;
 
 /**
@@ -11,24 +21,104 @@ import java.util.Random;
  * http://www.eecs.harvard.edu/~michaelm/postscripts/cuckoo-conext2014.pdf
  * http://www.cs.cmu.edu/~binfan/papers/login_cuckoofilter.pdf
  *
- * semi-sorting buckets, as described in the paper has not been implemented here yet
+ * Buckets are either plain bit-packed fingerprints with occupancy bits, semi-sorted as described in the paper, or
+ * word packed for 8, 12 and 16 bit fingerprints - see {@link Layout}.
+ *
+ * The buckets are either in an int[] on the heap or, for filters in the gigabytes, off-heap in direct memory that
+ * {@link #close()} releases. A filter can also live in a file - see {@link #create(File, Layout, int, int, int, int, int)} and
+ * {@link #open(File, boolean)} - and be queried straight from the mapped pages.
+ *
+ * {@link #writeTo(WritableByteChannel)} streams a filter in the same format, and {@link #snapshot()} takes a copy of
+ * a heap filter that stays consistent while this one keeps changing.
+ *
+ * An element's fingerprint and bucket are the upper and lower halves of a seeded 64 bit hash of it, so they are
+ * independent, and the bucket uses 32 bits whatever the fingerprint size. The hash comes from a {@link ElementHasher64},
+ * by default {@link Murmur3#HASH_CODE}. Filters written before 64 bit hashing still take both from t.hashCode() when
+ * they are read back. Keys that are slices of a byte[] or {@link ByteBuffer} can be added and looked up in place, with
+ * no allocation, through the (array or buffer, offset, length) methods.
+ *
+ * {@link #stats()} reports kick chain lengths, failed adds, load, bucket occupancy and the resulting false positive
+ * rate - the counters only while {@link #setStatsEnabled(boolean)} is on - and {@link #statsMXBean()} exposes them over
+ * JMX.
  */
-public class CuckooFilter<T> {
+public class CuckooFilter<T> implements Closeable {
 
     private static final int ALL_ONE_BITS;
+    //keys whose bucket reads containsAll and addAll overlap
+    private static final int BATCH = 16;
 
     static {
         ALL_ONE_BITS = createMask(Integer.SIZE);
     }
 
+    /**
+     * How the fingerprints of a bucket are encoded
+     */
+    public enum Layout {
+        /**
+         * bucketEntries occupancy bits followed by bucketEntries fingerprints - any bucketEntries and fingerprintBits
+         */
+        BIT_PACKED(0),
+        /**
+         * 4 fingerprints kept sorted, with their high 4 bits stored as a 12 bit index and 0 marking an empty entry -
+         * 2 bits less per entry than BIT_PACKED at the same false positive rate. Needs 4 bucketEntries and at least 4
+         * fingerprintBits, and adds and removes are slower
+         */
+        SEMI_SORTED(1),
+        /**
+         * 4 fingerprints of 8, 12 or 16 bits, or 8 or 16 fingerprints of 8 or 16 bits, with 0 marking an empty entry
+         * instead of occupancy bits. A lookup compares a long's worth of entries at once, or a whole bucket with
+         * SIMD when the cuckoohash-vector module is present. The fastest layout for those sizes
+         */
+        PACKED(2);
+
+        //stored in files, unlike ordinal()
+        final int id;
+
+        Layout(int id) {
+            this.id = id;
+        }
+
+        static Layout forId(int id) throws IOException {
+            for(Layout layout : values()) {
+                if(layout.id == id) {
+                    return layout;
+                }
+            }
+            throw new IOException("Unsupported bucket layout " + id);
+        }
+    }
+
     private final Random rand;
+    private final Layout layout;
+    private final BucketLayout buckets;
     private final int numBuckets;
     private final int bucketEntries;
     private final int maxInsertLoops;
-    private final int[] data;
+    //not final only so that the first snapshot can page heap storage
+    private FilterStorage data;
     private final int fingerprintBits;
     private final int fingerprintMask;
     private final int bucketBits;
+    private final int seed;
+    private final ElementHasher64<? super T> hashFunction;
+    //CuckooFilterFile.HASHING_64, or HASHING_HASH_CODE for a filter from an old file
+    private final int hashing;
+    //the fingerprint a failed kick chain ended with, kept instead of dropped - while it is held, adds that would need
+    //kicking fail
+    private boolean hasVictim;
+    private int victimBucket;
+    private int victimFingerprint;
+    //header of the file the filter is mapped from, or null
+    private ByteBuffer fileHeader;
+    private InsertStrategy insertStrategy = InsertStrategy.RANDOM_WALK;
+    //breadth-first search tree of InsertStrategy.BREADTH_FIRST: the bucket of each node, its parent node, and the
+    //fingerprint that moves from the parent's bucket into it
+    private int[] pathBuckets;
+    private int[] pathParents;
+    private int[] pathFingerprints;
+    //null unless stats are enabled
+    private CuckooStats stats;
 
     /**
      * @param bucketEntries number of entries per bucket
@@ -37,9 +127,82 @@ public class CuckooFilter<T> {
      * @param fingerprintBits number of bits in fingerprint
      */
     public CuckooFilter(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits) {
+        this(bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, false);
+    }
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of loop iterations on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param offHeap if true, the buckets are kept in direct memory outside the heap until {@link #close()}
+     */
+    public CuckooFilter(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, boolean offHeap) {
+        this(Layout.BIT_PACKED, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, offHeap);
+    }
+
+    /**
+     * @param layout how buckets are encoded
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of loop iterations on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param offHeap if true, the buckets are kept in direct memory outside the heap until {@link #close()}
+     */
+    public CuckooFilter(Layout layout, int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, boolean offHeap) {
+        this(layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, offHeap, Murmur3.HASH_CODE, 0);
+    }
+
+    /**
+     * @param layout how buckets are encoded
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of loop iterations on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param offHeap if true, the buckets are kept in direct memory outside the heap until {@link #close()}
+     * @param hashFunction hashes elements - see the class comment
+     * @param seed passed to hashFunction, so that filters with different seeds place elements differently
+     */
+    public CuckooFilter(Layout layout, int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, boolean offHeap,
+                        ElementHasher64<? super T> hashFunction, int seed) {
+        this(layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, seed, hashFunction, CuckooFilterFile.HASHING_64,
+                newStorage(layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, offHeap));
+    }
+
+    private CuckooFilter(Layout layout, int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int seed,
+                         ElementHasher64<? super T> hashFunction, int hashing, FilterStorage data) {
+        checkArguments(layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits);
+        if(hashFunction == null) {
+            throw new IllegalArgumentException("Invalid hash function");
+        }
+        this.fingerprintBits = fingerprintBits;
+        rand = new Random();
+        this.layout = layout;
+        buckets = BucketLayout.create(layout, bucketEntries, fingerprintBits);
+        this.bucketEntries = bucketEntries;
+        this.numBuckets = numBuckets;
+        this.maxInsertLoops = maxInsertLoops;
+        this.seed = seed;
+        this.hashFunction = hashFunction;
+        this.hashing = hashing;
+        bucketBits = buckets.bucketBits();
+        if(data.length() < storageLength(bucketBits, numBuckets)) {
+            throw new IllegalArgumentException("Storage too small");
+        }
+        this.data = data;
+        fingerprintMask = createMask(fingerprintBits);
+    }
+
+    private static void checkArguments(Layout layout, int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits) {
+        if(layout == null) {
+            throw new IllegalArgumentException("Invalid layout");
+        }
         if(bucketEntries < 1 || !isPowerOf2(bucketEntries)) {
             throw new IllegalArgumentException("Invalid bucket entries");
         }
+        if(numBuckets < 1) {
+            throw new IllegalArgumentException("Invalid number of buckets");
+        }
         if(maxInsertLoops < 1) {
             throw new IllegalArgumentException("Invalid max insert loops");
         }
@@ -47,19 +210,266 @@ public class CuckooFilter<T> {
         if(fingerprintBits < 1 || fingerprintBits > Integer.SIZE) {
             throw new IllegalArgumentException("Invalid fingerprint bits");
         }
-        this.fingerprintBits = fingerprintBits;
-        rand = new Random();
-        this.bucketEntries = bucketEntries;
-        this.numBuckets = numBuckets;
-        this.maxInsertLoops = maxInsertLoops;
-        bucketBits = ((fingerprintBits * bucketEntries) + bucketEntries);
-        int dataSize = bucketBits * numBuckets;
-        dataSize += (dataSize % 8);//so that division rounds up
-        data = new int[dataSize / 8];
-        fingerprintMask = createMask(fingerprintBits);
+        //the layout checks its own constraints
+        BucketLayout.create(layout, bucketEntries, fingerprintBits);
+    }
+
+    private static long storageLength(Layout layout, int bucketEntries, int numBuckets, int fingerprintBits) {
+        return storageLength(BucketLayout.create(layout, bucketEntries, fingerprintBits).bucketBits(), numBuckets);
+    }
+
+    private static FilterStorage newStorage(Layout layout, int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, boolean offHeap) {
+        checkArguments(layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits);
+        long dataSize = storageLength(layout, bucketEntries, numBuckets, fingerprintBits);
+        return offHeap ? new OffHeapFilterStorage(dataSize) : new HeapFilterStorage(dataSize);
+    }
+
+    /**
+     * Like the method below, with {@link Layout#BIT_PACKED} buckets and {@link Murmur3#HASH_CODE}
+     */
+    public static <T> CuckooFilter<T> create(File file, int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int seed) throws IOException {
+        return create(file, Layout.BIT_PACKED, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, seed);
+    }
+
+    /**
+     * Creates an empty filter in file, replacing anything already there. The filter is updated in place through a
+     * writable mapping - call {@link #force()} to make sure changes have reached the disk, and {@link #close()} to
+     * unmap it.
+     * @param file file to create
+     * @param layout how buckets are encoded
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of loop iterations on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param seed passed to {@link Murmur3#HASH_CODE}, so that filters with different seeds place elements differently
+     */
+    public static <T> CuckooFilter<T> create(File file, Layout layout, int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int seed) throws IOException {
+        return create(file, layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, seed, Murmur3.HASH_CODE);
+    }
+
+    /**
+     * Like the method above, hashing elements with hashFunction. Only the seed is saved in the file, so pass the same
+     * hashFunction to {@link #open(File, boolean, ElementHasher64)}
+     */
+    public static <T> CuckooFilter<T> create(File file, Layout layout, int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int seed,
+                                             ElementHasher64<? super T> hashFunction) throws IOException {
+        checkArguments(layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits);
+        long dataSize = storageLength(layout, bucketEntries, numBuckets, fingerprintBits);
+        CuckooFilterFile header = new CuckooFilterFile(layout.id, bucketEntries, numBuckets, fingerprintBits, maxInsertLoops, seed, dataSize, false, 0, 0,
+                CuckooFilterFile.HASHING_64);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            //the file is truncated then extended, so the words read back as zeroes - an empty filter
+            channel.truncate(0);
+            raf.setLength(CuckooFilterFile.HEADER_BYTES + (dataSize * 4));
+            writeFully(channel, header.writeHeader(), 0);
+            CuckooFilter<T> ret = new CuckooFilter<T>(layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, seed, hashFunction, CuckooFilterFile.HASHING_64,
+                    new MappedFilterStorage(channel, CuckooFilterFile.HEADER_BYTES, dataSize, true));
+            ret.mapHeader(channel, true);
+            return ret;
+        } finally {
+            raf.close();
+        }
     }
 
     /**
+     * Maps a filter written by {@link #create(File, Layout, int, int, int, int, int)} without reading the buckets, so it is
+     * ready as soon as this returns. Call {@link #close()} to unmap it.
+     * @param file file to open
+     * @param writable if false, the filter is read-only and add or remove throw {@link java.nio.ReadOnlyBufferException}.
+     *                 If true, the filter is updated in place - see {@link #force()}
+     */
+    public static <T> CuckooFilter<T> open(File file, boolean writable) throws IOException {
+        return open(file, writable, Murmur3.HASH_CODE);
+    }
+
+    /**
+     * Like the method above, for a filter created with hashFunction
+     */
+    public static <T> CuckooFilter<T> open(File file, boolean writable, ElementHasher64<? super T> hashFunction) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            CuckooFilterFile header = readHeader(channel);
+            if(channel.size() < CuckooFilterFile.HEADER_BYTES + (header.storageLength * 4)) {
+                throw new IOException("Truncated cuckoo filter file");
+            }
+            CuckooFilter<T> ret;
+            try {
+                ret = new CuckooFilter<T>(Layout.forId(header.layout), header.bucketEntries, header.numBuckets, header.maxInsertLoops, header.fingerprintBits, header.seed,
+                        hashFunction, header.hashing, new MappedFilterStorage(channel, CuckooFilterFile.HEADER_BYTES, header.storageLength, writable));
+            } catch(IllegalArgumentException e) {
+                throw new IOException("Corrupt cuckoo filter header", e);
+            }
+            ret.setVictim(header.hasVictim, header.victimBucket, header.victimFingerprint);
+            ret.mapHeader(channel, writable);
+            return ret;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static CuckooFilterFile readHeader(ReadableByteChannel channel) throws IOException {
+        ByteBuffer headerBytes = ByteBuffer.allocate(CuckooFilterFile.HEADER_BYTES);
+        BlockIO.readFully(channel, headerBytes);
+        headerBytes.flip();
+        CuckooFilterFile header = CuckooFilterFile.readHeader(headerBytes);
+        //fails early on a layout this version does not know
+        Layout.forId(header.layout);
+        return header;
+    }
+
+    //keeps the victim in the file's header up to date
+    private void mapHeader(FileChannel channel, boolean writable) throws IOException {
+        try {
+            fileHeader = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, CuckooFilterFile.HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        } catch(IOException e) {
+            data.close();
+            throw e;
+        }
+    }
+
+    private CuckooFilterFile header() {
+        return new CuckooFilterFile(layout.id, bucketEntries, numBuckets, fingerprintBits, maxInsertLoops, seed, data.length(),
+                hasVictim, victimBucket, victimFingerprint, hashing);
+    }
+
+    /**
+     * Writes this filter in the format of {@link #create(File, Layout, int, int, int, int, int)}: the header, then the bucket
+     * words in large blocks. To write a filter out while it keeps changing, write a {@link #snapshot()} instead.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        BlockIO.writeFully(channel, header().writeHeader());
+        data.writeTo(channel);
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(WritableByteChannel)} onto the heap
+     */
+    public static <T> CuckooFilter<T> readFrom(ReadableByteChannel channel) throws IOException {
+        return readFrom(channel, false);
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(WritableByteChannel)}
+     * @param offHeap if true, the buckets are kept in direct memory outside the heap until {@link #close()}
+     */
+    public static <T> CuckooFilter<T> readFrom(ReadableByteChannel channel, boolean offHeap) throws IOException {
+        return readFrom(channel, offHeap, Murmur3.HASH_CODE);
+    }
+
+    /**
+     * Like the method above, for a filter that hashes elements with hashFunction
+     */
+    public static <T> CuckooFilter<T> readFrom(ReadableByteChannel channel, boolean offHeap, ElementHasher64<? super T> hashFunction) throws IOException {
+        CuckooFilterFile header = readHeader(channel);
+        Layout layout = Layout.forId(header.layout);
+        CuckooFilter<T> ret;
+        try {
+            ret = new CuckooFilter<T>(layout, header.bucketEntries, header.numBuckets, header.maxInsertLoops, header.fingerprintBits, header.seed,
+                    hashFunction, header.hashing, newStorage(layout, header.bucketEntries, header.numBuckets, header.maxInsertLoops, header.fingerprintBits, offHeap));
+        } catch(IllegalArgumentException e) {
+            throw new IOException("Corrupt cuckoo filter header", e);
+        }
+        if(ret.data.length() != header.storageLength) {
+            ret.close();
+            throw new IOException("Corrupt cuckoo filter header");
+        }
+        try {
+            ret.data.readFrom(channel);
+        } catch(IOException e) {
+            ret.close();
+            throw e;
+        }
+        ret.setVictim(header.hasVictim, header.victimBucket, header.victimFingerprint);
+        return ret;
+    }
+
+    /**
+     * Copy-on-write copy of this filter: it costs one pointer per 64KB of buckets, and afterwards whichever of the two
+     * filters first changes a 64KB page copies it. The snapshot never changes, so another thread can read or
+     * {@link #writeTo(WritableByteChannel)} it while this filter keeps taking writes from its own thread.
+     *
+     * The first snapshot copies the buckets once into pages, which this filter then keeps using. Filters that are never
+     * snapshotted keep their buckets in one array, which is faster to address.
+     * @throws UnsupportedOperationException if the filter is off-heap or mapped from a file
+     */
+    public CuckooFilter<T> snapshot() {
+        if(data instanceof HeapFilterStorage) {
+            data = new PagedFilterStorage(((HeapFilterStorage) data).array());
+        }
+        CuckooFilter<T> ret = new CuckooFilter<T>(layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, seed, hashFunction, hashing, data.snapshot());
+        ret.setVictim(hasVictim, victimBucket, victimFingerprint);
+        ret.insertStrategy = insertStrategy;
+        return ret;
+    }
+
+    /**
+     * @param insertStrategy how adds make room when both of an element's buckets are full - {@link InsertStrategy#RANDOM_WALK}
+     *                       unless set. It is not saved with the filter
+     */
+    public void setInsertStrategy(InsertStrategy insertStrategy) {
+        if(insertStrategy == null) {
+            throw new IllegalArgumentException();
+        }
+        this.insertStrategy = insertStrategy;
+    }
+
+    /**
+     * Starts or stops recording kick chains and failed adds for {@link #stats()}. Enabling starts the counters from
+     * zero. While disabled, recording costs nothing but a null check. It is not saved with the filter
+     */
+    public void setStatsEnabled(boolean enabled) {
+        stats = enabled ? new CuckooStats() : null;
+    }
+
+    /**
+     * Statistics of this filter - it never resizes. Reads every bucket for the load and occupancy, so it takes time
+     * proportional to the filter's size. The buckets are all those an element can be in, up to the next power of 2 of
+     * numBuckets - see {@link #coveredBuckets(int)} - and the load is relative to their entries
+     */
+    public CuckooStatsSnapshot stats() {
+        long[] occupancy = new long[bucketEntries + 1];
+        long occupied = 0;
+        long covered = coveredBuckets(numBuckets);
+        for(long bucket = 0; bucket < covered; bucket++) {
+            int n = buckets.occupied(data, bucketBits * bucket);
+            occupancy[n]++;
+            occupied += n;
+        }
+        double load = ((double) occupied) / (covered * bucketEntries);
+        //a lookup compares 2 * bucketEntries * load fingerprints on average, each equal by a 2^-fingerprintBits chance
+        double falsePositiveRate = 1 - Math.pow(1 - Math.pow(2, -fingerprintBits), 2 * bucketEntries * load);
+        return stats == null ? CuckooStats.disabled(load, occupancy, falsePositiveRate) : stats.snapshot(load, occupancy, falsePositiveRate);
+    }
+
+    /**
+     * @return view of {@link #stats()} to register with an MBeanServer, taking a new snapshot for each attribute read.
+     * The snapshots are taken on the JMX thread without any lock, so while other threads add to the filter they are a
+     * racy view: counts can be slightly off or disagree with each other
+     */
+    public CuckooStatsMXBean statsMXBean() {
+        return new CuckooStats.LiveView() {
+            @Override
+            CuckooStatsSnapshot snapshot() {
+                return stats();
+            }
+        };
+    }
+
+    /**
+     * When both of the element's buckets are full, fingerprints are moved between buckets to make room - see
+     * {@link #setInsertStrategy(InsertStrategy)}. If a random walk fails, the last fingerprint kicked out is held in a
+     * victim slot, so nothing that was added goes missing, and further adds that would need kicking fail until a
+     * remove makes room for the victim. A failed breadth-first search moves nothing.
      * @param t element to add
      * @return true if the element was successfully added
      */
@@ -67,41 +477,242 @@ public class CuckooFilter<T> {
         if(t == null) {
             throw new IllegalArgumentException();
         }
-        int fingerprint = fingerprint(t);
-        int i1 = hash(t);
+        return addHash(hash(t));
+    }
+
+    /**
+     * Adds a long without boxing it, hashing it like {@link Murmur3#LONGS} does a Long
+     * @return true if the element was successfully added
+     */
+    public boolean addLong(long l) {
+        return addHash(hashLong(l));
+    }
+
+    /**
+     * Adds length bytes of array from offset without copying them, hashing them like {@link Murmur3#BYTES} does a
+     * byte[] of just those bytes
+     * @return true if the element was successfully added
+     */
+    public boolean add(byte[] array, int offset, int length) {
+        return addHash(hashBytes(array, offset, length));
+    }
+
+    /**
+     * Adds length bytes of buffer from offset without copying them or moving the buffer's position, hashing them like
+     * the equal bytes of a byte[]
+     * @return true if the element was successfully added
+     */
+    public boolean add(ByteBuffer buffer, int offset, int length) {
+        return addHash(hashBytes(buffer, offset, length));
+    }
+
+    //default access for ShardedCuckooFilter, which hashes elements once to pick the shard too
+    boolean addHash(long hash) {
+        int fingerprint = fingerprint(hash);
+        int i1 = index(hash);
         int i2 = i1 ^ hashFingerprint(fingerprint);
-        if(addToBucket(i1, fingerprint)) {
-            return true;
+        if(addToBucket(i1, fingerprint) || addToBucket(i2, fingerprint)) {
+            return placed(0);
         }
-        if(addToBucket(i2, fingerprint)) {
-            return true;
+        return kickIn(i1, i2, fingerprint);
+    }
+
+    /**
+     * Adds all keys, looking up the buckets of 16 keys at a time before changing them
+     * @return number of keys that were successfully added
+     * @see #containsAll(Object[], boolean[])
+     */
+    public int addAll(T[] keys) {
+        Batch batch = new Batch();
+        int ret = 0;
+        for(int start = 0; start < keys.length; start += BATCH) {
+            int count = Math.min(BATCH, keys.length - start);
+            for(int k = 0; k < count; k++) {
+                T t = keys[start + k];
+                if(t == null) {
+                    throw new IllegalArgumentException();
+                }
+                batch.hashes[k] = hash(t);
+            }
+            ret += addBatch(batch, count);
+        }
+        return ret;
+    }
+
+    /**
+     * Adds all keys as {@link #addLong(long)} would, 16 at a time like {@link #addAll(Object[])} but without boxing them
+     * @return number of keys that were successfully added
+     */
+    public int addAllLongs(long[] keys) {
+        Batch batch = new Batch();
+        int ret = 0;
+        for(int start = 0; start < keys.length; start += BATCH) {
+            int count = Math.min(BATCH, keys.length - start);
+            for(int k = 0; k < count; k++) {
+                batch.hashes[k] = hashLong(keys[start + k]);
+            }
+            ret += addBatch(batch, count);
+        }
+        return ret;
+    }
+
+    //adds the first count hashes of batch, returns how many were added
+    private int addBatch(Batch batch, int count) {
+        locate(batch, count);
+        int ret = 0;
+        for(int k = 0; k < count; k++) {
+            batch.found[k] = addToBucket(batch.i1s[k], batch.fingerprints[k]);
+        }
+        for(int k = 0; k < count; k++) {
+            if(batch.found[k] || addToBucket(batch.i2s[k], batch.fingerprints[k])) {
+                placed(0);
+                ret++;
+            } else if(kickIn(batch.i1s[k], batch.i2s[k], batch.fingerprints[k])) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    //fingerprint and buckets of the first count hashes of batch
+    private void locate(Batch batch, int count) {
+        for(int k = 0; k < count; k++) {
+            long hash = batch.hashes[k];
+            batch.fingerprints[k] = fingerprint(hash);
+            batch.i1s[k] = index(hash);
+            batch.i2s[k] = batch.i1s[k] ^ hashFingerprint(batch.fingerprints[k]);
+        }
+    }
+
+    //moves fingerprints between their buckets until one has room, after neither i1 nor i2 did
+    private boolean kickIn(int i1, int i2, int fingerprint) {
+        if(hasVictim) {
+            return failed(false);
+        }
+        if(insertStrategy == InsertStrategy.BREADTH_FIRST) {
+            return insertBreadthFirst(i1, i2, fingerprint);
         }
         int i = rand.nextBoolean() ? i1 : i2;
-        int bucketBitOffset;
-        int entryBitOffset;
-        int entry;
-        int tmpFingerprint;
         for(int n = 0; n < maxInsertLoops; n++) {
-            bucketBitOffset = getBucketBitOffset(i);
-            entry = rand.nextInt(bucketEntries);
-            entryBitOffset = getEntryBitOffset(bucketBitOffset, entry);
-            tmpFingerprint = getFingerprint(entryBitOffset);
-            storeFingerprint(entryBitOffset, fingerprint);
-            fingerprint = tmpFingerprint;
+            fingerprint = buckets.swap(data, getBucketBitOffset(i), rand.nextInt(bucketEntries), fingerprint);
             i = i ^ hashFingerprint(fingerprint);
-            if(addToBucket(i, tmpFingerprint)) {
+            if(addToBucket(i, fingerprint)) {
+                return placed(n + 1);
+            }
+        }
+        //fingerprint's buckets are i and the one it was just kicked out of
+        setVictim(true, i, fingerprint);
+        return failed(true);
+    }
+
+    //records a placement after kicks moves, and returns true for add
+    private boolean placed(int kicks) {
+        if(stats != null) {
+            stats.recordInsert(kicks);
+        }
+        return true;
+    }
+
+    //records an add kicks could not place, and returns what add returns for it
+    private boolean failed(boolean ret) {
+        if(stats != null) {
+            stats.recordFailedInsert();
+        }
+        return ret;
+    }
+
+    //finds the shortest chain of moves from i1 or i2 to a bucket with room, through up to maxInsertLoops buckets
+    private boolean insertBreadthFirst(int i1, int i2, int fingerprint) {
+        if(pathBuckets == null) {
+            pathBuckets = new int[maxInsertLoops + 2];
+            pathParents = new int[pathBuckets.length];
+            pathFingerprints = new int[pathBuckets.length];
+        }
+        pathBuckets[0] = i1;
+        pathParents[0] = -1;
+        int count = 1;
+        if(i2 != i1) {
+            pathBuckets[1] = i2;
+            pathParents[1] = -1;
+            count++;
+        }
+        for(int node = 0; node < count; node++) {
+            long bucketBitOffset = getBucketBitOffset(pathBuckets[node]);
+            for(int entry = 0; entry < bucketEntries; entry++) {
+                int moved = buckets.get(data, bucketBitOffset, entry);
+                int alternate = pathBuckets[node] ^ hashFingerprint(moved);
+                if(onPath(node, alternate)) {
+                    continue;
+                }
+                //the last move of a chain is the first one made
+                if(buckets.add(data, getBucketBitOffset(alternate), moved)) {
+                    applyPath(node, moved, fingerprint);
+                    return placed(pathLength(node));
+                }
+                if(count < pathBuckets.length) {
+                    pathBuckets[count] = alternate;
+                    pathParents[count] = node;
+                    pathFingerprints[count] = moved;
+                    count++;
+                }
+            }
+        }
+        return failed(false);
+    }
+
+    //number of moves of a chain ending with a move out of node's bucket
+    private int pathLength(int node) {
+        int ret = 1;
+        for(; pathParents[node] >= 0; node = pathParents[node]) {
+            ret++;
+        }
+        return ret;
+    }
+
+    private boolean onPath(int node, int bucket) {
+        for(; node >= 0; node = pathParents[node]) {
+            if(pathBuckets[node] == bucket) {
                 return true;
             }
         }
         return false;
     }
 
+    //moved has been copied out of node's bucket; make the rest of the moves back to the root, then add fingerprint there
+    private void applyPath(int node, int moved, int fingerprint) {
+        while(true) {
+            long bucketBitOffset = getBucketBitOffset(pathBuckets[node]);
+            //by value, since layouts like SEMI_SORTED reorder entries
+            buckets.remove(data, bucketBitOffset, moved);
+            if(pathParents[node] < 0) {
+                buckets.add(data, bucketBitOffset, fingerprint);
+                return;
+            }
+            moved = pathFingerprints[node];
+            buckets.add(data, bucketBitOffset, moved);
+            node = pathParents[node];
+        }
+    }
+
+    private void setVictim(boolean hasVictim, int victimBucket, int victimFingerprint) {
+        this.hasVictim = hasVictim;
+        this.victimBucket = victimBucket;
+        this.victimFingerprint = victimFingerprint;
+        if(fileHeader != null && !fileHeader.isReadOnly()) {
+            CuckooFilterFile.putVictim(fileHeader, hasVictim, victimBucket, victimFingerprint);
+        }
+    }
+
+    private boolean isVictim(int i1, int i2, int fingerprint) {
+        return hasVictim && victimFingerprint == fingerprint && (victimBucket == i1 || victimBucket == i2);
+    }
+
     /**
      * @param t element to remove
      * @return true if the element was contained in the CuckooFilter
      */
     public boolean remove(T t) {
-        return containsOrRemove(t, true);
+        return containsOrRemove(hash(t), true);
     }
 
     /**
@@ -109,65 +720,224 @@ public class CuckooFilter<T> {
      * @return true if the CuckooFilter possibly contains T, false if it definitely does not contain T
      */
     public boolean contains(T t) {
-        return containsOrRemove(t, false);
+        return containsOrRemove(hash(t), false);
     }
 
-    private boolean containsOrRemove(T t, boolean remove) {
-        int fingerprint = fingerprint(t);
-        int i1 = hash(t);
-        if(bucketContainsOrRemove(i1, fingerprint, remove)) {
-            return true;
+    /**
+     * @return true if a long added by {@link #addLong(long)} was contained in the CuckooFilter
+     */
+    public boolean removeLong(long l) {
+        return containsOrRemove(hashLong(l), true);
+    }
+
+    /**
+     * @return true if the CuckooFilter possibly contains a long added by {@link #addLong(long)}
+     */
+    public boolean containsLong(long l) {
+        return containsOrRemove(hashLong(l), false);
+    }
+
+    /**
+     * @return true if bytes added by {@link #add(byte[], int, int)} or {@link #add(ByteBuffer, int, int)} were contained
+     * in the CuckooFilter
+     */
+    public boolean remove(byte[] array, int offset, int length) {
+        return containsOrRemove(hashBytes(array, offset, length), true);
+    }
+
+    /**
+     * @return true if bytes added by {@link #add(byte[], int, int)} or {@link #add(ByteBuffer, int, int)} were contained
+     * in the CuckooFilter
+     */
+    public boolean remove(ByteBuffer buffer, int offset, int length) {
+        return containsOrRemove(hashBytes(buffer, offset, length), true);
+    }
+
+    /**
+     * @return true if the CuckooFilter possibly contains bytes added by {@link #add(byte[], int, int)} or
+     * {@link #add(ByteBuffer, int, int)}
+     */
+    public boolean contains(byte[] array, int offset, int length) {
+        return containsOrRemove(hashBytes(array, offset, length), false);
+    }
+
+    /**
+     * @return true if the CuckooFilter possibly contains bytes added by {@link #add(byte[], int, int)} or
+     * {@link #add(ByteBuffer, int, int)}
+     */
+    public boolean contains(ByteBuffer buffer, int offset, int length) {
+        return containsOrRemove(hashBytes(buffer, offset, length), false);
+    }
+
+    /**
+     * Looks up many keys at once, which is faster than {@link #contains(Object)} one at a time on filters larger than
+     * the CPU caches: the hashes of 16 keys are computed first, then all of their first buckets are read,
+     * then the second buckets of those not found. The reads of a batch do not depend on each other, so the CPU
+     * overlaps their cache misses.
+     * @param out set to contains(keys[i]) for each i
+     */
+    public void containsAll(T[] keys, boolean[] out) {
+        if(out.length < keys.length) {
+            throw new IllegalArgumentException("out is shorter than keys");
+        }
+        Batch batch = new Batch();
+        for(int start = 0; start < keys.length; start += BATCH) {
+            int count = Math.min(BATCH, keys.length - start);
+            for(int k = 0; k < count; k++) {
+                batch.hashes[k] = hash(keys[start + k]);
+            }
+            containsBatch(batch, count, out, start);
+        }
+    }
+
+    /**
+     * Looks up many longs added by {@link #addLong(long)} at once, like {@link #containsAll(Object[], boolean[])} but
+     * without boxing them
+     * @param out set to containsLong(keys[i]) for each i
+     */
+    public void containsAllLongs(long[] keys, boolean[] out) {
+        if(out.length < keys.length) {
+            throw new IllegalArgumentException("out is shorter than keys");
+        }
+        Batch batch = new Batch();
+        for(int start = 0; start < keys.length; start += BATCH) {
+            int count = Math.min(BATCH, keys.length - start);
+            for(int k = 0; k < count; k++) {
+                batch.hashes[k] = hashLong(keys[start + k]);
+            }
+            containsBatch(batch, count, out, start);
+        }
+    }
+
+    //sets out[offset + k] for the first count hashes of batch
+    private void containsBatch(Batch batch, int count, boolean[] out, int offset) {
+        locate(batch, count);
+        for(int k = 0; k < count; k++) {
+            out[offset + k] = bucketContainsOrRemove(batch.i1s[k], batch.fingerprints[k], false);
+        }
+        for(int k = 0; k < count; k++) {
+            if(!out[offset + k]) {
+                out[offset + k] = bucketContainsOrRemove(batch.i2s[k], batch.fingerprints[k], false)
+                        || isVictim(batch.i1s[k], batch.i2s[k], batch.fingerprints[k]);
+            }
         }
+    }
+
+    //default access for ShardedCuckooFilter
+    boolean containsOrRemove(long hash, boolean remove) {
+        int fingerprint = fingerprint(hash);
+        int i1 = index(hash);
         int i2 = i1 ^ hashFingerprint(fingerprint);
-        if(bucketContainsOrRemove(i2, fingerprint, remove)) {
+        if(bucketContainsOrRemove(i1, fingerprint, remove) || bucketContainsOrRemove(i2, fingerprint, remove)) {
+            if(remove && hasVictim) {
+                reinsertVictim();
+            }
+            return true;
+        }
+        if(isVictim(i1, i2, fingerprint)) {
+            if(remove) {
+                setVictim(false, 0, 0);
+            }
             return true;
         }
         return false;
     }
 
+    //after a remove, which may have made room for it
+    private void reinsertVictim() {
+        int fingerprint = victimFingerprint;
+        int i1 = victimBucket;
+        int i2 = i1 ^ hashFingerprint(fingerprint);
+        setVictim(false, 0, 0);
+        if(!addToBucket(i1, fingerprint) && !addToBucket(i2, fingerprint)) {
+            kickIn(i1, i2, fingerprint);
+        }
+    }
+
+    /**
+     * Releases the buckets' memory if they are off-heap. The filter must not be used afterwards
+     */
+    @Override
+    public void close() {
+        data.close();
+        if(fileHeader != null) {
+            DirectBuffers.release(fileHeader);
+        }
+    }
+
+    /**
+     * Writes changes to a filter from {@link #create(File, Layout, int, int, int, int, int)} or a writable
+     * {@link #open(File, boolean)} back to its file. Does nothing for other filters
+     */
+    public void force() {
+        data.force();
+        if(fileHeader instanceof MappedByteBuffer && !fileHeader.isReadOnly()) {
+            ((MappedByteBuffer) fileHeader).force();
+        }
+    }
+
     private static boolean isPowerOf2(int i) {
         return ((i & (i - 1)) == 0);
     }
 
-    private int getBucketBitOffset(int bucketNbr) {
-        return bucketBits * bucketNbr;
+    /**
+     * @return number of ints holding numBuckets buckets
+     */
+    static long storageLength(int bucketBits, int numBuckets) {
+        return ((bucketBits * coveredBuckets(numBuckets)) + Integer.SIZE - 1) / Integer.SIZE;
+    }
+
+    /**
+     * @return number of buckets the storage of numBuckets buckets holds - an alternate bucket i1 ^ hashFingerprint()
+     * can be anything below the next power of 2 of numBuckets
+     */
+    static long coveredBuckets(int numBuckets) {
+        return numBuckets <= 1 ? 1 : Long.highestOneBit(numBuckets - 1L) << 1;
     }
 
-    private int getEntryBitOffset(int bucketBitOffset, int entryNbr) {
-        return bucketBitOffset + (bucketEntries) + (entryNbr * fingerprintBits);
+    private long getBucketBitOffset(int bucketNbr) {
+        return ((long) bucketBits) * bucketNbr;
     }
 
-    //return -1 if could not find one
-    private int getFirstEmptyEntryBitOffsetAndMarkPopulated(int bucketBitOffset) {
-        int entriesPopulatedBits = getBits(data, bucketBitOffset, bucketEntries);
-        int entriesPopulatedMask;
-        for(int i = 0; i < bucketEntries; i++) {
-            entriesPopulatedMask = 1 << i;
-            if((entriesPopulatedMask & entriesPopulatedBits) == 0) {
-                setBits(data, bucketBitOffset + i, 1, 1);
-                return bucketBitOffset + bucketEntries + (i * fingerprintBits);
-            }
-        }
-        return -1;
+    private long hash(T t) {
+        return hashing == CuckooFilterFile.HASHING_64 ? hashFunction.hash(t, seed) : t.hashCode() ^ seed;
     }
 
-    private int getFingerprint(int entryBitOffset) {
-        return getBits(data, entryBitOffset, fingerprintBits);
+    private long hashLong(long l) {
+        //the legacy branch is Long.hashCode() of the boxed long, without the boxing
+        return hashing == CuckooFilterFile.HASHING_64 ? Murmur3.hash64(l, seed) : ((int) (l ^ (l >>> 32))) ^ seed;
     }
 
-    //this does not mark the entry as populated - caller is responsible for that
-    private void storeFingerprint(int entryBitOffset, int fingerprint) {
-        setBits(data, entryBitOffset, fingerprintBits, fingerprint);
+    //filters from old files take only the lower 32 bits, as they would a hashCode()
+    private long hashBytes(byte[] array, int offset, int length) {
+        checkRange(array.length, offset, length);
+        return Murmur3.hash64(array, offset, length, seed);
     }
 
-    private int fingerprint(T t) {
-        //lower bits of t.hashCode()
-        return t.hashCode() & fingerprintMask;
+    private long hashBytes(ByteBuffer buffer, int offset, int length) {
+        checkRange(buffer.limit(), offset, length);
+        return Murmur3.hash64(buffer, offset, length, seed);
     }
 
-    private int hash(T t) {
+    private static void checkRange(int limit, int offset, int length) {
+        if(offset < 0 || length < 0 || offset > limit - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", limit " + limit);
+        }
+    }
+
+    private int fingerprint(long hash) {
+        //upper 32 bits, or lower bits of t.hashCode()
+        int bits = hashing == CuckooFilterFile.HASHING_64 ? (int) (hash >>> Integer.SIZE) : (int) hash;
+        return buckets.fingerprint(bits & fingerprintMask);
+    }
+
+    private int index(long hash) {
+        if(hashing == CuckooFilterFile.HASHING_64) {
+            //lower 32 bits scaled to numBuckets, without a division
+            return (int) (((hash & 0xFFFFFFFFL) * numBuckets) >>> Integer.SIZE);
+        }
         //upper bits of t.hashCode()
-        return Math.abs((t.hashCode() >>> (Integer.SIZE - fingerprintBits))) % numBuckets;
+        return Math.abs((((int) hash) >>> (Integer.SIZE - fingerprintBits))) % numBuckets;
     }
 
     private int hashFingerprint(int fingerprint) {
@@ -180,16 +950,7 @@ public class CuckooFilter<T> {
 
     //returns true if i was added to the bucket
     private boolean addToBucket(int bucket, int fingerprint) {
-        int bucketBitOffset = getBucketBitOffset(bucket);
-        int entryBitOffset = getFirstEmptyEntryBitOffsetAndMarkPopulated(bucketBitOffset);
-        boolean added;
-        if(entryBitOffset >= 0) {
-            storeFingerprint(entryBitOffset, fingerprint);
-            added = true;
-        } else {
-            added = false;
-        }
-        return added;
+        return buckets.add(data, getBucketBitOffset(bucket), fingerprint);
     }
 
     /**
@@ -199,35 +960,21 @@ public class CuckooFilter<T> {
      * @return true of the bucket contains fingerprint
      */
     private boolean bucketContainsOrRemove(int bucket, int fingerprint, boolean remove) {
-        int bucketBitOffset = getBucketBitOffset(bucket);
-        int entriesPopulatedBits = getBits(data, bucketBitOffset, bucketEntries);
-        int entryBitOffset = bucketBitOffset + bucketEntries;
-        int storedFingerprint;
-        int entriesPopulatedMask;
-        for(int i = 0; i < bucketEntries; i++) {
-            entriesPopulatedMask = 1 << i;
-            if((entriesPopulatedMask & entriesPopulatedBits) != 0) {
-                storedFingerprint = getBits(data, entryBitOffset, fingerprintBits);
-                if(fingerprint == storedFingerprint) {
-                    if(remove) {
-                        //just mark the entry as empty - no need to overwrite the fingerprint value
-                        setBits(data, bucketBitOffset + i, 1, 0);
-                    }
-                    return true;
-                }
-            }
-            entryBitOffset += fingerprintBits;
-        }
-        return false;
+        long bucketBitOffset = getBucketBitOffset(bucket);
+        return remove ? buckets.remove(data, bucketBitOffset, fingerprint) : buckets.contains(data, bucketBitOffset, fingerprint);
     }
 
     //default access for unit testing
     static int getBits(int data[], int bitOffset, int numBits) {
+        return getBits(new HeapFilterStorage(data), bitOffset, numBits);
+    }
+
+    static int getBits(FilterStorage data, long bitOffset, int numBits) {
         if(numBits > Integer.SIZE) {
             throw new IllegalArgumentException("Invalid number of bits");
         }
-        int dataIndex = bitOffset / Integer.SIZE;
-        int startIndex = bitOffset % Integer.SIZE;
+        long dataIndex = bitOffset / Integer.SIZE;
+        int startIndex = (int) (bitOffset % Integer.SIZE);
         int endIndex = startIndex + numBits;
         boolean checkNextInt;
         int nextIntNumBits;
@@ -239,14 +986,14 @@ public class CuckooFilter<T> {
             checkNextInt = false;
             nextIntNumBits = 0;//not used
         }
-        int tmp = data[dataIndex];
+        int tmp = data.getInt(dataIndex);
         tmp >>>= startIndex;
         tmp &= ALL_ONE_BITS >>> (Integer.SIZE - numBits);
         int ret = tmp;
 
         if(checkNextInt) {
             dataIndex++;
-            tmp = data[dataIndex];
+            tmp = data.getInt(dataIndex);
             tmp &= ALL_ONE_BITS >>> (Integer.SIZE - nextIntNumBits);
             tmp <<= numBits;
             ret |= tmp;
@@ -256,29 +1003,26 @@ public class CuckooFilter<T> {
 
     //default access for unit testing
     static void setBits(int data[], int bitOffset, int numBits, int bits) {
+        setBits(new HeapFilterStorage(data), bitOffset, numBits, bits);
+    }
+
+    static void setBits(FilterStorage data, long bitOffset, int numBits, int bits) {
         if(numBits > Integer.SIZE) {
             throw new IllegalArgumentException("Invalid number of bits");
         }
-        int dataIndex = bitOffset / Integer.SIZE;
-        int tmpOffset = (bitOffset % Integer.SIZE) - 1;
-        //todo this is not the most efficient way to do this
-        //todo maybe somethinglike this would work? https://graphics.stanford.edu/~seander/bithacks.html#ConditionalSetOrClearBitsWithoutBranching
-        int tmp = data[dataIndex];
-        boolean b;
-        for(int i = 0; i < numBits; i++) {
-            if(++tmpOffset >= Integer.SIZE) {
-                data[dataIndex] = tmp;
-                tmp = data[++dataIndex];
-                tmpOffset = 0;
-            }
-            b = ((1 << i) & bits) != 0;
-            if(b) {
-                tmp |= 1 << tmpOffset;
-            } else {
-                tmp &= ~(ALL_ONE_BITS & (1 << tmpOffset));
-            }
+        long dataIndex = bitOffset / Integer.SIZE;
+        int startIndex = (int) (bitOffset % Integer.SIZE);
+        //masked read-modify-write of the one or two ints the bits span
+        int mask = numBits == 0 ? 0 : ALL_ONE_BITS >>> (Integer.SIZE - numBits);
+        bits &= mask;
+        int tmp = data.getInt(dataIndex);
+        data.setInt(dataIndex, (tmp & ~(mask << startIndex)) | (bits << startIndex));
+        int written = Integer.SIZE - startIndex;
+        if(numBits > written) {
+            int nextMask = mask >>> written;
+            tmp = data.getInt(dataIndex + 1);
+            data.setInt(dataIndex + 1, (tmp & ~nextMask) | (bits >>> written));
         }
-        data[dataIndex] = tmp;
     }
 
     private static int createMask(int numOneBits) {
@@ -297,4 +1041,14 @@ public class CuckooFilter<T> {
         }
         return sb.toString();
     }
+
+    //scratch arrays of addAll and containsAll, BATCH keys each
+    private static final class Batch {
+        final long[] hashes = new long[BATCH];
+        final int[] fingerprints = new int[BATCH];
+        final int[] i1s = new int[BATCH];
+        final int[] i2s = new int[BATCH];
+        //whether each key was found, or added, in its first bucket
+        final boolean[] found = new boolean[BATCH];
+    }
 }
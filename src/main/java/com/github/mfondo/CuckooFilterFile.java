@@ -0,0 +1,115 @@
+package com.github.mfondo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * On-disk format of a {@link CuckooFilter}: a fixed size header followed by the raw bucket words, so the words can be
+ * mapped and queried in place.
+ *
+ * The header is 64 little-endian bytes:
+ * <pre>
+ *  0 int  magic "CKOF"
+ *  4 int  format version
+ *  8 int  bucket layout - see CuckooFilter.Layout
+ * 12 int  bucketEntries
+ * 16 int  numBuckets
+ * 20 int  fingerprintBits
+ * 24 int  maxInsertLoops
+ * 28 int  hash seed
+ * 32 long number of words
+ * 40 int  1 if the filter holds a victim - a fingerprint that was kicked out of a full filter - 0 otherwise
+ * 44 int  bucket of the victim
+ * 48 int  victim fingerprint
+ * 52 int  hashing - HASHING_HASH_CODE or HASHING_64
+ * 56      reserved, zero
+ * </pre>
+ * followed by that many little-endian 32 bit words.
+ *
+ * Version 1 files, from before 64 bit hashing, have no hashing field and are read as HASHING_HASH_CODE.
+ */
+final class CuckooFilterFile {
+
+    static final int MAGIC = 0x464F4B43;
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 64;
+    private static final int VICTIM_OFFSET = 40;
+    //fingerprint in the lower and bucket in the upper bits of hashCode() ^ seed
+    static final int HASHING_HASH_CODE = 0;
+    //fingerprint in the upper and bucket in the lower 32 bits of a ElementHasher64
+    static final int HASHING_64 = 1;
+
+    final int layout;
+    final int bucketEntries;
+    final int numBuckets;
+    final int fingerprintBits;
+    final int maxInsertLoops;
+    final int seed;
+    final long storageLength;
+    final boolean hasVictim;
+    final int victimBucket;
+    final int victimFingerprint;
+    final int hashing;
+
+    CuckooFilterFile(int layout, int bucketEntries, int numBuckets, int fingerprintBits, int maxInsertLoops, int seed, long storageLength,
+                     boolean hasVictim, int victimBucket, int victimFingerprint, int hashing) {
+        this.layout = layout;
+        this.bucketEntries = bucketEntries;
+        this.numBuckets = numBuckets;
+        this.fingerprintBits = fingerprintBits;
+        this.maxInsertLoops = maxInsertLoops;
+        this.seed = seed;
+        this.storageLength = storageLength;
+        this.hasVictim = hasVictim;
+        this.victimBucket = victimBucket;
+        this.victimFingerprint = victimFingerprint;
+        this.hashing = hashing;
+    }
+
+    ByteBuffer writeHeader() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(layout);
+        header.putInt(bucketEntries);
+        header.putInt(numBuckets);
+        header.putInt(fingerprintBits);
+        header.putInt(maxInsertLoops);
+        header.putInt(seed);
+        header.putLong(storageLength);
+        putVictim(header, hasVictim, victimBucket, victimFingerprint);
+        header.putInt(VICTIM_OFFSET + 12, hashing);
+        header.clear();
+        return header;
+    }
+
+    /**
+     * @param header HEADER_BYTES bytes from the start of a file
+     */
+    static CuckooFilterFile readHeader(ByteBuffer header) throws IOException {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if(header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+            throw new IOException("Not a cuckoo filter file");
+        }
+        int version = header.getInt();
+        if(version != 1 && version != VERSION) {
+            throw new IOException("Unsupported cuckoo filter file version " + version);
+        }
+        CuckooFilterFile ret = new CuckooFilterFile(header.getInt(), header.getInt(), header.getInt(), header.getInt(), header.getInt(), header.getInt(), header.getLong(),
+                header.getInt() != 0, header.getInt(), header.getInt(), version == 1 ? HASHING_HASH_CODE : header.getInt());
+        if(ret.hashing != HASHING_HASH_CODE && ret.hashing != HASHING_64) {
+            throw new IOException("Unsupported cuckoo filter hashing " + ret.hashing);
+        }
+        return ret;
+    }
+
+    /**
+     * Updates the victim fields of a little-endian header in place
+     */
+    static void putVictim(ByteBuffer header, boolean hasVictim, int victimBucket, int victimFingerprint) {
+        header.putInt(VICTIM_OFFSET, hasVictim ? 1 : 0);
+        header.putInt(VICTIM_OFFSET + 4, victimBucket);
+        header.putInt(VICTIM_OFFSET + 8, victimFingerprint);
+    }
+}
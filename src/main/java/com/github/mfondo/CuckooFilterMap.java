@@ -0,0 +1,156 @@
+package com.github.mfondo;
+
+/**
+ * Approximate map from elements to small values, for attributes such as a shard id looked up next to a membership
+ * check. Each entry of a {@link CuckooFilter} style table holds a fingerprint and valueBits bits of value, bit-packed
+ * in the same bucket, so a key costs (fingerprintBits + valueBits) / load factor bits instead of a map entry.
+ *
+ * Like contains on a filter, get of an element that was never put returns a value with probability about
+ * 2 * bucketEntries / 2^fingerprintBits, and an element whose fingerprint and bucket it shares with another shares its
+ * value too - put of one overwrites the other's.
+ *
+ * Entries are kept in a {@link PackedEntryTable}, with the value above the fingerprint, so a failed put leaves the map
+ * as it was.
+ */
+public class CuckooFilterMap<T> {
+
+    /**
+     * Returned by get for elements that are definitely not in the map
+     */
+    public static final int ABSENT = -1;
+
+    private final int bucketEntries;
+    private final int fingerprintBits;
+    private final int fingerprintMask;
+    private final int valueMask;
+    private final ElementHasher64<? super T> hashFunction;
+    private final int seed;
+    private final PackedEntryTable table;
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of kicks on put before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param valueBits number of bits in each value - fingerprintBits + valueBits must be at most 32
+     */
+    public CuckooFilterMap(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int valueBits) {
+        this(bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, valueBits, Murmur3.HASH_CODE, 0);
+    }
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of kicks on put before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param valueBits number of bits in each value - fingerprintBits + valueBits must be at most 32
+     * @param hashFunction hashes elements - see {@link CuckooFilter}
+     * @param seed passed to hashFunction
+     */
+    public CuckooFilterMap(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int valueBits,
+                           ElementHasher64<? super T> hashFunction, int seed) {
+        if(bucketEntries < 1 || (bucketEntries & (bucketEntries - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid bucket entries");
+        }
+        if(numBuckets < 1) {
+            throw new IllegalArgumentException("Invalid number of buckets");
+        }
+        if(maxInsertLoops < 1) {
+            throw new IllegalArgumentException("Invalid max insert loops");
+        }
+        if(fingerprintBits < 1 || valueBits < 1 || fingerprintBits + valueBits > Integer.SIZE) {
+            throw new IllegalArgumentException("Invalid fingerprint or value bits");
+        }
+        if(hashFunction == null) {
+            throw new IllegalArgumentException("Invalid hash function");
+        }
+        this.bucketEntries = bucketEntries;
+        this.fingerprintBits = fingerprintBits;
+        this.hashFunction = hashFunction;
+        this.seed = seed;
+        fingerprintMask = (int) ((1L << fingerprintBits) - 1);
+        valueMask = (1 << valueBits) - 1;
+        table = new PackedEntryTable(bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, fingerprintBits + valueBits);
+    }
+
+    /**
+     * Maps t to value, replacing its previous value
+     * @param value between 0 and 2^valueBits - 1
+     * @return true if t was mapped, false if neither of its buckets had t or a free entry and no room could be made.
+     * The map is then unchanged
+     */
+    public boolean put(T t, int value) {
+        if(t == null || (value & ~valueMask) != 0) {
+            throw new IllegalArgumentException();
+        }
+        long hash = hashFunction.hash(t, seed);
+        int fingerprint = fingerprint(hash);
+        int i1 = table.index(hash);
+        int i2 = table.alternateIndex(i1, fingerprint);
+        int entry = (value << fingerprintBits) | fingerprint;
+        if(replace(i1, fingerprint, entry) || replace(i2, fingerprint, entry)) {
+            return true;
+        }
+        if(table.add(i1, entry) >= 0 || table.add(i2, entry) >= 0) {
+            return true;
+        }
+        int i = table.makeRoom(i1, i2);
+        return i >= 0 && table.add(i, entry) >= 0;
+    }
+
+    /**
+     * @return t's value, or {@link #ABSENT} if t is definitely not in the map. May return a value for t that was
+     * never put - see the class comment
+     */
+    public int get(T t) {
+        long hash = hashFunction.hash(t, seed);
+        int fingerprint = fingerprint(hash);
+        int i1 = table.index(hash);
+        int entry = find(i1, fingerprint);
+        if(entry == 0) {
+            entry = find(table.alternateIndex(i1, fingerprint), fingerprint);
+            if(entry == 0) {
+                return ABSENT;
+            }
+        }
+        return entry >>> fingerprintBits;
+    }
+
+    /**
+     * @return true if t was possibly in the map, false if it definitely was not
+     */
+    public boolean remove(T t) {
+        long hash = hashFunction.hash(t, seed);
+        int fingerprint = fingerprint(hash);
+        int i1 = table.index(hash);
+        return replace(i1, fingerprint, 0) || replace(table.alternateIndex(i1, fingerprint), fingerprint, 0);
+    }
+
+    private int fingerprint(long hash) {
+        //never 0, which marks an empty entry
+        int fingerprint = (int) (hash >>> Integer.SIZE) & fingerprintMask;
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    //returns the entry of fingerprint in the bucket, or 0 if there is none
+    private int find(int bucket, int fingerprint) {
+        for(int e = 0; e < bucketEntries; e++) {
+            int entry = table.get(bucket, e);
+            if((entry & fingerprintMask) == fingerprint) {
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    //returns true if the entry of fingerprint in the bucket was replaced with value
+    private boolean replace(int bucket, int fingerprint, int value) {
+        for(int e = 0; e < bucketEntries; e++) {
+            if((table.get(bucket, e) & fingerprintMask) == fingerprint) {
+                table.set(bucket, e, value);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,324 @@
+package com.github.mfondo;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * {@link java.util.Map} using the same two half table placement, hash functions and resize policy as
+ * {@link CuckooHashSet}. Values are kept in an array parallel to the keys and move with their key when it is kicked
+ * out, so a lookup is at most two probes.
+ *
+ * null keys are not supported, null values are.
+ */
+public class CuckooHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int DEFAULT_INITIAL_SIZE = 16;
+
+    private final CuckooHashSet.HashFunction<K> hashFunction1;
+    private final CuckooHashSet.HashFunction<K> hashFunction2;
+    private final int maxInsertLoops;
+    private final float loadFactor;
+
+    private Object[] keys;
+    private Object[] values;
+    private int size = 0;
+    //bumped by every put of a new key, remove and clear, so that iterators fail fast once entries may have moved
+    private int modCount = 0;
+
+    //the entry left without a slot when place() fails
+    private Object kickedKey;
+    private Object kickedValue;
+
+    /**
+     * Uses {@link Object#hashCode()} as the hash function
+     * @param maxInsertLoops maximum number of loops when inserting a key before resizing
+     * @param loadFactor how close to being full before the table is resized
+     */
+    public CuckooHashMap(int maxInsertLoops, float loadFactor) {
+        this(maxInsertLoops, loadFactor, new CuckooHashSet.HashFunction<K>() {
+            @Override
+            public int hash(K k) {
+                return k.hashCode();
+            }
+        });
+    }
+
+    /**
+     * Like the constructor below, except a 64 bit mix of hashFunction1's output serves as the second hash
+     * @param maxInsertLoops maximum number of loops when inserting a key before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 hash function whose result, and a mix of it, serve as the two hash outputs
+     */
+    public CuckooHashMap(int maxInsertLoops, float loadFactor, CuckooHashSet.HashFunction<K> hashFunction1) {
+        this(maxInsertLoops, loadFactor, hashFunction1, null);
+    }
+
+    /**
+     * @param maxInsertLoops maximum number of loops when inserting a key before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 first hash function
+     * @param hashFunction2 second hash function - must be independent of first hash function
+     */
+    public CuckooHashMap(int maxInsertLoops, float loadFactor, CuckooHashSet.HashFunction<K> hashFunction1, CuckooHashSet.HashFunction<K> hashFunction2) {
+        if(maxInsertLoops < 1 || loadFactor <= 0 || Float.isNaN(loadFactor) || hashFunction1 == null) {
+            throw new IllegalArgumentException();
+        }
+        this.maxInsertLoops = maxInsertLoops;
+        this.loadFactor = loadFactor;
+        this.hashFunction1 = hashFunction1;
+        this.hashFunction2 = hashFunction2;
+        keys = new Object[DEFAULT_INITIAL_SIZE];
+        values = new Object[DEFAULT_INITIAL_SIZE];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() < 1;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getPosition(key) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        int pos = getPosition(key);
+        return pos >= 0 ? (V) values[pos] : null;
+    }
+
+    //returns -1 if key is not in the table
+    private int getPosition(Object key) {
+        if(key == null) {
+            return -1;
+        }
+        final Object[] keys = this.keys;
+        final int halfValuesLength = keys.length / 2;
+        int pos = CuckooHashing.position1(hashFunction1, hashFunction2, (K) key, halfValuesLength);
+        if(key.equals(keys[pos])) {
+            return pos;
+        }
+        pos = CuckooHashing.position2(hashFunction1, hashFunction2, (K) key, halfValuesLength);
+        if(key.equals(keys[pos])) {
+            return pos;
+        }
+        return -1;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if(key == null) {
+            throw new IllegalArgumentException();
+        }
+        int pos = getPosition(key);
+        if(pos >= 0) {
+            V ret = (V) values[pos];
+            values[pos] = value;
+            return ret;
+        }
+        if(((float)size) > ((keys.length / 2) * loadFactor)) {
+            resize(CuckooHashing.redouble(keys.length, 1), null, null);
+        }
+        if(!place(keys, values, key, value)) {
+            resize(CuckooHashing.redouble(keys.length, 1), kickedKey, kickedValue);
+        }
+        kickedKey = null;
+        kickedValue = null;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Rehashes every entry, and the homeless one unless its key is null, into tables of (at least) newLength slots,
+     * doubling again if an entry cannot be placed
+     * @throws IllegalStateException if the hash functions collide so that doubling does not help
+     */
+    private void resize(int newLength, Object homelessKey, Object homelessValue) {
+        Object[] tmpKeys = new Object[newLength];
+        Object[] tmpValues = new Object[newLength];
+        for(int doublings = 1; !rehash(tmpKeys, tmpValues, homelessKey, homelessValue); doublings++) {
+            newLength = CuckooHashing.redouble(newLength, doublings);
+            tmpKeys = new Object[newLength];
+            tmpValues = new Object[newLength];
+        }
+        keys = tmpKeys;
+        values = tmpValues;
+    }
+
+    //false if an entry could not be placed in tmpKeys/tmpValues
+    private boolean rehash(Object[] tmpKeys, Object[] tmpValues, Object homelessKey, Object homelessValue) {
+        for(int i = 0; i < keys.length; i++) {
+            if(keys[i] != null && !place(tmpKeys, tmpValues, keys[i], values[i])) {
+                return false;
+            }
+        }
+        return homelessKey == null || place(tmpKeys, tmpValues, homelessKey, homelessValue);
+    }
+
+    /**
+     * Kick out loop - key and value move together
+     * @return true if the entry was placed, otherwise the entry left without a slot is in kickedKey/kickedValue
+     */
+    private boolean place(Object[] keys, Object[] values, Object key, Object value) {
+        final int halfValuesLength = keys.length / 2;
+        int pos;
+        Object tmpKey;
+        Object tmpValue;
+        for(int loops = 0; loops < maxInsertLoops; loops++) {
+            pos = CuckooHashing.position1(hashFunction1, hashFunction2, (K) key, halfValuesLength);
+            tmpKey = keys[pos];
+            tmpValue = values[pos];
+            keys[pos] = key;
+            values[pos] = value;
+            if(tmpKey == null) {
+                return true;
+            }
+            key = tmpKey;
+            value = tmpValue;
+            pos = CuckooHashing.position2(hashFunction1, hashFunction2, (K) key, halfValuesLength);
+            tmpKey = keys[pos];
+            tmpValue = values[pos];
+            keys[pos] = key;
+            values[pos] = value;
+            if(tmpKey == null) {
+                return true;
+            }
+            key = tmpKey;
+            value = tmpValue;
+        }
+        kickedKey = key;
+        kickedValue = value;
+        return false;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int pos = getPosition(key);
+        if(pos < 0) {
+            return null;
+        }
+        V ret = (V) values[pos];
+        removeAt(pos);
+        return ret;
+    }
+
+    private void removeAt(int pos) {
+        keys[pos] = null;
+        values[pos] = null;
+        size--;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        keys = new Object[DEFAULT_INITIAL_SIZE];
+        values = new Object[DEFAULT_INITIAL_SIZE];
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                CuckooHashMap.this.clear();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+
+        //removing an entry never moves another, so iterating by position stays valid while removing through the iterator
+        private final Object[] keys = CuckooHashMap.this.keys;
+        private int expectedModCount = modCount;
+        private int nextPos = nextPosition(0);
+        private int lastPos = -1;
+
+        private int nextPosition(int pos) {
+            while(pos < keys.length && keys[pos] == null) {
+                pos++;
+            }
+            return pos;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextPos < keys.length;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            checkForComodification();
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastPos = nextPos;
+            nextPos = nextPosition(nextPos + 1);
+            return new MapEntry(lastPos);
+        }
+
+        @Override
+        public void remove() {
+            if(lastPos < 0) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            removeAt(lastPos);
+            expectedModCount = modCount;
+            lastPos = -1;
+        }
+
+        private void checkForComodification() {
+            if(modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    private class MapEntry extends SimpleEntry<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int pos;
+
+        MapEntry(int pos) {
+            super((K) keys[pos], (V) values[pos]);
+            this.pos = pos;
+        }
+
+        //writes through to wherever the key is now - the map may have moved it since the entry was returned
+        @Override
+        public V setValue(V value) {
+            int pos = this.pos;
+            //clear may have shrunk the table below pos
+            if(pos >= keys.length || keys[pos] != getKey()) {
+                pos = getPosition(getKey());
+            }
+            if(pos >= 0) {
+                values[pos] = value;
+            }
+            return super.setValue(value);
+        }
+    }
+}
@@ -2,30 +2,93 @@ package com.github.mfondo;
 
 import com.google.common.collect.AbstractIterator;
 
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 /**
  * http://en.wikipedia.org/wiki/Cuckoo_hashing
  * Implementation of http://www.cs.tau.ac.il/~shanir/advanced-seminar-data-structures-2007/bib/pagh01cuckoo.pdf
+ *
+ * Optionally bucketized (set-associative): each hash selects a bucket of bucketEntries adjacent slots rather than a
+ * single slot, as in {@link CuckooFilter}. An element is only kicked out when both of the new element's buckets are
+ * full, which lets the table reach 90%+ load while lookups still read only two buckets.
+ *
+ * Optionally d-ary: with k hash functions the table is split into k partitions, each indexed by its own hash function,
+ * so an element has one bucket per partition and lookups read at most k buckets. With one entry per bucket, 3 hash
+ * functions reach about 91% load and 4 about 97%, against under 50% for 2 - see
+ * http://www.ru.is/faculty/ulfar/CuckooHash.pdf
+ *
+ * {@link #snapshot()} returns a copy-on-write copy in constant time.
+ *
+ * Up to 4 elements that an insert could not place go into a stash that lookups also check, as in
+ * http://www.eecs.harvard.edu/~michaelm/postscripts/esa2008full.pdf, rather than making the whole table resize. The
+ * table only resizes once the stash is full too, and stashed elements move back into the table when it resizes or a
+ * remove frees a slot in one of their buckets.
+ *
+ * With incremental resizing, growing the table does not rehash every element at once. The old table is kept next to
+ * one twice its size, each add and remove moves the next 8 slots of the old table into the new one, and lookups
+ * check both until the old table is empty. Lookups never move anything. If the new table cannot place an element
+ * before the move is done, it is resized in one go as without incremental resizing.
+ *
+ * {@link #writeTo(WritableByteChannel, ElementCodec)} and {@link #readFrom(ReadableByteChannel, ElementCodec)} move the
+ * tables as they are, without rehashing: a bitmap of the occupied slots in large blocks, then the elements, which an
+ * {@link ElementCodec} writes since the set cannot know how to.
+ *
+ * {@link #stats()} reports kick chain lengths, failed inserts, resizes, load and bucket occupancy - the counters only
+ * while {@link #setStatsEnabled(boolean)} is on - and {@link #statsMXBean()} exposes them over JMX.
  */
 public class CuckooHashSet<T> extends AbstractSet<T> {
 
     private static final int DEFAULT_INITIAL_SIZE = 16;
+    //slots of the old table moved per add or remove during an incremental resize
+    private static final int MOVE_SLOTS = 8;
+    private static final int STASH_SIZE = 4;
 
-    private static final int UPPER_BITS_MASK = 0xFFFF0000;
-    private static final int UPPER_BITS_SHIFT = 16;
-    private static final int LOWER_BITS_MASK = 0xFFFF;
+    private static final int MAGIC = 0x53484343;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
 
     private final Class<T> valueClazz;
-    private final HashFunction<T> hashFunction1;
-    private final HashFunction<T> hashFunction2;
+    //one per partition of the table
+    private final HashFunction<T>[] hashFunctions;
     private final int maxInsertLoops;
     private final float loadFactor;
+    private final int bucketEntries;
+    private final Random rand;
+    private final boolean incrementalResize;
 
     private T[] values;
+    //elements that did not fit in values, and null for free stash slots
+    private T[] stash;
     private int size = 0;
+    //true while values is shared with a snapshot, so it must be copied before it is written to
+    private boolean valuesShared = false;
+    //while an incremental resize is in progress, the table being moved out of, otherwise null. Each element is in
+    //exactly one of values and oldValues
+    private T[] oldValues;
+    private boolean oldValuesShared = false;
+    //slots of oldValues below this have been moved
+    private int movedSlots;
+    private InsertStrategy insertStrategy = InsertStrategy.RANDOM_WALK;
+    //breadth-first search tree of InsertStrategy.BREADTH_FIRST: the first slot of each node's bucket, its parent node,
+    //and the slot of the parent's bucket whose element moves into it
+    private int[] pathBuckets;
+    private int[] pathParents;
+    private int[] pathSlots;
+    //null unless stats are enabled
+    private CuckooStats stats;
 
     /**
      * Uses {@link Object#hashCode()} as the hash function
@@ -43,11 +106,11 @@ public class CuckooHashSet<T> extends AbstractSet<T> {
     }
 
     /**
-     * Like the constructor below, except splits the upper/lower bits of hashFunction1's output to be used for the two hashes
+     * Like the constructor below, except a 64 bit mix of hashFunction1's output serves as the second hash
      * @param valueClazz type of elements stored in this set
      * @param maxInsertLoops maximum number of loops when inserting an element before resizing
      * @param loadFactor how close to being full before the table is resized
-     * @param hashFunction1 hash function whose result will be split into upper/lower halves to serves as two hash outputs
+     * @param hashFunction1 hash function whose result, and a mix of it, serve as the two hash outputs
      */
     public CuckooHashSet(Class<T> valueClazz, int maxInsertLoops, float loadFactor, HashFunction<T> hashFunction1) {
         this(valueClazz, maxInsertLoops, loadFactor, hashFunction1, null);
@@ -61,15 +124,208 @@ public class CuckooHashSet<T> extends AbstractSet<T> {
      * @param hashFunction2 second hash function - must be independent of first hash function
      */
     public CuckooHashSet(Class<T> valueClazz, int maxInsertLoops, float loadFactor, HashFunction<T> hashFunction1, HashFunction<T> hashFunction2) {
-        if(valueClazz == null || maxInsertLoops < 1 || loadFactor <= 0 || Float.isNaN(loadFactor) || hashFunction1 == null) {
+        this(valueClazz, maxInsertLoops, loadFactor, 1, hashFunction1, hashFunction2);
+    }
+
+    /**
+     * Bucketized set - see the class comment. 4 or 8 entries keep a bucket's references within one cache line.
+     * @param valueClazz type of elements stored in this set
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized. With one entry per bucket this is relative to
+     *                   half the slots, since plain cuckoo hashing cannot fill much more than that. With more entries per
+     *                   bucket it is relative to all slots, for example 0.9
+     * @param bucketEntries number of slots per bucket - must be a power of 2, 1 is plain cuckoo hashing
+     * @param hashFunction1 first hash function
+     * @param hashFunction2 second hash function - must be independent of first hash function, or null to use a mix
+     *                      of hashFunction1's output - see CuckooHashing
+     */
+    public CuckooHashSet(Class<T> valueClazz, int maxInsertLoops, float loadFactor, int bucketEntries, HashFunction<T> hashFunction1, HashFunction<T> hashFunction2) {
+        this(valueClazz, maxInsertLoops, loadFactor, bucketEntries, hashFunction1, hashFunction2, false);
+    }
+
+    /**
+     * @param valueClazz type of elements stored in this set
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized - see above
+     * @param bucketEntries number of slots per bucket - must be a power of 2, 1 is plain cuckoo hashing
+     * @param hashFunction1 first hash function
+     * @param hashFunction2 second hash function - must be independent of first hash function, or null to use a mix
+     *                      of hashFunction1's output - see CuckooHashing
+     * @param incrementalResize if true, elements are moved to a larger table a few at a time rather than all at once -
+     *                          see the class comment
+     */
+    public CuckooHashSet(Class<T> valueClazz, int maxInsertLoops, float loadFactor, int bucketEntries, HashFunction<T> hashFunction1, HashFunction<T> hashFunction2,
+                         boolean incrementalResize) {
+        this(valueClazz, maxInsertLoops, loadFactor, bucketEntries, twoHashFunctions(hashFunction1, hashFunction2), incrementalResize);
+    }
+
+    /**
+     * d-ary set - see the class comment
+     * @param valueClazz type of elements stored in this set
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized. With one entry per bucket and 2 hash
+     *                   functions this is relative to half the slots, otherwise to all slots, for example 0.9
+     * @param bucketEntries number of slots per bucket - must be a power of 2, 1 is plain cuckoo hashing
+     * @param hashFunctions at least 2 independent hash functions, one per partition of the table - usually 3 or 4
+     * @param incrementalResize if true, elements are moved to a larger table a few at a time rather than all at once -
+     *                          see the class comment
+     */
+    public CuckooHashSet(Class<T> valueClazz, int maxInsertLoops, float loadFactor, int bucketEntries, List<HashFunction<T>> hashFunctions,
+                         boolean incrementalResize) {
+        if(valueClazz == null || maxInsertLoops < 1 || loadFactor <= 0 || Float.isNaN(loadFactor) || hashFunctions == null
+                || hashFunctions.size() < 2 || hashFunctions.contains(null)) {
             throw new IllegalArgumentException();
         }
+        if(bucketEntries < 1 || (bucketEntries & (bucketEntries - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid bucket entries");
+        }
         this.valueClazz = valueClazz;
         this.maxInsertLoops = maxInsertLoops;
         this.loadFactor = loadFactor;
-        this.hashFunction1 = hashFunction1;
-        this.hashFunction2 = hashFunction2;
-        values = (T[])Array.newInstance(valueClazz, DEFAULT_INITIAL_SIZE);
+        this.bucketEntries = bucketEntries;
+        //no generic array can be created, but the raw one only ever holds the list's HashFunction<T>s
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        HashFunction<T>[] functions = hashFunctions.toArray(new HashFunction[hashFunctions.size()]);
+        this.hashFunctions = functions;
+        this.incrementalResize = incrementalResize;
+        rand = new Random();
+        values = newValues();
+        stash = newStash();
+    }
+
+    private static <T> List<HashFunction<T>> twoHashFunctions(HashFunction<T> hashFunction1, HashFunction<T> hashFunction2) {
+        if(hashFunction1 == null) {
+            throw new IllegalArgumentException();
+        }
+        return Arrays.asList(hashFunction1, hashFunction2 == null ? CuckooHashing.mixed(hashFunction1) : hashFunction2);
+    }
+
+    //snapshot
+    private CuckooHashSet(CuckooHashSet<T> from) {
+        valueClazz = from.valueClazz;
+        maxInsertLoops = from.maxInsertLoops;
+        loadFactor = from.loadFactor;
+        bucketEntries = from.bucketEntries;
+        hashFunctions = from.hashFunctions;
+        incrementalResize = from.incrementalResize;
+        rand = new Random();
+        values = from.values;
+        //small enough to just copy
+        stash = from.stash.clone();
+        size = from.size;
+        valuesShared = true;
+        oldValues = from.oldValues;
+        oldValuesShared = true;
+        movedSlots = from.movedSlots;
+        insertStrategy = from.insertStrategy;
+    }
+
+    /**
+     * Copy-on-write copy of this set. Taking it is constant time; afterwards whichever of the two sets is changed first
+     * copies the table once. The snapshot never changes unless it is changed itself, so another thread can iterate it
+     * while this set keeps taking writes from its own thread.
+     */
+    public CuckooHashSet<T> snapshot() {
+        valuesShared = true;
+        oldValuesShared = true;
+        return new CuckooHashSet<T>(this);
+    }
+
+    /**
+     * @param insertStrategy how adds make room when both of an element's buckets are full - {@link InsertStrategy#RANDOM_WALK}
+     *                       unless set. When it fails the table is resized either way
+     */
+    public void setInsertStrategy(InsertStrategy insertStrategy) {
+        if(insertStrategy == null) {
+            throw new IllegalArgumentException();
+        }
+        this.insertStrategy = insertStrategy;
+    }
+
+    /**
+     * Starts or stops recording kick chains, failed inserts and resizes for {@link #stats()}. Enabling starts the
+     * counters from zero. While disabled, recording costs nothing but a null check
+     */
+    public void setStatsEnabled(boolean enabled) {
+        stats = enabled ? new CuckooStats() : null;
+    }
+
+    /**
+     * Statistics of this set. Reads the whole table for the load and occupancy, so it takes time proportional to its
+     * length
+     */
+    public CuckooStatsSnapshot stats() {
+        long[] occupancy = new long[bucketEntries + 1];
+        addOccupancy(occupancy, values);
+        addOccupancy(occupancy, oldValues);
+        double load = ((double) size) / capacity();
+        return stats == null ? CuckooStats.disabled(load, occupancy, 0) : stats.snapshot(load, occupancy, 0);
+    }
+
+    private void addOccupancy(long[] occupancy, T[] values) {
+        if(values == null) {
+            return;
+        }
+        for(int bucket = 0; bucket < values.length; bucket += bucketEntries) {
+            int occupied = 0;
+            for(int i = bucket; i < bucket + bucketEntries; i++) {
+                if(values[i] != null) {
+                    occupied++;
+                }
+            }
+            occupancy[occupied]++;
+        }
+    }
+
+    /**
+     * @return view of {@link #stats()} to register with an MBeanServer, taking a new snapshot for each attribute read.
+     * Like the rest of this set it is unsynchronized: read from the JMX thread while the owner writes, the snapshots
+     * may mix tables from before and after a resize
+     */
+    public CuckooStatsMXBean statsMXBean() {
+        return new CuckooStats.LiveView() {
+            @Override
+            CuckooStatsSnapshot snapshot() {
+                return stats();
+            }
+        };
+    }
+
+    private T[] ownValues() {
+        if(valuesShared) {
+            values = values.clone();
+            valuesShared = false;
+        }
+        return values;
+    }
+
+    private T[] ownOldValues() {
+        if(oldValuesShared) {
+            oldValues = oldValues.clone();
+            oldValuesShared = false;
+        }
+        return oldValues;
+    }
+
+    private T[] newValues() {
+        return (T[])Array.newInstance(valueClazz, initialLength());
+    }
+
+    private T[] newStash() {
+        return (T[])Array.newInstance(valueClazz, STASH_SIZE);
+    }
+
+    private int initialLength() {
+        return hashFunctions.length * Math.max(DEFAULT_INITIAL_SIZE / 2, bucketEntries);
+    }
+
+    private int bucketsPerPartition(T[] values) {
+        return values.length / hashFunctions.length / bucketEntries;
+    }
+
+    //first slot of t's bucket in partition i
+    private int bucket(int i, T t, int bucketsPerPartition) {
+        return CuckooHashing.position(hashFunctions, i, t, bucketsPerPartition) * bucketEntries;
     }
 
     @Override
@@ -84,127 +340,326 @@ public class CuckooHashSet<T> extends AbstractSet<T> {
 
     @Override
     public boolean contains(Object o) {
-        return getPosition((T)o) != null;
+        return getPosition(values, (T)o) != null || (oldValues != null && getPosition(oldValues, (T)o) != null) || stashIndex(o) >= 0;
     }
 
-    private Integer getPosition(T val) {
-        final int hashFunc1Pos = hashFunction1.hash(val);
-        int pos;
-        if(hashFunction2 == null) {
-            pos = (hashFunc1Pos & UPPER_BITS_MASK) >> UPPER_BITS_SHIFT;
-        } else {
-            pos = hashFunc1Pos;
-        }
-        final int halfValuesLength = values.length / 2;
-        pos %= halfValuesLength;
-        T t = values[pos];
-        if(t == null || !t.equals(val)) {
-            if(hashFunction2 == null) {
-                pos = hashFunc1Pos & LOWER_BITS_MASK;
-            } else {
-                pos = hashFunction2.hash(val);
+    private int stashIndex(Object o) {
+        for(int i = 0; i < stash.length; i++) {
+            if(o.equals(stash[i])) {
+                return i;
             }
-            pos %= halfValuesLength;
-            pos += halfValuesLength;
-            t = values[pos];
         }
-        Integer ret;
-        if(t != null) {
-            ret = t.equals(val) ? pos : null;
-        } else {
-            ret = null;
+        return -1;
+    }
+
+    //returns true if t was stored in a free stash slot
+    private boolean stash(T t) {
+        for(int i = 0; i < stash.length; i++) {
+            if(stash[i] == null) {
+                stash[i] = t;
+                return true;
+            }
         }
-        return ret;
+        return false;
+    }
+
+    //puts stashed elements back in values, which has room after a resize - elements kicked out on the way are stashed
+    private void drainStash() {
+        for(int i = 0; i < stash.length; i++) {
+            T t = stash[i];
+            if(t != null) {
+                stash[i] = add(ownValues(), t);
+            }
+        }
+    }
+
+    //moves stashed elements whose buckets have a free slot back into values, without kicking anything
+    private void unstashFree() {
+        final int bucketsPerPartition = bucketsPerPartition(values);
+        for(int i = 0; i < stash.length; i++) {
+            T t = stash[i];
+            for(int h = 0; t != null && h < hashFunctions.length; h++) {
+                if(addToBucket(ownValues(), bucket(h, t, bucketsPerPartition), t)) {
+                    stash[i] = null;
+                    t = null;
+                }
+            }
+        }
+    }
+
+    private Integer getPosition(T[] values, T val) {
+        final int bucketsPerPartition = bucketsPerPartition(values);
+        for(int h = 0; h < hashFunctions.length; h++) {
+            int pos = bucket(h, val, bucketsPerPartition);
+            for(int i = 0; i < bucketEntries; i++, pos++) {
+                if(val.equals(values[pos])) {
+                    return pos;
+                }
+            }
+        }
+        return null;
     }
 
+    /**
+     * @throws IllegalStateException if the hash functions collide so often that growing the table does not help - one
+     * element, possibly t, is then left out of the set
+     */
     @Override
     public boolean add(T t) {
         if(contains(t)) {
             return false;
         }
-        if(((float)size) > ((values.length / 2) * loadFactor)) {
-            resize();
+        if(((float)size) > (capacity() * loadFactor)) {
+            if(incrementalResize) {
+                finishMove();
+                startMove();
+            } else {
+                resize(1);
+            }
+        }
+        T homeless = add(ownValues(), t);
+        if(homeless != null && !stash(homeless)) {
+            if(incrementalResize && oldValues == null) {
+                startMove();
+            }
+            place(homeless);
         }
-        add(values, t);
         size++;
+        moveSome();
         return true;
     }
 
+    //adds t to values or the stash, resizing in one go until it fits
+    private void place(T t) {
+        T homeless = add(ownValues(), t);
+        for(int doublings = 1; homeless != null && !stash(homeless); doublings++) {
+            doublings = resize(doublings);
+            homeless = add(values, homeless);
+        }
+    }
+
+    private void startMove() {
+        long start = stats == null ? 0 : System.nanoTime();
+        T[] tmp = (T[]) Array.newInstance(valueClazz, CuckooHashing.redouble(values.length, 1));
+        oldValues = values;
+        oldValuesShared = valuesShared;
+        movedSlots = 0;
+        values = tmp;
+        valuesShared = false;
+        drainStash();
+        if(stats != null) {
+            stats.recordResize(System.nanoTime() - start);
+        }
+    }
+
+    //moves the next MOVE_SLOTS slots of an incremental resize
+    private void moveSome() {
+        if(oldValues == null) {
+            return;
+        }
+        T[] from = ownOldValues();
+        int end = Math.min(from.length, movedSlots + MOVE_SLOTS);
+        for(; movedSlots < end; movedSlots++) {
+            T t = from[movedSlots];
+            if(t != null) {
+                from[movedSlots] = null;
+                place(t);
+            }
+        }
+        if(movedSlots == from.length) {
+            oldValues = null;
+        }
+    }
+
+    private void finishMove() {
+        if(oldValues != null) {
+            //read only, so it need not be owned
+            T[] from = oldValues;
+            oldValues = null;
+            for(int i = movedSlots; i < from.length; i++) {
+                if(from[i] != null) {
+                    place(from[i]);
+                }
+            }
+        }
+    }
+
+    //number of elements loadFactor is relative to
+    private int capacity() {
+        return bucketEntries == 1 && hashFunctions.length == 2 ? values.length / 2 : values.length;
+    }
+
+    //default access for unit testing
+    int tableLength() {
+        return values.length;
+    }
+
+    //default access for unit testing
+    boolean isResizing() {
+        return oldValues != null;
+    }
+
     /**
-     * @return true if resize actually occurred
+     * Doubles the table in one go, and again until every element of it fits
+     * @param doublings number of doublings of the current add so far, including this one
+     * @return number of doublings of the current add after the resize
+     * @throws IllegalStateException if the add doubled the table too often - see {@link CuckooHashing#redouble(int, int)}
      */
-    private boolean resize() {
-        boolean didResize;
-        int currentSize = values.length / 2;
-        int newSize = size < 1 ? DEFAULT_INITIAL_SIZE : currentSize * 2;
-        if(newSize == currentSize) {
-            didResize = false;
-        } else {
-            T[] tmp = (T[]) Array.newInstance(valueClazz, newSize * 2);
-            addValues(values, tmp);
-            values = tmp;
-            didResize = true;
+    private int resize(int doublings) {
+        long start = stats == null ? 0 : System.nanoTime();
+        T[] tmp = (T[]) Array.newInstance(valueClazz, CuckooHashing.redouble(values.length, doublings));
+        while(!addValues(values, tmp)) {
+            tmp = (T[]) Array.newInstance(valueClazz, CuckooHashing.redouble(tmp.length, ++doublings));
+        }
+        values = tmp;
+        valuesShared = false;
+        drainStash();
+        if(stats != null) {
+            stats.recordResize(System.nanoTime() - start);
         }
-        return didResize;
+        return doublings;
     }
 
-    private void addValues(T[] from, T[] tmp) {
+    //returns false if one of the values could not be placed
+    private boolean addValues(T[] from, T[] tmp) {
         if(from != null) {
             for(T t : from) {
-                if(t != null) {
-                    add(tmp, t);
+                if(t != null && add(tmp, t) != null) {
+                    return false;
                 }
             }
         }
+        return true;
     }
 
+    /**
+     * @return null if t was placed, otherwise the element that was kicked out and could not be placed
+     */
     private T add(T[] values, T t) {
-        T ret = null;
-        int pos;
-        int hash;
-        int loops;
-        int halfValuesLength;
-        outer:
-        while(true) {
-            for(loops = 0; loops < maxInsertLoops; loops++) {
-                halfValuesLength = values.length / 2;
-                hash = hashFunction1.hash(t);
-                if(hashFunction2 == null) {
-                    pos = (hash & UPPER_BITS_MASK) >> UPPER_BITS_SHIFT;
-                } else {
-                    pos = hash;
-                }
-                pos %= values.length / 2;
-                ret = values[pos];
-                if(ret == null) {
-                    values[pos] = t;
-                    break;
-                }
-                values[pos] = t;
-                t = ret;
-                if(hashFunction2 == null) {
-                    pos = hashFunction1.hash(t) & LOWER_BITS_MASK;
-                } else {
-                    pos = hashFunction2.hash(t);
-                }
-                pos %= halfValuesLength;
-                pos += halfValuesLength;
-                ret = values[pos];
-                if(ret == null) {
-                    values[pos] = t;
-                    break;
+        final int bucketsPerPartition = bucketsPerPartition(values);
+        //a new element may go in a free slot of any of its buckets
+        for(int h = 0; h < hashFunctions.length; h++) {
+            if(addToBucket(values, bucket(h, t, bucketsPerPartition), t)) {
+                return placed(0);
+            }
+        }
+        if(insertStrategy == InsertStrategy.BREADTH_FIRST) {
+            return insertBreadthFirst(values, t) ? null : failed(t);
+        }
+        //kick out of the first partition, then move each kicked element to a free slot in any of its other buckets, or
+        //else kick it into one of them - with 2 hash functions, back and forth between the two halves
+        int partition = 0;
+        int bucket = bucket(0, t, bucketsPerPartition);
+        for(int kicks = 0; kicks < maxInsertLoops * 2; kicks++) {
+            t = kick(values, bucket, t);
+            int from = partition;
+            for(int h = 0; h < hashFunctions.length; h++) {
+                if(h != from && addToBucket(values, bucket(h, t, bucketsPerPartition), t)) {
+                    return placed(kicks + 1);
                 }
-                values[pos] = t;
-                t = ret;
             }
-            if(loops >= maxInsertLoops) {
-                if(!resize()) {
-                    throw new IllegalStateException("maxInsertLoops exceeded and resize did not occur");
+            partition = hashFunctions.length == 2 ? 1 - from : (from + 1 + rand.nextInt(hashFunctions.length - 1)) % hashFunctions.length;
+            bucket = bucket(partition, t, bucketsPerPartition);
+        }
+        return failed(t);
+    }
+
+    //finds the shortest chain of moves from one of t's buckets to a bucket with room, through up to maxInsertLoops
+    //buckets, and makes it. Returns false, with nothing moved, if there is none
+    private boolean insertBreadthFirst(T[] values, T t) {
+        if(pathBuckets == null) {
+            pathBuckets = new int[maxInsertLoops + hashFunctions.length];
+            pathParents = new int[pathBuckets.length];
+            pathSlots = new int[pathBuckets.length];
+        }
+        final int bucketsPerPartition = bucketsPerPartition(values);
+        final int partitionLength = bucketsPerPartition * bucketEntries;
+        int count = 0;
+        for(; count < hashFunctions.length; count++) {
+            pathBuckets[count] = bucket(count, t, bucketsPerPartition);
+            pathParents[count] = -1;
+        }
+        for(int node = 0; node < count; node++) {
+            int bucket = pathBuckets[node];
+            int partition = bucket / partitionLength;
+            for(int slot = bucket; slot < bucket + bucketEntries; slot++) {
+                T moved = values[slot];
+                //elements move to their bucket in any other partition
+                for(int h = 0; h < hashFunctions.length; h++) {
+                    if(h == partition) {
+                        continue;
+                    }
+                    int alternate = bucket(h, moved, bucketsPerPartition);
+                    if(onPath(node, alternate)) {
+                        continue;
+                    }
+                    //the last move of a chain is the first one made, then every element moves into the slot just freed
+                    if(addToBucket(values, alternate, moved)) {
+                        int free = slot;
+                        int kicks = 1;
+                        for(int n = node; pathParents[n] >= 0; n = pathParents[n], kicks++) {
+                            values[free] = values[pathSlots[n]];
+                            free = pathSlots[n];
+                        }
+                        values[free] = t;
+                        placed(kicks);
+                        return true;
+                    }
+                    if(count < pathBuckets.length) {
+                        pathBuckets[count] = alternate;
+                        pathParents[count] = node;
+                        pathSlots[count] = slot;
+                        count++;
+                    }
                 }
-            } else {
-                break outer;
             }
         }
+        return false;
+    }
+
+    //records a placement after kicks moves, and returns null for add's no homeless element
+    private T placed(int kicks) {
+        if(stats != null) {
+            stats.recordInsert(kicks);
+        }
+        return null;
+    }
+
+    //records an element kicks could not place, and returns it
+    private T failed(T t) {
+        if(stats != null) {
+            stats.recordFailedInsert();
+        }
+        return t;
+    }
+
+    private boolean onPath(int node, int bucket) {
+        for(; node >= 0; node = pathParents[node]) {
+            if(pathBuckets[node] == bucket) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //returns true if t was stored in a free slot of the bucket starting at pos
+    private boolean addToBucket(T[] values, int pos, T t) {
+        for(int i = 0; i < bucketEntries; i++, pos++) {
+            if(values[pos] == null) {
+                values[pos] = t;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //replaces a random entry of the full bucket starting at pos with t, and returns the replaced entry
+    private T kick(T[] values, int pos, T t) {
+        if(bucketEntries > 1) {
+            pos += rand.nextInt(bucketEntries);
+        }
+        T ret = values[pos];
+        values[pos] = t;
         return ret;
     }
 
@@ -212,24 +667,25 @@ public class CuckooHashSet<T> extends AbstractSet<T> {
     public Iterator<T> iterator() {
         return new AbstractIterator<T>() {
 
+            //values, then the old table of an incremental resize, then the stash
+            private final Object[][] tables = {values, oldValues, stash};
+            private int table = 0;
             private int currentPos = 0;
 
             @Override
             protected T computeNext() {
-                T ret = null;
-                T t;
-                for(; currentPos < values.length; currentPos++) {
-                    t = values[currentPos];
-                    if(t != null) {
-                        ret = t;
-                        break;
+                for(; table < tables.length; table++, currentPos = 0) {
+                    if(tables[table] == null) {
+                        continue;
+                    }
+                    while(currentPos < tables[table].length) {
+                        Object t = tables[table][currentPos++];
+                        if(t != null) {
+                            return (T) t;
+                        }
                     }
                 }
-                currentPos++;
-                if(ret == null) {
-                    ret = endOfData();
-                }
-                return ret;
+                return endOfData();
             }
         };
     }
@@ -239,25 +695,171 @@ public class CuckooHashSet<T> extends AbstractSet<T> {
         if(size < 1) {
             return false;
         }
-        Integer pos = getPosition((T)o);
+        Integer pos = getPosition(values, (T)o);
         boolean ret;
         if(pos != null) {
-            values[pos] = null;
+            ownValues()[pos] = null;
+            ret = true;
+        } else if(oldValues != null && (pos = getPosition(oldValues, (T)o)) != null) {
+            ownOldValues()[pos] = null;
+            ret = true;
+        } else if((pos = stashIndex(o)) >= 0) {
+            stash[pos] = null;
             ret = true;
         } else {
             ret = false;
         }
-        size--;
+        if(ret) {
+            size--;
+            unstashFree();
+            moveSome();
+        }
         return ret;
     }
 
     @Override
     public void clear() {
-        values = (T[])Array.newInstance(valueClazz, DEFAULT_INITIAL_SIZE);
+        values = newValues();
+        valuesShared = false;
+        oldValues = null;
+        stash = newStash();
         size = 0;
     }
 
+    /**
+     * Writes the tables - the one being moved out of too, mid incremental resize - and the stash to channel: a header,
+     * a bitmap of the occupied slots, then the elements in slot order, each written by codec. Leaves channel open
+     */
+    public void writeTo(WritableByteChannel channel, ElementCodec<? super T> codec) throws IOException {
+        int oldLength = oldValues == null ? 0 : oldValues.length;
+        ByteBuffer block = BlockIO.block();
+        block.putInt(MAGIC);
+        block.putInt(VERSION);
+        block.putInt(size);
+        block.putInt(values.length);
+        block.putInt(oldLength);
+        block.putInt(movedSlots);
+        block.flip();
+        BlockIO.writeFully(channel, block);
+        long[] occupied = new long[(values.length + oldLength + STASH_SIZE + 63) >>> 6];
+        int slot = markOccupied(occupied, 0, values);
+        slot = markOccupied(occupied, slot, oldValues);
+        markOccupied(occupied, slot, stash);
+        BlockIO.writeLongs(channel, block, occupied, 0, occupied.length);
+        DataOutputStream out = new DataOutputStream(BlockIO.framedOutput(channel));
+        writeElements(out, codec, values);
+        writeElements(out, codec, oldValues);
+        writeElements(out, codec, stash);
+        out.close();
+    }
+
+    private static int markOccupied(long[] occupied, int slot, Object[] values) {
+        if(values == null) {
+            return slot;
+        }
+        for(Object t : values) {
+            if(t != null) {
+                occupied[slot >>> 6] |= 1L << slot;
+            }
+            slot++;
+        }
+        return slot;
+    }
+
+    private static <T> void writeElements(DataOutput out, ElementCodec<? super T> codec, T[] values) throws IOException {
+        if(values == null) {
+            return;
+        }
+        for(T t : values) {
+            if(t != null) {
+                codec.write(t, out);
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of this set with tables written by {@link #writeTo(WritableByteChannel, ElementCodec)},
+     * reading nothing past them. The slots are used as they are, so this set must have been constructed with the same
+     * hash functions and bucket entries as the one that wrote them. On failure this set is unchanged
+     */
+    public void readFrom(ReadableByteChannel channel, ElementCodec<? extends T> codec) throws IOException {
+        ByteBuffer block = BlockIO.block();
+        block.limit(HEADER_BYTES);
+        BlockIO.readFully(channel, block);
+        block.flip();
+        if(block.getInt() != MAGIC || block.getInt() != VERSION) {
+            throw new IOException("Not a cuckoo hash set");
+        }
+        int newSize = block.getInt();
+        int length = block.getInt();
+        int oldLength = block.getInt();
+        int moved = block.getInt();
+        if(!validLength(length) || (oldLength != 0 && !validLength(oldLength))) {
+            throw new IOException("Invalid table length " + length + " or " + oldLength);
+        }
+        if(moved < 0 || moved > oldLength || newSize < 0) {
+            throw new IOException("Corrupt header");
+        }
+        long[] occupied = new long[(int) ((length + (long) oldLength + STASH_SIZE + 63) >>> 6)];
+        BlockIO.readLongs(channel, block, occupied, 0, occupied.length);
+        int count = 0;
+        for(long l : occupied) {
+            count += Long.bitCount(l);
+        }
+        if(count != newSize) {
+            throw new IOException("Size " + newSize + " does not match " + count + " occupied slots");
+        }
+        T[] newValues = (T[])Array.newInstance(valueClazz, length);
+        T[] newOldValues = oldLength == 0 ? null : (T[])Array.newInstance(valueClazz, oldLength);
+        T[] newStash = newStash();
+        DataInputStream in = new DataInputStream(BlockIO.framedInput(channel));
+        int slot = readElements(in, codec, occupied, 0, newValues);
+        slot = readElements(in, codec, occupied, slot, newOldValues);
+        readElements(in, codec, occupied, slot, newStash);
+        if(in.read() >= 0) {
+            throw new IOException("Unread elements");
+        }
+        values = newValues;
+        valuesShared = false;
+        oldValues = newOldValues;
+        oldValuesShared = false;
+        movedSlots = moved;
+        stash = newStash;
+        size = newSize;
+    }
+
+    private boolean validLength(int length) {
+        int partition = hashFunctions.length * bucketEntries;
+        return length > 0 && length % partition == 0 && Integer.bitCount(length / partition) == 1;
+    }
+
+    private int readElements(DataInput in, ElementCodec<? extends T> codec, long[] occupied, int slot, T[] values) throws IOException {
+        if(values == null) {
+            return slot;
+        }
+        for(int i = 0; i < values.length; i++, slot++) {
+            if((occupied[slot >>> 6] & (1L << slot)) != 0) {
+                T t = codec.read(in);
+                if(t == null) {
+                    throw new IOException("Null element");
+                }
+                values[i] = valueClazz.cast(t);
+            }
+        }
+        return slot;
+    }
+
     public static interface HashFunction<K> {
         int hash(K k);
     }
+
+    /**
+     * Writes and reads single elements for {@link #writeTo(WritableByteChannel, ElementCodec)} and
+     * {@link #readFrom(ReadableByteChannel, ElementCodec)}
+     */
+    public static interface ElementCodec<K> {
+        void write(K k, DataOutput out) throws IOException;
+
+        K read(DataInput in) throws IOException;
+    }
 }
@@ -0,0 +1,103 @@
+package com.github.mfondo;
+
+/**
+ * Placement of elements in the two halves of a cuckoo table, shared by the sets and maps in this package.
+ *
+ * When no second hash function is given, the first hash serves as the first hash, and the upper 32 bits of a 64 bit mix
+ * of it as the second. Both use all their bits, so either half can be larger than 2^16 positions.
+ */
+final class CuckooHashing {
+
+    //doublings a resize may add to the length it was asked for: hashes that still collide in a table 32 times larger
+    //than the load factor calls for will not be separated by growing it further
+    private static final int MAX_EXTRA_DOUBLINGS = 5;
+
+    private CuckooHashing() {
+    }
+
+    /**
+     * Every table growth of the sets and maps in this package goes through here, so the limit holds for all of them
+     * @param length length of the table to grow - the current one, or one an element could not be placed in while
+     *               resizing
+     * @param doublings number of times the resize has doubled already, including this one
+     * @return length of the next table to try
+     * @throws IllegalStateException if the resize has doubled too often, or the table cannot grow
+     */
+    static int redouble(int length, int doublings) {
+        if(length >= (1 << 30)) {
+            throw new IllegalStateException("A table of " + length + " slots cannot grow");
+        }
+        if(doublings > MAX_EXTRA_DOUBLINGS) {
+            throw new IllegalStateException("Elements could not be placed in a table of " + length + " slots - the hash functions collide");
+        }
+        return length * 2;
+    }
+
+    /**
+     * @return position of t in the first half of a table with halfValuesLength slots per half
+     */
+    static <T> int position1(CuckooHashSet.HashFunction<T> hashFunction1, CuckooHashSet.HashFunction<T> hashFunction2, T t, int halfValuesLength) {
+        return position1(hashFunction1.hash(t), halfValuesLength);
+    }
+
+    /**
+     * @return position of t in the second half of a table with halfValuesLength slots per half
+     */
+    static <T> int position2(CuckooHashSet.HashFunction<T> hashFunction1, CuckooHashSet.HashFunction<T> hashFunction2, T t, int halfValuesLength) {
+        int pos;
+        if(hashFunction2 == null) {
+            pos = mixedHash(hashFunction1.hash(t));
+        } else {
+            pos = hashFunction2.hash(t);
+        }
+        return position2(pos, halfValuesLength);
+    }
+
+    /**
+     * @return position of t in partition i of a table with partitionLength slots per partition, partition i being
+     * indexed by hashFunctions[i]. partitionLength must be a power of 2
+     */
+    static <T> int position(CuckooHashSet.HashFunction<T>[] hashFunctions, int i, T t, int partitionLength) {
+        return (hashFunctions[i].hash(t) & (partitionLength - 1)) + i * partitionLength;
+    }
+
+    /**
+     * @return the second hash function used when none is given - see the class comment
+     */
+    static <T> CuckooHashSet.HashFunction<T> mixed(final CuckooHashSet.HashFunction<T> hashFunction1) {
+        return new CuckooHashSet.HashFunction<T>() {
+            @Override
+            public int hash(T t) {
+                return mixedHash(hashFunction1.hash(t));
+            }
+        };
+    }
+
+    private static int mixedHash(int hash) {
+        return (int) (mix64(hash) >>> Integer.SIZE);
+    }
+
+    /**
+     * @return position of an element with the given (possibly negative) hash in the first half of a table
+     */
+    static int position1(int hash, int halfValuesLength) {
+        return (hash & Integer.MAX_VALUE) % halfValuesLength;
+    }
+
+    /**
+     * @return position of an element with the given (possibly negative) hash in the second half of a table
+     */
+    static int position2(int hash, int halfValuesLength) {
+        return ((hash & Integer.MAX_VALUE) % halfValuesLength) + halfValuesLength;
+    }
+
+    //finalizer of MurmurHash3's 64 bit variant
+    static long mix64(long l) {
+        l ^= l >>> 33;
+        l *= 0xff51afd7ed558ccdL;
+        l ^= l >>> 33;
+        l *= 0xc4ceb9fe1a85ec53L;
+        l ^= l >>> 33;
+        return l;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.mfondo;
+
+/**
+ * Counters a {@link CuckooHashSet} or {@link CuckooFilter} records into while stats are enabled. While they are not,
+ * the structure holds no CuckooStats, and the hot path costs a null check.
+ */
+final class CuckooStats {
+
+    //index 0 counts placements without kicks, index i > 0 those of 2^(i-1) to 2^i - 1 kicks
+    private final long[] kickHistogram = new long[Integer.SIZE + 1];
+    private long failedInserts;
+    private long resizes;
+    private long resizeNanos;
+
+    void recordInsert(int kicks) {
+        kickHistogram[Integer.SIZE - Integer.numberOfLeadingZeros(kicks)]++;
+    }
+
+    //an element that kicks could not place
+    void recordFailedInsert() {
+        failedInserts++;
+    }
+
+    void recordResize(long nanos) {
+        resizes++;
+        resizeNanos += nanos;
+    }
+
+    CuckooStatsSnapshot snapshot(double loadFactor, long[] occupancyHistogram, double estimatedFalsePositiveRate) {
+        return new CuckooStatsSnapshot(kickHistogram.clone(), failedInserts, resizes, resizeNanos, loadFactor,
+                occupancyHistogram, estimatedFalsePositiveRate);
+    }
+
+    static CuckooStatsSnapshot disabled(double loadFactor, long[] occupancyHistogram, double estimatedFalsePositiveRate) {
+        return new CuckooStatsSnapshot(new long[Integer.SIZE + 1], 0, 0, 0, loadFactor, occupancyHistogram,
+                estimatedFalsePositiveRate);
+    }
+
+    /**
+     * {@link CuckooStatsMXBean} that takes a fresh snapshot for every attribute read
+     */
+    abstract static class LiveView implements CuckooStatsMXBean {
+
+        abstract CuckooStatsSnapshot snapshot();
+
+        @Override
+        public long getInserts() {
+            return snapshot().getInserts();
+        }
+
+        @Override
+        public long[] getKickHistogram() {
+            return snapshot().getKickHistogram();
+        }
+
+        @Override
+        public long getFailedInserts() {
+            return snapshot().getFailedInserts();
+        }
+
+        @Override
+        public long getResizes() {
+            return snapshot().getResizes();
+        }
+
+        @Override
+        public long getResizeNanos() {
+            return snapshot().getResizeNanos();
+        }
+
+        @Override
+        public double getLoadFactor() {
+            return snapshot().getLoadFactor();
+        }
+
+        @Override
+        public long[] getOccupancyHistogram() {
+            return snapshot().getOccupancyHistogram();
+        }
+
+        @Override
+        public double getEstimatedFalsePositiveRate() {
+            return snapshot().getEstimatedFalsePositiveRate();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.mfondo;
+
+/**
+ * Insert and table statistics of a {@link CuckooHashSet} or {@link CuckooFilter}, for registering with an MBeanServer:
+ *
+ * <pre>
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(set.statsMXBean(), new ObjectName("myapp:type=CuckooHashSet,name=users"));
+ * </pre>
+ *
+ * Counters are only recorded while stats are enabled - see {@link CuckooHashSet#setStatsEnabled(boolean)}.
+ *
+ * @see CuckooStatsSnapshot
+ */
+public interface CuckooStatsMXBean {
+
+    /**
+     * @return number of elements placed in the table - see {@link #getKickHistogram()}
+     */
+    long getInserts();
+
+    /**
+     * Every placement of an element in the table, counted by the length of its kick chain: index 0 counts those that
+     * found a free entry in one of their buckets, index i &gt; 0 those that moved 2^(i-1) to 2^i - 1 other elements.
+     * Searches that gave up after maxInsertLoops are counted in {@link #getFailedInserts()} instead. For a
+     * CuckooHashSet this includes the placements made while resizing and when stashed elements move back
+     */
+    long[] getKickHistogram();
+
+    /**
+     * @return number of elements kicks could not place: for a CuckooHashSet those that went to the stash or made the
+     * table resize, for a CuckooFilter adds that returned false and fingerprints left as the victim
+     */
+    long getFailedInserts();
+
+    /**
+     * @return number of times the table grew - each incremental resize counts once, when it starts
+     */
+    long getResizes();
+
+    /**
+     * @return total time spent in resizes. An incremental resize only counts the time it took to start, the moves
+     * that follow are spread over later adds and removes
+     */
+    long getResizeNanos();
+
+    /**
+     * @return current load: for a CuckooHashSet relative to the capacity its loadFactor is, for a CuckooFilter the
+     * share of entries in use
+     */
+    double getLoadFactor();
+
+    /**
+     * @return index i is the number of buckets with i entries in use
+     */
+    long[] getOccupancyHistogram();
+
+    /**
+     * @return estimated probability that contains returns true for an element that was never added, from the current
+     * load - 0 for a CuckooHashSet, which is exact
+     */
+    double getEstimatedFalsePositiveRate();
+}
@@ -0,0 +1,87 @@
+package com.github.mfondo;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of a {@link CuckooHashSet} or {@link CuckooFilter} at one point in time. The counters are zero unless stats
+ * were enabled, the load, occupancy and false positive rate are computed from the table either way - see
+ * {@link CuckooStatsMXBean} for what each means.
+ */
+public final class CuckooStatsSnapshot implements CuckooStatsMXBean {
+
+    private final long[] kickHistogram;
+    private final long failedInserts;
+    private final long resizes;
+    private final long resizeNanos;
+    private final double loadFactor;
+    private final long[] occupancyHistogram;
+    private final double estimatedFalsePositiveRate;
+
+    CuckooStatsSnapshot(long[] kickHistogram, long failedInserts, long resizes, long resizeNanos, double loadFactor,
+                        long[] occupancyHistogram, double estimatedFalsePositiveRate) {
+        this.kickHistogram = kickHistogram;
+        this.failedInserts = failedInserts;
+        this.resizes = resizes;
+        this.resizeNanos = resizeNanos;
+        this.loadFactor = loadFactor;
+        this.occupancyHistogram = occupancyHistogram;
+        this.estimatedFalsePositiveRate = estimatedFalsePositiveRate;
+    }
+
+    @Override
+    public long getInserts() {
+        long ret = 0;
+        for(long l : kickHistogram) {
+            ret += l;
+        }
+        return ret;
+    }
+
+    @Override
+    public long[] getKickHistogram() {
+        return kickHistogram.clone();
+    }
+
+    @Override
+    public long getFailedInserts() {
+        return failedInserts;
+    }
+
+    @Override
+    public long getResizes() {
+        return resizes;
+    }
+
+    @Override
+    public long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    @Override
+    public double getLoadFactor() {
+        return loadFactor;
+    }
+
+    @Override
+    public long[] getOccupancyHistogram() {
+        return occupancyHistogram.clone();
+    }
+
+    @Override
+    public double getEstimatedFalsePositiveRate() {
+        return estimatedFalsePositiveRate;
+    }
+
+    @Override
+    public String toString() {
+        //without the empty long chains
+        int kicks = kickHistogram.length;
+        while(kicks > 1 && kickHistogram[kicks - 1] == 0) {
+            kicks--;
+        }
+        return "CuckooStatsSnapshot{inserts=" + getInserts() + ", kickHistogram=" + Arrays.toString(Arrays.copyOf(kickHistogram, kicks))
+                + ", failedInserts=" + failedInserts + ", resizes=" + resizes + ", resizeNanos=" + resizeNanos
+                + ", loadFactor=" + loadFactor + ", occupancyHistogram=" + Arrays.toString(occupancyHistogram)
+                + ", estimatedFalsePositiveRate=" + estimatedFalsePositiveRate + "}";
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.mfondo;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees direct and mapped {@link ByteBuffer}s right away instead of waiting for them to be garbage collected. There
+ * is no public API for this before the foreign memory API, so it goes through sun.misc.Unsafe.invokeCleaner on Java 9+
+ * and the buffer's cleaner on Java 8. If neither is accessible the buffer is left to the garbage collector.
+ */
+final class DirectBuffers {
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch(Exception e) {
+            //Java 8 or a restricted runtime
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private DirectBuffers() {
+    }
+
+    static void release(ByteBuffer buffer) {
+        if(buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            if(INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if(cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch(Exception e) {
+            //left to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.mfondo;
+
+/**
+ * Seeded 64 bit hash of an element, from which {@link CuckooFilter} takes the fingerprint and the bucket as independent
+ * halves. See {@link Murmur3} for implementations.
+ */
+public interface ElementHasher64<T> {
+
+    /**
+     * @param seed filters with different seeds must get unrelated hashes for the same element
+     */
+    long hash(T t, int seed);
+}
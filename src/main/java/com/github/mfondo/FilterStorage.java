@@ -0,0 +1,49 @@
+package com.github.mfondo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The words under {@link CuckooFilter}'s bit-packed buckets, addressed as ints so that bit offsets work the same
+ * whatever holds them. Indexes are longs so that a filter can be larger than 2^31 bits.
+ */
+interface FilterStorage extends Closeable {
+
+    int getInt(long index);
+
+    void setInt(long index, int value);
+
+    /**
+     * @return number of ints
+     */
+    long length();
+
+    /**
+     * @return copy that does not change when this storage does
+     * @throws UnsupportedOperationException if the storage cannot copy on write
+     */
+    FilterStorage snapshot();
+
+    /**
+     * Writes all {@link #length()} ints, little-endian
+     */
+    void writeTo(WritableByteChannel channel) throws IOException;
+
+    /**
+     * Replaces all {@link #length()} ints with ones written by {@link #writeTo(WritableByteChannel)}
+     */
+    void readFrom(ReadableByteChannel channel) throws IOException;
+
+    /**
+     * Writes changes back to the file the storage is mapped from, if any
+     */
+    void force();
+
+    /**
+     * Releases the memory, after which the storage must not be used
+     */
+    @Override
+    void close();
+}
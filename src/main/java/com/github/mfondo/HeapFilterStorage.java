@@ -0,0 +1,75 @@
+package com.github.mfondo;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link FilterStorage} on an int[], limited to 2^31 - 1 ints
+ */
+final class HeapFilterStorage implements FilterStorage {
+
+    private final int[] data;
+
+    HeapFilterStorage(long length) {
+        if(length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too large for heap storage, use off-heap storage");
+        }
+        this.data = new int[(int) length];
+    }
+
+    HeapFilterStorage(int[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public int getInt(long index) {
+        return data[(int) index];
+    }
+
+    @Override
+    public void setInt(long index, int value) {
+        data[(int) index] = value;
+    }
+
+    /**
+     * For reads only - the ints, indexed like {@link #getInt(long)}
+     */
+    int[] array() {
+        return data;
+    }
+
+    @Override
+    public long length() {
+        return data.length;
+    }
+
+    /**
+     * Copies the whole array - a filter instead moves to {@link PagedFilterStorage} on its first snapshot, after which
+     * snapshots copy on write
+     */
+    @Override
+    public HeapFilterStorage snapshot() {
+        return new HeapFilterStorage(data.clone());
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        BlockIO.writeInts(channel, BlockIO.block(), data, 0, data.length);
+    }
+
+    @Override
+    public void readFrom(ReadableByteChannel channel) throws IOException {
+        BlockIO.readInts(channel, BlockIO.block(), data, 0, data.length);
+    }
+
+    @Override
+    public void force() {
+        //nothing to write back to
+    }
+
+    @Override
+    public void close() {
+        //garbage collected
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.mfondo;
+
+/**
+ * How {@link CuckooHashSet} and {@link CuckooFilter} make room when both of a new element's buckets are full
+ */
+public enum InsertStrategy {
+    /**
+     * Kick a random entry out, put it in its other bucket, kicking one of that bucket's entries out if it is full, and
+     * so on for up to maxInsertLoops moves. This is the classic cuckoo insert, and a failed one leaves the last entry
+     * kicked out without a slot.
+     */
+    RANDOM_WALK,
+    /**
+     * Search breadth-first through up to maxInsertLoops buckets for the shortest chain of moves that ends in a free
+     * slot, then make the moves starting from the free end. Nothing moves unless a chain is found, so a failed insert
+     * leaves the table as it was. Near full load this does fewer moves than RANDOM_WALK.
+     */
+    BREADTH_FIRST
+}
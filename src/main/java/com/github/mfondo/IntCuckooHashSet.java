@@ -0,0 +1,295 @@
+package com.github.mfondo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link CuckooHashSet} specialized for int elements.
+ *
+ * Uses the same two half table layout and kick out loop as {@link CuckooHashSet}, but over an int[] with 0 marking an
+ * empty slot. Whether 0 itself is in the set is tracked separately. add, contains and remove never allocate, apart from
+ * add growing the table.
+ *
+ * {@link #writeTo(WritableByteChannel)} and {@link #readFrom(ReadableByteChannel)} move the table as is, without
+ * rehashing, in large blocks.
+ *
+ * This class and {@link LongCuckooHashSet} are deliberate copies of each other with the element type swapped, so that
+ * neither boxes. Keep them in step - what does not depend on the element type lives in {@link CuckooHashing}.
+ */
+public class IntCuckooHashSet {
+
+    private static final int DEFAULT_INITIAL_SIZE = 16;
+
+    private static final int MAGIC = 0x53484349;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private static final int EMPTY = 0;
+
+    private final IntHashFunction hashFunction1;
+    private final IntHashFunction hashFunction2;
+    private final int maxInsertLoops;
+    private final float loadFactor;
+
+    private int[] values;
+    private boolean containsEmpty = false;
+    private int size = 0;
+
+    /**
+     * Uses a 64 bit mix of the element, split into two independent 32 bit hashes
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized
+     */
+    public IntCuckooHashSet(int maxInsertLoops, float loadFactor) {
+        this(maxInsertLoops, loadFactor, new IntHashFunction() {
+            @Override
+            public int hash(int i) {
+                return (int) CuckooHashing.mix64(i);
+            }
+        }, new IntHashFunction() {
+            @Override
+            public int hash(int i) {
+                return (int) (CuckooHashing.mix64(i) >>> Integer.SIZE);
+            }
+        });
+    }
+
+    /**
+     * Like the constructor below, except the second hash is a rehash of hashFunction1's output
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 hash function whose result also serves as the input of the second hash
+     */
+    public IntCuckooHashSet(int maxInsertLoops, float loadFactor, IntHashFunction hashFunction1) {
+        this(maxInsertLoops, loadFactor, hashFunction1, null);
+    }
+
+    /**
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 first hash function
+     * @param hashFunction2 second hash function - must be independent of first hash function
+     */
+    public IntCuckooHashSet(int maxInsertLoops, float loadFactor, IntHashFunction hashFunction1, IntHashFunction hashFunction2) {
+        if(maxInsertLoops < 1 || loadFactor <= 0 || Float.isNaN(loadFactor) || hashFunction1 == null) {
+            throw new IllegalArgumentException();
+        }
+        this.maxInsertLoops = maxInsertLoops;
+        this.loadFactor = loadFactor;
+        this.hashFunction1 = hashFunction1;
+        this.hashFunction2 = hashFunction2;
+        values = new int[DEFAULT_INITIAL_SIZE];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() < 1;
+    }
+
+    public boolean contains(int i) {
+        if(i == EMPTY) {
+            return containsEmpty;
+        }
+        return getPosition(i) >= 0;
+    }
+
+    //returns -1 if i is not in the table
+    private int getPosition(int i) {
+        final int[] values = this.values;
+        final int halfValuesLength = values.length / 2;
+        int pos = position1(i, halfValuesLength);
+        if(values[pos] == i) {
+            return pos;
+        }
+        pos = position2(i, halfValuesLength);
+        if(values[pos] == i) {
+            return pos;
+        }
+        return -1;
+    }
+
+    private int position1(int i, int halfValuesLength) {
+        return CuckooHashing.position1(hashFunction1.hash(i), halfValuesLength);
+    }
+
+    private int position2(int i, int halfValuesLength) {
+        int hash;
+        if(hashFunction2 == null) {
+            hash = (int) CuckooHashing.mix64(hashFunction1.hash(i));
+        } else {
+            hash = hashFunction2.hash(i);
+        }
+        return CuckooHashing.position2(hash, halfValuesLength);
+    }
+
+    /**
+     * @param i element to add
+     * @return true if the set did not already contain i
+     * @throws IllegalStateException if the hash functions collide so often that growing the table does not help - one
+     * element, possibly i, is then left out of the set
+     */
+    public boolean add(int i) {
+        if(i == EMPTY) {
+            if(containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        if(getPosition(i) >= 0) {
+            return false;
+        }
+        if(((float)size) > ((values.length / 2) * loadFactor)) {
+            resize(CuckooHashing.redouble(values.length, 1), EMPTY);
+        }
+        int homeless = add(values, i);
+        if(homeless != EMPTY) {
+            resize(CuckooHashing.redouble(values.length, 1), homeless);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Rehashes every element, and homeless unless it is EMPTY, into a table of (at least) newLength slots, doubling
+     * again if an element cannot be placed
+     * @throws IllegalStateException if the hash functions collide so that doubling does not help
+     */
+    private void resize(int newLength, int homeless) {
+        int[] tmp = new int[newLength];
+        for(int doublings = 1; !rehash(tmp, homeless); doublings++) {
+            tmp = new int[CuckooHashing.redouble(tmp.length, doublings)];
+        }
+        values = tmp;
+    }
+
+    //false if an element could not be placed in tmp
+    private boolean rehash(int[] tmp, int homeless) {
+        for(int i : values) {
+            if(i != EMPTY && add(tmp, i) != EMPTY) {
+                return false;
+            }
+        }
+        return homeless == EMPTY || add(tmp, homeless) == EMPTY;
+    }
+
+    /**
+     * @return EMPTY if i was placed, otherwise the element that was kicked out and could not be placed
+     */
+    private int add(int[] values, int i) {
+        final int halfValuesLength = values.length / 2;
+        int pos;
+        int ret;
+        for(int loops = 0; loops < maxInsertLoops; loops++) {
+            pos = position1(i, halfValuesLength);
+            ret = values[pos];
+            values[pos] = i;
+            if(ret == EMPTY) {
+                return EMPTY;
+            }
+            i = ret;
+            pos = position2(i, halfValuesLength);
+            ret = values[pos];
+            values[pos] = i;
+            if(ret == EMPTY) {
+                return EMPTY;
+            }
+            i = ret;
+        }
+        return i;
+    }
+
+    /**
+     * @param i element to remove
+     * @return true if the set contained i
+     */
+    public boolean remove(int i) {
+        if(i == EMPTY) {
+            if(!containsEmpty) {
+                return false;
+            }
+            containsEmpty = false;
+            size--;
+            return true;
+        }
+        int pos = getPosition(i);
+        if(pos < 0) {
+            return false;
+        }
+        values[pos] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        values = new int[DEFAULT_INITIAL_SIZE];
+        containsEmpty = false;
+        size = 0;
+    }
+
+    /**
+     * @return the elements of this set, in no particular order
+     */
+    public int[] toArray() {
+        int[] ret = new int[size];
+        int n = 0;
+        if(containsEmpty) {
+            ret[n++] = EMPTY;
+        }
+        for(int i : values) {
+            if(i != EMPTY) {
+                ret[n++] = i;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the table: a 16 byte little-endian header (magic, version, size with the high bit set if 0 is in the set,
+     * table length) followed by the table's slots
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer block = BlockIO.block();
+        block.putInt(MAGIC);
+        block.putInt(VERSION);
+        block.putInt(containsEmpty ? size | Integer.MIN_VALUE : size);
+        block.putInt(values.length);
+        block.flip();
+        BlockIO.writeFully(channel, block);
+        BlockIO.writeInts(channel, block, values, 0, values.length);
+    }
+
+    /**
+     * Replaces the contents of this set with a table written by {@link #writeTo(WritableByteChannel)}. The slots are
+     * used as they are, so this set must have been constructed with the same hash functions as the one that wrote them
+     */
+    public void readFrom(ReadableByteChannel channel) throws IOException {
+        ByteBuffer block = BlockIO.block();
+        block.limit(HEADER_BYTES);
+        BlockIO.readFully(channel, block);
+        block.flip();
+        if(block.getInt() != MAGIC || block.getInt() != VERSION) {
+            throw new IOException("Not a int cuckoo hash set");
+        }
+        int sizeAndEmpty = block.getInt();
+        int length = block.getInt();
+        if(length < 2 || (length & (length - 1)) != 0) {
+            throw new IOException("Invalid table length " + length);
+        }
+        int[] tmp = new int[length];
+        BlockIO.readInts(channel, block, tmp, 0, length);
+        values = tmp;
+        containsEmpty = sizeAndEmpty < 0;
+        size = sizeAndEmpty & Integer.MAX_VALUE;
+    }
+
+    public static interface IntHashFunction {
+        int hash(int i);
+    }
+}
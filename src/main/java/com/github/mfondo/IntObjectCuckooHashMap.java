@@ -0,0 +1,276 @@
+package com.github.mfondo;
+
+/**
+ * {@link CuckooHashMap} specialized for int keys, laid out like {@link IntCuckooHashSet} with an Object[] of values
+ * parallel to the int[] of keys. get, put and remove never box the key.
+ *
+ * null values are supported.
+ *
+ * Like {@link IntCuckooHashSet}, a deliberate copy of the generic class's code with the types swapped - keep them in
+ * step.
+ */
+public class IntObjectCuckooHashMap<V> {
+
+    private static final int DEFAULT_INITIAL_SIZE = 16;
+
+    private static final int EMPTY = 0;
+
+    private final IntCuckooHashSet.IntHashFunction hashFunction1;
+    private final IntCuckooHashSet.IntHashFunction hashFunction2;
+    private final int maxInsertLoops;
+    private final float loadFactor;
+
+    private int[] keys;
+    private Object[] values;
+    private boolean containsEmpty = false;
+    private V emptyKeyValue;
+    private int size = 0;
+
+    //the entry left without a slot when place() fails
+    private int kickedKey;
+    private Object kickedValue;
+
+    /**
+     * Uses a 64 bit mix of the key, split into two independent 32 bit hashes
+     * @param maxInsertLoops maximum number of loops when inserting a key before resizing
+     * @param loadFactor how close to being full before the table is resized
+     */
+    public IntObjectCuckooHashMap(int maxInsertLoops, float loadFactor) {
+        this(maxInsertLoops, loadFactor, new IntCuckooHashSet.IntHashFunction() {
+            @Override
+            public int hash(int i) {
+                return (int) CuckooHashing.mix64(i);
+            }
+        }, new IntCuckooHashSet.IntHashFunction() {
+            @Override
+            public int hash(int i) {
+                return (int) (CuckooHashing.mix64(i) >>> Integer.SIZE);
+            }
+        });
+    }
+
+    /**
+     * Like the constructor below, except the second hash is a rehash of hashFunction1's output
+     * @param maxInsertLoops maximum number of loops when inserting a key before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 hash function whose result also serves as the input of the second hash
+     */
+    public IntObjectCuckooHashMap(int maxInsertLoops, float loadFactor, IntCuckooHashSet.IntHashFunction hashFunction1) {
+        this(maxInsertLoops, loadFactor, hashFunction1, null);
+    }
+
+    /**
+     * @param maxInsertLoops maximum number of loops when inserting a key before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 first hash function
+     * @param hashFunction2 second hash function - must be independent of first hash function
+     */
+    public IntObjectCuckooHashMap(int maxInsertLoops, float loadFactor, IntCuckooHashSet.IntHashFunction hashFunction1, IntCuckooHashSet.IntHashFunction hashFunction2) {
+        if(maxInsertLoops < 1 || loadFactor <= 0 || Float.isNaN(loadFactor) || hashFunction1 == null) {
+            throw new IllegalArgumentException();
+        }
+        this.maxInsertLoops = maxInsertLoops;
+        this.loadFactor = loadFactor;
+        this.hashFunction1 = hashFunction1;
+        this.hashFunction2 = hashFunction2;
+        keys = new int[DEFAULT_INITIAL_SIZE];
+        values = new Object[DEFAULT_INITIAL_SIZE];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() < 1;
+    }
+
+    public boolean containsKey(int key) {
+        if(key == EMPTY) {
+            return containsEmpty;
+        }
+        return getPosition(key) >= 0;
+    }
+
+    /**
+     * @return the value mapped to key, or null if there is none
+     */
+    public V get(int key) {
+        if(key == EMPTY) {
+            return emptyKeyValue;
+        }
+        int pos = getPosition(key);
+        return pos >= 0 ? (V) values[pos] : null;
+    }
+
+    //returns -1 if key is not in the table
+    private int getPosition(int key) {
+        final int[] keys = this.keys;
+        final int halfValuesLength = keys.length / 2;
+        int pos = position1(key, halfValuesLength);
+        if(keys[pos] == key) {
+            return pos;
+        }
+        pos = position2(key, halfValuesLength);
+        if(keys[pos] == key) {
+            return pos;
+        }
+        return -1;
+    }
+
+    private int position1(int key, int halfValuesLength) {
+        return CuckooHashing.position1(hashFunction1.hash(key), halfValuesLength);
+    }
+
+    private int position2(int key, int halfValuesLength) {
+        int hash;
+        if(hashFunction2 == null) {
+            hash = (int) CuckooHashing.mix64(hashFunction1.hash(key));
+        } else {
+            hash = hashFunction2.hash(key);
+        }
+        return CuckooHashing.position2(hash, halfValuesLength);
+    }
+
+    /**
+     * @return the value previously mapped to key, or null if there was none
+     */
+    public V put(int key, V value) {
+        if(key == EMPTY) {
+            V ret = emptyKeyValue;
+            if(!containsEmpty) {
+                containsEmpty = true;
+                size++;
+            }
+            emptyKeyValue = value;
+            return ret;
+        }
+        int pos = getPosition(key);
+        if(pos >= 0) {
+            V ret = (V) values[pos];
+            values[pos] = value;
+            return ret;
+        }
+        if(((float)size) > ((keys.length / 2) * loadFactor)) {
+            resize(CuckooHashing.redouble(keys.length, 1), EMPTY, null);
+        }
+        if(!place(keys, values, key, value)) {
+            resize(CuckooHashing.redouble(keys.length, 1), kickedKey, kickedValue);
+        }
+        kickedValue = null;
+        size++;
+        return null;
+    }
+
+    /**
+     * Rehashes every entry, and the homeless one unless its key is EMPTY, into tables of (at least) newLength slots,
+     * doubling again if an entry cannot be placed
+     * @throws IllegalStateException if the hash functions collide so that doubling does not help
+     */
+    private void resize(int newLength, int homelessKey, Object homelessValue) {
+        int[] tmpKeys = new int[newLength];
+        Object[] tmpValues = new Object[newLength];
+        for(int doublings = 1; !rehash(tmpKeys, tmpValues, homelessKey, homelessValue); doublings++) {
+            newLength = CuckooHashing.redouble(newLength, doublings);
+            tmpKeys = new int[newLength];
+            tmpValues = new Object[newLength];
+        }
+        keys = tmpKeys;
+        values = tmpValues;
+    }
+
+    //false if an entry could not be placed in tmpKeys/tmpValues
+    private boolean rehash(int[] tmpKeys, Object[] tmpValues, int homelessKey, Object homelessValue) {
+        for(int i = 0; i < keys.length; i++) {
+            if(keys[i] != EMPTY && !place(tmpKeys, tmpValues, keys[i], values[i])) {
+                return false;
+            }
+        }
+        return homelessKey == EMPTY || place(tmpKeys, tmpValues, homelessKey, homelessValue);
+    }
+
+    /**
+     * Kick out loop - key and value move together
+     * @return true if the entry was placed, otherwise the entry left without a slot is in kickedKey/kickedValue
+     */
+    private boolean place(int[] keys, Object[] values, int key, Object value) {
+        final int halfValuesLength = keys.length / 2;
+        int pos;
+        int tmpKey;
+        Object tmpValue;
+        for(int loops = 0; loops < maxInsertLoops; loops++) {
+            pos = position1(key, halfValuesLength);
+            tmpKey = keys[pos];
+            tmpValue = values[pos];
+            keys[pos] = key;
+            values[pos] = value;
+            if(tmpKey == EMPTY) {
+                return true;
+            }
+            key = tmpKey;
+            value = tmpValue;
+            pos = position2(key, halfValuesLength);
+            tmpKey = keys[pos];
+            tmpValue = values[pos];
+            keys[pos] = key;
+            values[pos] = value;
+            if(tmpKey == EMPTY) {
+                return true;
+            }
+            key = tmpKey;
+            value = tmpValue;
+        }
+        kickedKey = key;
+        kickedValue = value;
+        return false;
+    }
+
+    /**
+     * @return the value previously mapped to key, or null if there was none
+     */
+    public V remove(int key) {
+        if(key == EMPTY) {
+            V ret = emptyKeyValue;
+            if(containsEmpty) {
+                containsEmpty = false;
+                emptyKeyValue = null;
+                size--;
+            }
+            return ret;
+        }
+        int pos = getPosition(key);
+        if(pos < 0) {
+            return null;
+        }
+        V ret = (V) values[pos];
+        keys[pos] = EMPTY;
+        values[pos] = null;
+        size--;
+        return ret;
+    }
+
+    public void clear() {
+        keys = new int[DEFAULT_INITIAL_SIZE];
+        values = new Object[DEFAULT_INITIAL_SIZE];
+        containsEmpty = false;
+        emptyKeyValue = null;
+        size = 0;
+    }
+
+    /**
+     * @return the keys of this map, in no particular order
+     */
+    public int[] keys() {
+        int[] ret = new int[size];
+        int n = 0;
+        if(containsEmpty) {
+            ret[n++] = EMPTY;
+        }
+        for(int key : keys) {
+            if(key != EMPTY) {
+                ret[n++] = key;
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.mfondo;
+
+/**
+ * Finds a value among the 8 or 16 bit lanes of a run of ints, lane 0 being the lowest bits of the first int.
+ *
+ * {@link CuckooFilter.Layout#PACKED} buckets wider than a long use the first implementation that
+ * {@link java.util.ServiceLoader} can load - which is how the cuckoohash-vector module plugs in SIMD matching - and
+ * compare a long at a time otherwise. An implementation that cannot run on the current JVM should throw from its
+ * constructor.
+ *
+ * Only fingerprint buckets fit in lanes: the buckets of a bucketized {@link CuckooHashSet} hold references compared
+ * with equals().
+ */
+public interface LaneMatcher {
+
+    /**
+     * @param length number of ints, 4 or 8
+     * @param laneBits 8 or 16
+     * @return index of the first lane equal to value, or -1
+     */
+    int indexOf(int[] data, int offset, int length, int laneBits, int value);
+}
@@ -0,0 +1,295 @@
+package com.github.mfondo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link CuckooHashSet} specialized for long elements.
+ *
+ * Uses the same two half table layout and kick out loop as {@link CuckooHashSet}, but over a long[] with 0 marking an
+ * empty slot. Whether 0 itself is in the set is tracked separately. add, contains and remove never allocate, apart from
+ * add growing the table.
+ *
+ * {@link #writeTo(WritableByteChannel)} and {@link #readFrom(ReadableByteChannel)} move the table as is, without
+ * rehashing, in large blocks.
+ *
+ * This class and {@link IntCuckooHashSet} are deliberate copies of each other with the element type swapped, so that
+ * neither boxes. Keep them in step - what does not depend on the element type lives in {@link CuckooHashing}.
+ */
+public class LongCuckooHashSet {
+
+    private static final int DEFAULT_INITIAL_SIZE = 16;
+
+    private static final int MAGIC = 0x5348434C;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private static final long EMPTY = 0L;
+
+    private final LongHashFunction hashFunction1;
+    private final LongHashFunction hashFunction2;
+    private final int maxInsertLoops;
+    private final float loadFactor;
+
+    private long[] values;
+    private boolean containsEmpty = false;
+    private int size = 0;
+
+    /**
+     * Uses a 64 bit mix of the element, split into two independent 32 bit hashes
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized
+     */
+    public LongCuckooHashSet(int maxInsertLoops, float loadFactor) {
+        this(maxInsertLoops, loadFactor, new LongHashFunction() {
+            @Override
+            public int hash(long l) {
+                return (int) CuckooHashing.mix64(l);
+            }
+        }, new LongHashFunction() {
+            @Override
+            public int hash(long l) {
+                return (int) (CuckooHashing.mix64(l) >>> Integer.SIZE);
+            }
+        });
+    }
+
+    /**
+     * Like the constructor below, except the second hash is a rehash of hashFunction1's output
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 hash function whose result also serves as the input of the second hash
+     */
+    public LongCuckooHashSet(int maxInsertLoops, float loadFactor, LongHashFunction hashFunction1) {
+        this(maxInsertLoops, loadFactor, hashFunction1, null);
+    }
+
+    /**
+     * @param maxInsertLoops maximum number of loops when inserting an element before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 first hash function
+     * @param hashFunction2 second hash function - must be independent of first hash function
+     */
+    public LongCuckooHashSet(int maxInsertLoops, float loadFactor, LongHashFunction hashFunction1, LongHashFunction hashFunction2) {
+        if(maxInsertLoops < 1 || loadFactor <= 0 || Float.isNaN(loadFactor) || hashFunction1 == null) {
+            throw new IllegalArgumentException();
+        }
+        this.maxInsertLoops = maxInsertLoops;
+        this.loadFactor = loadFactor;
+        this.hashFunction1 = hashFunction1;
+        this.hashFunction2 = hashFunction2;
+        values = new long[DEFAULT_INITIAL_SIZE];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() < 1;
+    }
+
+    public boolean contains(long l) {
+        if(l == EMPTY) {
+            return containsEmpty;
+        }
+        return getPosition(l) >= 0;
+    }
+
+    //returns -1 if l is not in the table
+    private int getPosition(long l) {
+        final long[] values = this.values;
+        final int halfValuesLength = values.length / 2;
+        int pos = position1(l, halfValuesLength);
+        if(values[pos] == l) {
+            return pos;
+        }
+        pos = position2(l, halfValuesLength);
+        if(values[pos] == l) {
+            return pos;
+        }
+        return -1;
+    }
+
+    private int position1(long l, int halfValuesLength) {
+        return CuckooHashing.position1(hashFunction1.hash(l), halfValuesLength);
+    }
+
+    private int position2(long l, int halfValuesLength) {
+        int hash;
+        if(hashFunction2 == null) {
+            hash = (int) CuckooHashing.mix64(hashFunction1.hash(l));
+        } else {
+            hash = hashFunction2.hash(l);
+        }
+        return CuckooHashing.position2(hash, halfValuesLength);
+    }
+
+    /**
+     * @param l element to add
+     * @return true if the set did not already contain l
+     * @throws IllegalStateException if the hash functions collide so often that growing the table does not help - one
+     * element, possibly l, is then left out of the set
+     */
+    public boolean add(long l) {
+        if(l == EMPTY) {
+            if(containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        if(getPosition(l) >= 0) {
+            return false;
+        }
+        if(((float)size) > ((values.length / 2) * loadFactor)) {
+            resize(CuckooHashing.redouble(values.length, 1), EMPTY);
+        }
+        long homeless = add(values, l);
+        if(homeless != EMPTY) {
+            resize(CuckooHashing.redouble(values.length, 1), homeless);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Rehashes every element, and homeless unless it is EMPTY, into a table of (at least) newLength slots, doubling
+     * again if an element cannot be placed
+     * @throws IllegalStateException if the hash functions collide so that doubling does not help
+     */
+    private void resize(int newLength, long homeless) {
+        long[] tmp = new long[newLength];
+        for(int doublings = 1; !rehash(tmp, homeless); doublings++) {
+            tmp = new long[CuckooHashing.redouble(tmp.length, doublings)];
+        }
+        values = tmp;
+    }
+
+    //false if an element could not be placed in tmp
+    private boolean rehash(long[] tmp, long homeless) {
+        for(long l : values) {
+            if(l != EMPTY && add(tmp, l) != EMPTY) {
+                return false;
+            }
+        }
+        return homeless == EMPTY || add(tmp, homeless) == EMPTY;
+    }
+
+    /**
+     * @return EMPTY if l was placed, otherwise the element that was kicked out and could not be placed
+     */
+    private long add(long[] values, long l) {
+        final int halfValuesLength = values.length / 2;
+        int pos;
+        long ret;
+        for(int loops = 0; loops < maxInsertLoops; loops++) {
+            pos = position1(l, halfValuesLength);
+            ret = values[pos];
+            values[pos] = l;
+            if(ret == EMPTY) {
+                return EMPTY;
+            }
+            l = ret;
+            pos = position2(l, halfValuesLength);
+            ret = values[pos];
+            values[pos] = l;
+            if(ret == EMPTY) {
+                return EMPTY;
+            }
+            l = ret;
+        }
+        return l;
+    }
+
+    /**
+     * @param l element to remove
+     * @return true if the set contained l
+     */
+    public boolean remove(long l) {
+        if(l == EMPTY) {
+            if(!containsEmpty) {
+                return false;
+            }
+            containsEmpty = false;
+            size--;
+            return true;
+        }
+        int pos = getPosition(l);
+        if(pos < 0) {
+            return false;
+        }
+        values[pos] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        values = new long[DEFAULT_INITIAL_SIZE];
+        containsEmpty = false;
+        size = 0;
+    }
+
+    /**
+     * @return the elements of this set, in no particular order
+     */
+    public long[] toArray() {
+        long[] ret = new long[size];
+        int n = 0;
+        if(containsEmpty) {
+            ret[n++] = EMPTY;
+        }
+        for(long l : values) {
+            if(l != EMPTY) {
+                ret[n++] = l;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the table: a 16 byte little-endian header (magic, version, size with the high bit set if 0 is in the set,
+     * table length) followed by the table's slots
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer block = BlockIO.block();
+        block.putInt(MAGIC);
+        block.putInt(VERSION);
+        block.putInt(containsEmpty ? size | Integer.MIN_VALUE : size);
+        block.putInt(values.length);
+        block.flip();
+        BlockIO.writeFully(channel, block);
+        BlockIO.writeLongs(channel, block, values, 0, values.length);
+    }
+
+    /**
+     * Replaces the contents of this set with a table written by {@link #writeTo(WritableByteChannel)}. The slots are
+     * used as they are, so this set must have been constructed with the same hash functions as the one that wrote them
+     */
+    public void readFrom(ReadableByteChannel channel) throws IOException {
+        ByteBuffer block = BlockIO.block();
+        block.limit(HEADER_BYTES);
+        BlockIO.readFully(channel, block);
+        block.flip();
+        if(block.getInt() != MAGIC || block.getInt() != VERSION) {
+            throw new IOException("Not a long cuckoo hash set");
+        }
+        int sizeAndEmpty = block.getInt();
+        int length = block.getInt();
+        if(length < 2 || (length & (length - 1)) != 0) {
+            throw new IOException("Invalid table length " + length);
+        }
+        long[] tmp = new long[length];
+        BlockIO.readLongs(channel, block, tmp, 0, length);
+        values = tmp;
+        containsEmpty = sizeAndEmpty < 0;
+        size = sizeAndEmpty & Integer.MAX_VALUE;
+    }
+
+    public static interface LongHashFunction {
+        int hash(long l);
+    }
+}
@@ -0,0 +1,271 @@
+package com.github.mfondo;
+
+/**
+ * {@link CuckooHashMap} specialized for long keys and values, laid out like {@link LongCuckooHashSet} with a long[] of
+ * values parallel to the long[] of keys. get, put and remove never box or allocate, apart from put growing the table.
+ *
+ * Like {@link LongCuckooHashSet}, a deliberate copy of the generic class's code with the types swapped - keep them in
+ * step.
+ */
+public class LongLongCuckooHashMap {
+
+    private static final int DEFAULT_INITIAL_SIZE = 16;
+
+    private static final long EMPTY = 0L;
+
+    private final LongCuckooHashSet.LongHashFunction hashFunction1;
+    private final LongCuckooHashSet.LongHashFunction hashFunction2;
+    private final int maxInsertLoops;
+    private final float loadFactor;
+
+    private long[] keys;
+    private long[] values;
+    private boolean containsEmpty = false;
+    private long emptyKeyValue;
+    private int size = 0;
+
+    //the entry left without a slot when place() fails
+    private long kickedKey;
+    private long kickedValue;
+
+    /**
+     * Uses a 64 bit mix of the key, split into two independent 32 bit hashes
+     * @param maxInsertLoops maximum number of loops when inserting a key before resizing
+     * @param loadFactor how close to being full before the table is resized
+     */
+    public LongLongCuckooHashMap(int maxInsertLoops, float loadFactor) {
+        this(maxInsertLoops, loadFactor, new LongCuckooHashSet.LongHashFunction() {
+            @Override
+            public int hash(long l) {
+                return (int) CuckooHashing.mix64(l);
+            }
+        }, new LongCuckooHashSet.LongHashFunction() {
+            @Override
+            public int hash(long l) {
+                return (int) (CuckooHashing.mix64(l) >>> Integer.SIZE);
+            }
+        });
+    }
+
+    /**
+     * Like the constructor below, except the second hash is a rehash of hashFunction1's output
+     * @param maxInsertLoops maximum number of loops when inserting a key before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 hash function whose result also serves as the input of the second hash
+     */
+    public LongLongCuckooHashMap(int maxInsertLoops, float loadFactor, LongCuckooHashSet.LongHashFunction hashFunction1) {
+        this(maxInsertLoops, loadFactor, hashFunction1, null);
+    }
+
+    /**
+     * @param maxInsertLoops maximum number of loops when inserting a key before resizing
+     * @param loadFactor how close to being full before the table is resized
+     * @param hashFunction1 first hash function
+     * @param hashFunction2 second hash function - must be independent of first hash function
+     */
+    public LongLongCuckooHashMap(int maxInsertLoops, float loadFactor, LongCuckooHashSet.LongHashFunction hashFunction1, LongCuckooHashSet.LongHashFunction hashFunction2) {
+        if(maxInsertLoops < 1 || loadFactor <= 0 || Float.isNaN(loadFactor) || hashFunction1 == null) {
+            throw new IllegalArgumentException();
+        }
+        this.maxInsertLoops = maxInsertLoops;
+        this.loadFactor = loadFactor;
+        this.hashFunction1 = hashFunction1;
+        this.hashFunction2 = hashFunction2;
+        keys = new long[DEFAULT_INITIAL_SIZE];
+        values = new long[DEFAULT_INITIAL_SIZE];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() < 1;
+    }
+
+    public boolean containsKey(long key) {
+        if(key == EMPTY) {
+            return containsEmpty;
+        }
+        return getPosition(key) >= 0;
+    }
+
+    /**
+     * @return the value mapped to key, or defaultValue if there is none
+     */
+    public long get(long key, long defaultValue) {
+        if(key == EMPTY) {
+            return containsEmpty ? emptyKeyValue : defaultValue;
+        }
+        int pos = getPosition(key);
+        return pos >= 0 ? values[pos] : defaultValue;
+    }
+
+    //returns -1 if key is not in the table
+    private int getPosition(long key) {
+        final long[] keys = this.keys;
+        final int halfValuesLength = keys.length / 2;
+        int pos = position1(key, halfValuesLength);
+        if(keys[pos] == key) {
+            return pos;
+        }
+        pos = position2(key, halfValuesLength);
+        if(keys[pos] == key) {
+            return pos;
+        }
+        return -1;
+    }
+
+    private int position1(long key, int halfValuesLength) {
+        return CuckooHashing.position1(hashFunction1.hash(key), halfValuesLength);
+    }
+
+    private int position2(long key, int halfValuesLength) {
+        int hash;
+        if(hashFunction2 == null) {
+            hash = (int) CuckooHashing.mix64(hashFunction1.hash(key));
+        } else {
+            hash = hashFunction2.hash(key);
+        }
+        return CuckooHashing.position2(hash, halfValuesLength);
+    }
+
+    /**
+     * @return true if key was not already mapped to a value
+     */
+    public boolean put(long key, long value) {
+        if(key == EMPTY) {
+            boolean ret = !containsEmpty;
+            if(ret) {
+                containsEmpty = true;
+                size++;
+            }
+            emptyKeyValue = value;
+            return ret;
+        }
+        int pos = getPosition(key);
+        if(pos >= 0) {
+            values[pos] = value;
+            return false;
+        }
+        if(((float)size) > ((keys.length / 2) * loadFactor)) {
+            resize(CuckooHashing.redouble(keys.length, 1), EMPTY, 0L);
+        }
+        if(!place(keys, values, key, value)) {
+            resize(CuckooHashing.redouble(keys.length, 1), kickedKey, kickedValue);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Rehashes every entry, and the homeless one unless its key is EMPTY, into tables of (at least) newLength slots,
+     * doubling again if an entry cannot be placed
+     * @throws IllegalStateException if the hash functions collide so that doubling does not help
+     */
+    private void resize(int newLength, long homelessKey, long homelessValue) {
+        long[] tmpKeys = new long[newLength];
+        long[] tmpValues = new long[newLength];
+        for(int doublings = 1; !rehash(tmpKeys, tmpValues, homelessKey, homelessValue); doublings++) {
+            newLength = CuckooHashing.redouble(newLength, doublings);
+            tmpKeys = new long[newLength];
+            tmpValues = new long[newLength];
+        }
+        keys = tmpKeys;
+        values = tmpValues;
+    }
+
+    //false if an entry could not be placed in tmpKeys/tmpValues
+    private boolean rehash(long[] tmpKeys, long[] tmpValues, long homelessKey, long homelessValue) {
+        for(int i = 0; i < keys.length; i++) {
+            if(keys[i] != EMPTY && !place(tmpKeys, tmpValues, keys[i], values[i])) {
+                return false;
+            }
+        }
+        return homelessKey == EMPTY || place(tmpKeys, tmpValues, homelessKey, homelessValue);
+    }
+
+    /**
+     * Kick out loop - key and value move together
+     * @return true if the entry was placed, otherwise the entry left without a slot is in kickedKey/kickedValue
+     */
+    private boolean place(long[] keys, long[] values, long key, long value) {
+        final int halfValuesLength = keys.length / 2;
+        int pos;
+        long tmpKey;
+        long tmpValue;
+        for(int loops = 0; loops < maxInsertLoops; loops++) {
+            pos = position1(key, halfValuesLength);
+            tmpKey = keys[pos];
+            tmpValue = values[pos];
+            keys[pos] = key;
+            values[pos] = value;
+            if(tmpKey == EMPTY) {
+                return true;
+            }
+            key = tmpKey;
+            value = tmpValue;
+            pos = position2(key, halfValuesLength);
+            tmpKey = keys[pos];
+            tmpValue = values[pos];
+            keys[pos] = key;
+            values[pos] = value;
+            if(tmpKey == EMPTY) {
+                return true;
+            }
+            key = tmpKey;
+            value = tmpValue;
+        }
+        kickedKey = key;
+        kickedValue = value;
+        return false;
+    }
+
+    /**
+     * @return true if key was mapped to a value
+     */
+    public boolean remove(long key) {
+        if(key == EMPTY) {
+            if(!containsEmpty) {
+                return false;
+            }
+            containsEmpty = false;
+            emptyKeyValue = 0L;
+            size--;
+            return true;
+        }
+        int pos = getPosition(key);
+        if(pos < 0) {
+            return false;
+        }
+        keys[pos] = EMPTY;
+        values[pos] = 0L;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        keys = new long[DEFAULT_INITIAL_SIZE];
+        values = new long[DEFAULT_INITIAL_SIZE];
+        containsEmpty = false;
+        emptyKeyValue = 0L;
+        size = 0;
+    }
+
+    /**
+     * @return the keys of this map, in no particular order
+     */
+    public long[] keys() {
+        long[] ret = new long[size];
+        int n = 0;
+        if(containsEmpty) {
+            ret[n++] = EMPTY;
+        }
+        for(long key : keys) {
+            if(key != EMPTY) {
+                ret[n++] = key;
+            }
+        }
+        return ret;
+    }
+}
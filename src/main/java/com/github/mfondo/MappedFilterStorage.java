@@ -0,0 +1,46 @@
+package com.github.mfondo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link FilterStorage} mapped straight from a {@link CuckooFilterFile}, so lookups run against the page cache without
+ * loading anything first. Words are little-endian whatever the platform so that files can be moved between machines.
+ *
+ * A read-only mapping throws {@link java.nio.ReadOnlyBufferException} on any write.
+ */
+final class MappedFilterStorage extends ChunkedFilterStorage {
+
+    private final boolean writable;
+
+    /**
+     * @param channel file to map - may be closed as soon as this returns, the mapping stays valid
+     * @param position byte offset of the first word in the file
+     * @param length number of ints
+     */
+    MappedFilterStorage(FileChannel channel, long position, long length, boolean writable) throws IOException {
+        super(length);
+        this.writable = writable;
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        ByteBuffer[] chunks = new ByteBuffer[numChunks(length)];
+        for(int i = 0; i < chunks.length; i++) {
+            chunks[i] = channel.map(mode, position + (i * CHUNK_INTS * 4), chunkLength(length, i) * 4L).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        setChunks(chunks);
+    }
+
+    /**
+     * Writes changes back to the file
+     */
+    @Override
+    public void force() {
+        if(writable) {
+            for(long index = 0; index < length(); index += CHUNK_INTS) {
+                ((MappedByteBuffer) chunk(index)).force();
+            }
+        }
+    }
+}
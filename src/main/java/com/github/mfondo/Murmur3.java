@@ -0,0 +1,179 @@
+package com.github.mfondo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The first 64 bits of MurmurHash3's x64 128 bit variant - https://github.com/aappleby/smhasher - computed in place
+ * without allocating. Matches Guava's Hashing.murmur3_128(seed) for seeds that are not negative - Guava sign-extends
+ * them, unlike the reference.
+ */
+public final class Murmur3 {
+
+    /**
+     * Hashes t.hashCode() - for elements without a better hash. Elements with equal hashCode()s still collide
+     */
+    public static final ElementHasher64<Object> HASH_CODE = new ElementHasher64<Object>() {
+        @Override
+        public long hash(Object o, int seed) {
+            return hash64(o.hashCode(), seed);
+        }
+    };
+
+    /**
+     * Hashes the 64 bits of a Long, as {@link CuckooFilter#addLong(long)} does for a long
+     */
+    public static final ElementHasher64<Long> LONGS = new ElementHasher64<Long>() {
+        @Override
+        public long hash(Long l, int seed) {
+            return hash64(l, seed);
+        }
+    };
+
+    /**
+     * Hashes the contents of a byte[], so that arrays with equal contents are the same element
+     */
+    public static final ElementHasher64<byte[]> BYTES = new ElementHasher64<byte[]>() {
+        @Override
+        public long hash(byte[] bytes, int seed) {
+            return hash64(bytes, 0, bytes.length, seed);
+        }
+    };
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3() {
+    }
+
+    /**
+     * @return the hash of the 4 little-endian bytes of i
+     */
+    public static long hash64(int i, int seed) {
+        long h1 = seed & 0xFFFFFFFFL;
+        long h2 = h1;
+        h1 ^= mixK1(i & 0xFFFFFFFFL);
+        return finish(h1, h2, 4);
+    }
+
+    /**
+     * @return the hash of the 8 little-endian bytes of l
+     */
+    public static long hash64(long l, int seed) {
+        long h1 = seed & 0xFFFFFFFFL;
+        long h2 = h1;
+        h1 ^= mixK1(l);
+        return finish(h1, h2, 8);
+    }
+
+    public static long hash64(byte[] bytes, int offset, int length, int seed) {
+        long h1 = seed & 0xFFFFFFFFL;
+        long h2 = h1;
+        int end = offset + length;
+        int pos = offset;
+        for(; pos <= end - 16; pos += 16) {
+            h1 ^= mixK1(getLong(bytes, pos));
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(getLong(bytes, pos + 8));
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        //the remaining 0 to 15 bytes, little-endian
+        int tail = end - pos;
+        if(tail > 8) {
+            long k2 = 0;
+            for(int i = tail - 1; i >= 8; i--) {
+                k2 = (k2 << 8) | (bytes[pos + i] & 0xFF);
+            }
+            h2 ^= mixK2(k2);
+        }
+        if(tail > 0) {
+            long k1 = 0;
+            for(int i = Math.min(tail, 8) - 1; i >= 0; i--) {
+                k1 = (k1 << 8) | (bytes[pos + i] & 0xFF);
+            }
+            h1 ^= mixK1(k1);
+        }
+        return finish(h1, h2, length);
+    }
+
+    /**
+     * Hashes length bytes of buffer from offset, the same as the equal bytes in a byte[], whatever the buffer's order.
+     * Uses absolute reads, so the buffer's position is left alone
+     */
+    public static long hash64(ByteBuffer buffer, int offset, int length, int seed) {
+        boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        long h1 = seed & 0xFFFFFFFFL;
+        long h2 = h1;
+        int end = offset + length;
+        int pos = offset;
+        for(; pos <= end - 16; pos += 16) {
+            long k1 = buffer.getLong(pos);
+            long k2 = buffer.getLong(pos + 8);
+            if(!littleEndian) {
+                k1 = Long.reverseBytes(k1);
+                k2 = Long.reverseBytes(k2);
+            }
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int tail = end - pos;
+        if(tail > 8) {
+            long k2 = 0;
+            for(int i = tail - 1; i >= 8; i--) {
+                k2 = (k2 << 8) | (buffer.get(pos + i) & 0xFF);
+            }
+            h2 ^= mixK2(k2);
+        }
+        if(tail > 0) {
+            long k1 = 0;
+            for(int i = Math.min(tail, 8) - 1; i >= 0; i--) {
+                k1 = (k1 << 8) | (buffer.get(pos + i) & 0xFF);
+            }
+            h1 ^= mixK1(k1);
+        }
+        return finish(h1, h2, length);
+    }
+
+    private static long getLong(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFFL)
+                | ((bytes[pos + 1] & 0xFFL) << 8)
+                | ((bytes[pos + 2] & 0xFFL) << 16)
+                | ((bytes[pos + 3] & 0xFFL) << 24)
+                | ((bytes[pos + 4] & 0xFFL) << 32)
+                | ((bytes[pos + 5] & 0xFFL) << 40)
+                | ((bytes[pos + 6] & 0xFFL) << 48)
+                | ((bytes[pos + 7] & 0xFFL) << 56);
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long finish(long h1, long h2, int length) {
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = CuckooHashing.mix64(h1);
+        h2 = CuckooHashing.mix64(h2);
+        return h1 + h2;
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.mfondo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link FilterStorage} in direct memory outside the garbage collected heap
+ */
+final class OffHeapFilterStorage extends ChunkedFilterStorage {
+
+    OffHeapFilterStorage(long length) {
+        super(length);
+        ByteBuffer[] chunks = new ByteBuffer[numChunks(length)];
+        for(int i = 0; i < chunks.length; i++) {
+            //allocateDirect zeroes the memory
+            chunks[i] = ByteBuffer.allocateDirect(chunkLength(length, i) * 4).order(ByteOrder.nativeOrder());
+        }
+        setChunks(chunks);
+    }
+}
@@ -0,0 +1,176 @@
+package com.github.mfondo;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Fingerprints of 8, 12 or 16 bits with no occupancy bits - 0 marks an empty entry - packed in words of at most 64
+ * bits: 4 entries of any of those sizes, or 8 or 16 entries of 8 or 16 bits. A bucket is 32 to 256 bits and every
+ * word of it is at most two ints, which one long holds.
+ *
+ * Entries are compared a word at a time with the SWAR "has zero byte" trick from
+ * https://graphics.stanford.edu/~seander/bithacks.html#ZeroInWord generalized to fingerprintBits wide lanes: xor the
+ * word with the fingerprint repeated in every lane, and a lane of the result is zero where they are equal. Buckets of
+ * more than one word on the heap go to a {@link LaneMatcher} instead, when one is available.
+ */
+final class PackedBucketLayout extends BucketLayout {
+
+    //SIMD matching from another module, or null
+    private static final LaneMatcher MATCHER = loadMatcher();
+
+    private final int wordBits;
+    private final int words;
+    private final int wordEntries;
+    private final long fingerprintMask;
+    private final long wordMask;
+    //lowest and highest bit of every lane of a word
+    private final long lowBits;
+    private final long highBits;
+
+    PackedBucketLayout(int bucketEntries, int fingerprintBits) {
+        super(bucketEntries, fingerprintBits);
+        if(fingerprintBits == 12) {
+            if(bucketEntries != 4) {
+                throw new IllegalArgumentException("Packed buckets of 12 bit fingerprints need 4 bucket entries");
+            }
+        } else if(fingerprintBits == 8 || fingerprintBits == 16) {
+            if(bucketEntries != 4 && bucketEntries != 8 && bucketEntries != 16) {
+                throw new IllegalArgumentException("Packed buckets need 4, 8 or 16 bucket entries");
+            }
+        } else {
+            throw new IllegalArgumentException("Packed buckets need 8, 12 or 16 fingerprint bits");
+        }
+        fingerprintMask = (1L << fingerprintBits) - 1;
+        wordBits = Math.min(bucketBits(), Long.SIZE);
+        words = bucketBits() / wordBits;
+        wordEntries = wordBits / fingerprintBits;
+        wordMask = wordBits == Long.SIZE ? -1L : (1L << wordBits) - 1;
+        long low = 0;
+        for(int i = 0; i < wordEntries; i++) {
+            low |= 1L << (i * fingerprintBits);
+        }
+        lowBits = low;
+        highBits = low << (fingerprintBits - 1);
+    }
+
+    private static LaneMatcher loadMatcher() {
+        try {
+            for(LaneMatcher matcher : ServiceLoader.load(LaneMatcher.class, PackedBucketLayout.class.getClassLoader())) {
+                return matcher;
+            }
+        } catch(ServiceConfigurationError e) {
+            //the provider cannot run on this JVM, e.g. without --add-modules jdk.incubator.vector
+        } catch(LinkageError e) {
+            //same
+        }
+        return null;
+    }
+
+    @Override
+    int bucketBits() {
+        return bucketEntries * fingerprintBits;
+    }
+
+    @Override
+    int fingerprint(int bits) {
+        return bits == 0 ? 1 : bits;
+    }
+
+    @Override
+    boolean contains(FilterStorage data, long bucketBitOffset, int fingerprint) {
+        return indexOf(data, bucketBitOffset, fingerprint) >= 0;
+    }
+
+    @Override
+    boolean add(FilterStorage data, long bucketBitOffset, int fingerprint) {
+        int entry = indexOf(data, bucketBitOffset, 0);
+        if(entry < 0) {
+            return false;
+        }
+        swap(data, bucketBitOffset, entry, fingerprint);
+        return true;
+    }
+
+    @Override
+    boolean remove(FilterStorage data, long bucketBitOffset, int fingerprint) {
+        int entry = indexOf(data, bucketBitOffset, fingerprint);
+        if(entry < 0) {
+            return false;
+        }
+        swap(data, bucketBitOffset, entry, 0);
+        return true;
+    }
+
+    @Override
+    int get(FilterStorage data, long bucketBitOffset, int entry) {
+        long word = read(data, bucketBitOffset + (long) (entry / wordEntries) * wordBits);
+        return (int) ((word >>> ((entry % wordEntries) * fingerprintBits)) & fingerprintMask);
+    }
+
+    @Override
+    int swap(FilterStorage data, long bucketBitOffset, int entry, int fingerprint) {
+        long wordBitOffset = bucketBitOffset + (long) (entry / wordEntries) * wordBits;
+        int shift = (entry % wordEntries) * fingerprintBits;
+        long word = read(data, wordBitOffset);
+        write(data, wordBitOffset, (word & ~(fingerprintMask << shift)) | (((long) fingerprint) << shift));
+        return (int) ((word >>> shift) & fingerprintMask);
+    }
+
+    /**
+     * @return first entry equal to value, or -1
+     */
+    private int indexOf(FilterStorage data, long bucketBitOffset, int value) {
+        if(words > 1 && MATCHER != null) {
+            //multi-word buckets are int aligned, and never cross a page
+            long index = bucketBitOffset >>> 5;
+            if(data instanceof HeapFilterStorage) {
+                return MATCHER.indexOf(((HeapFilterStorage) data).array(), (int) index, bucketBits() / Integer.SIZE,
+                        fingerprintBits, value);
+            }
+            if(data instanceof PagedFilterStorage) {
+                return MATCHER.indexOf(((PagedFilterStorage) data).page(index), PagedFilterStorage.pageOffset(index),
+                        bucketBits() / Integer.SIZE, fingerprintBits, value);
+            }
+        }
+        for(int i = 0; i < words; i++) {
+            long lanes = zeroLanes(read(data, bucketBitOffset + i * wordBits) ^ (lowBits * value));
+            if(lanes != 0) {
+                //the lowest flagged lane is exact, higher ones can be wrong because of the borrow from a zero lane
+                //below them
+                return i * wordEntries + (Long.numberOfTrailingZeros(lanes) / fingerprintBits);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the high bit of every lane of word that is zero
+     */
+    private long zeroLanes(long word) {
+        return (word - lowBits) & ~word & highBits;
+    }
+
+    private long read(FilterStorage data, long wordBitOffset) {
+        long index = wordBitOffset >>> 5;
+        int shift = (int) (wordBitOffset & 31);
+        long word = data.getInt(index) & 0xFFFFFFFFL;
+        //a 32 bit word is always aligned, a 48 or 64 bit one covers the next int too
+        if(shift + wordBits > Integer.SIZE) {
+            word |= ((long) data.getInt(index + 1)) << Integer.SIZE;
+        }
+        return (word >>> shift) & wordMask;
+    }
+
+    private void write(FilterStorage data, long wordBitOffset, long word) {
+        long index = wordBitOffset >>> 5;
+        int shift = (int) (wordBitOffset & 31);
+        if(shift + wordBits <= Integer.SIZE) {
+            data.setInt(index, (int) word);
+        } else {
+            long ints = (data.getInt(index) & 0xFFFFFFFFL) | (((long) data.getInt(index + 1)) << Integer.SIZE);
+            ints = (ints & ~(wordMask << shift)) | (word << shift);
+            data.setInt(index, (int) ints);
+            data.setInt(index + 1, (int) (ints >>> Integer.SIZE));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.mfondo;
+
+import java.util.Random;
+
+/**
+ * Buckets of bit-packed entries of up to 32 bits on the heap, laid out as {@link CuckooFilter.Layout#BIT_PACKED}, with
+ * an entry of 0 marking a free one, for the filters that store more than a fingerprint per entry. Finds an element's
+ * two buckets as {@link CuckooFilter} does, and makes room in a full bucket by searching for a chain of kicks ending in
+ * a free entry before moving anything, as {@link ConcurrentCuckooFilter} does, so a failed insert leaves the table as
+ * it was.
+ *
+ * An entry is kicked to the alternate bucket of its fingerprint, its low fingerprintBits bits. Tables whose entries
+ * do not keep that fingerprint override {@link #kickTarget(int, int)}, and those keeping something per entry next to
+ * the table follow the moves in {@link #moved(int, int, int, int)}.
+ */
+class PackedEntryTable {
+
+    private final Random rand;
+    private final int numBuckets;
+    private final int bucketEntries;
+    private final int maxInsertLoops;
+    private final int fingerprintMask;
+    private final int entryBits;
+    private final int bucketBits;
+    private final FilterStorage data;
+    //the kick chain of makeRoom: each bucket and the entry moved out of it
+    private final int[] pathBuckets;
+    private final int[] pathEntries;
+
+    /**
+     * @param bucketEntries number of entries per bucket, a power of 2
+     * @param numBuckets number of buckets
+     * @param maxInsertLoops maximum number of kicks when making room
+     * @param fingerprintBits number of low bits of each entry holding its fingerprint
+     * @param entryBits number of bits per entry, at most 32
+     */
+    PackedEntryTable(int bucketEntries, int numBuckets, int maxInsertLoops, int fingerprintBits, int entryBits) {
+        rand = new Random();
+        this.numBuckets = numBuckets;
+        this.bucketEntries = bucketEntries;
+        this.maxInsertLoops = maxInsertLoops;
+        this.entryBits = entryBits;
+        fingerprintMask = (int) ((1L << fingerprintBits) - 1);
+        bucketBits = entryBits * bucketEntries;
+        data = new HeapFilterStorage(CuckooFilter.storageLength(bucketBits, numBuckets));
+        pathBuckets = new int[maxInsertLoops];
+        pathEntries = new int[maxInsertLoops];
+    }
+
+    /**
+     * @return number of buckets an index or alternate index can be below - see {@link CuckooFilter#coveredBuckets(int)}
+     */
+    long coveredBuckets() {
+        return CuckooFilter.coveredBuckets(numBuckets);
+    }
+
+    int index(long hash) {
+        return (int) (((hash & 0xFFFFFFFFL) * numBuckets) >>> Integer.SIZE);
+    }
+
+    int alternateIndex(int index, int fingerprint) {
+        //from http://stackoverflow.com/questions/664014/what-integer-hash-function-are-good-that-accepts-an-integer-hash-key
+        fingerprint = ((fingerprint >>> 16) ^ fingerprint) * 0x45d9f3b;
+        fingerprint = ((fingerprint >>> 16) ^ fingerprint) * 0x45d9f3b;
+        fingerprint = ((fingerprint >>> 16) ^ fingerprint);
+        return index ^ ((fingerprint & Integer.MAX_VALUE) % numBuckets);
+    }
+
+    private long entryBitOffset(int bucket, int entry) {
+        return ((long) bucketBits) * bucket + entry * entryBits;
+    }
+
+    int get(int bucket, int entry) {
+        return CuckooFilter.getBits(data, entryBitOffset(bucket, entry), entryBits);
+    }
+
+    void set(int bucket, int entry, int value) {
+        CuckooFilter.setBits(data, entryBitOffset(bucket, entry), entryBits, value);
+    }
+
+    //returns -1 if the bucket is full
+    int freeEntry(int bucket) {
+        for(int e = 0; e < bucketEntries; e++) {
+            if(get(bucket, e) == 0) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    //returns the entry value was stored in, or -1 if the bucket is full
+    int add(int bucket, int value) {
+        int e = freeEntry(bucket);
+        if(e >= 0) {
+            set(bucket, e, value);
+        }
+        return e;
+    }
+
+    /**
+     * Picks one of an element's buckets i1 and i2, both full, then searches for a chain of kicks from it ending in a
+     * bucket with a free entry, and makes the moves back to front, each into the entry the one before freed
+     * @return the picked bucket, now with a free entry, or -1 if no chain was found within maxInsertLoops kicks, in
+     * which case nothing moved
+     */
+    int makeRoom(int i1, int i2) {
+        int start = rand.nextBoolean() ? i1 : i2;
+        int bucket = start;
+        int pathLength = 0;
+        for(int kicks = 0; freeEntry(bucket) < 0; kicks++) {
+            if(kicks >= maxInsertLoops) {
+                return -1;
+            }
+            int e = rand.nextInt(bucketEntries);
+            pathBuckets[pathLength] = bucket;
+            pathEntries[pathLength] = e;
+            pathLength++;
+            bucket = kickTarget(bucket, e);
+            //walks often come back on themselves - cut the loop, so that no bucket is on the chain twice and every
+            //move below has a free entry
+            for(int i = 0; i < pathLength; i++) {
+                if(pathBuckets[i] == bucket) {
+                    pathLength = i;
+                    break;
+                }
+            }
+        }
+        for(int i = pathLength - 1; i >= 0; i--) {
+            int from = pathBuckets[i];
+            int e = pathEntries[i];
+            int to = kickTarget(from, e);
+            moved(from, e, to, add(to, get(from, e)));
+            set(from, e, 0);
+        }
+        return start;
+    }
+
+    /**
+     * @return the bucket the entry of bucket moves to when it is kicked out
+     */
+    int kickTarget(int bucket, int entry) {
+        return alternateIndex(bucket, get(bucket, entry) & fingerprintMask);
+    }
+
+    /**
+     * Called by makeRoom after it copied the entry of fromBucket to toEntry of toBucket, just before it frees the entry
+     */
+    void moved(int fromBucket, int fromEntry, int toBucket, int toEntry) {
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.mfondo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * {@link FilterStorage} on the heap, in pages of 2^14 ints. A heap filter switches from {@link HeapFilterStorage} to
+ * this on its first snapshot, so that filters which are never snapshotted keep the flat array.
+ *
+ * Pages make {@link #snapshot()} cheap: the snapshot shares every page, and whichever side writes to a shared page
+ * first copies it. A snapshot therefore never changes, and can be read by another thread while this storage keeps
+ * taking writes.
+ */
+final class PagedFilterStorage implements FilterStorage {
+
+    static final int PAGE_SHIFT = 14;
+    private static final int PAGE_INTS = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_INTS - 1;
+
+    private final long length;
+    private final int[][] pages;
+    //false while a page is shared with a snapshot
+    private final boolean[] owned;
+
+    /**
+     * Copies data into pages
+     */
+    PagedFilterStorage(int[] data) {
+        length = data.length;
+        pages = new int[Math.max(1, (int) ((length + PAGE_MASK) >>> PAGE_SHIFT))][];
+        for(int i = 0; i < pages.length; i++) {
+            int from = i << PAGE_SHIFT;
+            pages[i] = Arrays.copyOfRange(data, from, Math.min(data.length, from + PAGE_INTS));
+        }
+        owned = new boolean[pages.length];
+        Arrays.fill(owned, true);
+    }
+
+    private PagedFilterStorage(long length, int[][] pages) {
+        this.length = length;
+        this.pages = pages;
+        owned = new boolean[pages.length];
+    }
+
+    @Override
+    public int getInt(long index) {
+        return pages[(int) (index >>> PAGE_SHIFT)][(int) index & PAGE_MASK];
+    }
+
+    @Override
+    public void setInt(long index, int value) {
+        int page = (int) (index >>> PAGE_SHIFT);
+        if(!owned[page]) {
+            pages[page] = pages[page].clone();
+            owned[page] = true;
+        }
+        pages[page][(int) index & PAGE_MASK] = value;
+    }
+
+    /**
+     * For reads only - the page holding index, which is at {@link #pageOffset(long)}
+     */
+    int[] page(long index) {
+        return pages[(int) (index >>> PAGE_SHIFT)];
+    }
+
+    static int pageOffset(long index) {
+        return (int) index & PAGE_MASK;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public PagedFilterStorage snapshot() {
+        Arrays.fill(owned, false);
+        return new PagedFilterStorage(length, pages.clone());
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer block = BlockIO.block();
+        for(int[] page : pages) {
+            BlockIO.writeInts(channel, block, page, 0, page.length);
+        }
+    }
+
+    @Override
+    public void readFrom(ReadableByteChannel channel) throws IOException {
+        ByteBuffer block = BlockIO.block();
+        for(int i = 0; i < pages.length; i++) {
+            if(!owned[i]) {
+                pages[i] = new int[pages[i].length];
+                owned[i] = true;
+            }
+            BlockIO.readInts(channel, block, pages[i], 0, pages[i].length);
+        }
+    }
+
+    @Override
+    public void force() {
+        //nothing to write back to
+    }
+
+    @Override
+    public void close() {
+        //garbage collected
+    }
+}
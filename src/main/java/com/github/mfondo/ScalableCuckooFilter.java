@@ -0,0 +1,121 @@
+package com.github.mfondo;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link CuckooFilter} that grows, for when the number of elements is not known up front. This is the scalable
+ * Bloom filter of http://gsd.di.uminho.pt/members/cbm/ps/dbloom.pdf applied to cuckoo filters.
+ *
+ * Elements are added to the newest of a chain of filters. When it is full, a filter with twice the buckets and one
+ * more fingerprint bit is appended. Each filter then has about half the false positive rate of the one before, so the
+ * rate of the whole chain stays below twice that of the first filter. Lookups and removes check every filter, newest
+ * first. A full filter holds on to the fingerprint its last kick chain could not place, so growing never loses an
+ * element.
+ *
+ * As with a single filter, only remove elements that were added. An element can also match, at the false positive
+ * rate, in a filter it was not added to, and removing it there takes out another element's fingerprint.
+ */
+public class ScalableCuckooFilter<T> implements Closeable {
+
+    private static final int MAX_BUCKETS = 1 << 30;
+
+    private final int bucketEntries;
+    private final int maxInsertLoops;
+    private final boolean offHeap;
+    private final List<CuckooFilter<T>> filters = new ArrayList<CuckooFilter<T>>();
+    //of the newest filter
+    private int numBuckets;
+    private int fingerprintBits;
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param initialBuckets number of buckets of the first filter
+     * @param maxInsertLoops maximum number of loop iterations on insert before a filter counts as full
+     * @param fingerprintBits number of bits in the first filter's fingerprints
+     */
+    public ScalableCuckooFilter(int bucketEntries, int initialBuckets, int maxInsertLoops, int fingerprintBits) {
+        this(bucketEntries, initialBuckets, maxInsertLoops, fingerprintBits, false);
+    }
+
+    /**
+     * @param bucketEntries number of entries per bucket
+     * @param initialBuckets number of buckets of the first filter
+     * @param maxInsertLoops maximum number of loop iterations on insert before a filter counts as full
+     * @param fingerprintBits number of bits in the first filter's fingerprints
+     * @param offHeap if true, the buckets are kept in direct memory outside the heap until {@link #close()}
+     */
+    public ScalableCuckooFilter(int bucketEntries, int initialBuckets, int maxInsertLoops, int fingerprintBits, boolean offHeap) {
+        this.bucketEntries = bucketEntries;
+        this.maxInsertLoops = maxInsertLoops;
+        this.offHeap = offHeap;
+        numBuckets = initialBuckets;
+        this.fingerprintBits = fingerprintBits;
+        filters.add(new CuckooFilter<T>(bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, offHeap));
+    }
+
+    /**
+     * @param t element to add
+     * @return true if the element was successfully added, which only fails if a newly grown filter cannot take it
+     */
+    public boolean add(T t) {
+        if(filters.get(filters.size() - 1).add(t)) {
+            return true;
+        }
+        return grow().add(t);
+    }
+
+    private CuckooFilter<T> grow() {
+        if(numBuckets <= MAX_BUCKETS / 2) {
+            numBuckets *= 2;
+        }
+        if(fingerprintBits < Integer.SIZE) {
+            fingerprintBits++;
+        }
+        CuckooFilter<T> filter = new CuckooFilter<T>(bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, offHeap);
+        filters.add(filter);
+        return filter;
+    }
+
+    /**
+     * @param t element to remove
+     * @return true if the element was contained in one of the filters
+     */
+    public boolean remove(T t) {
+        for(int i = filters.size() - 1; i >= 0; i--) {
+            if(filters.get(i).remove(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param t T
+     * @return true if the filter possibly contains T, false if it definitely does not contain T
+     */
+    public boolean contains(T t) {
+        for(int i = filters.size() - 1; i >= 0; i--) {
+            if(filters.get(i).contains(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //default access for unit testing
+    int filterCount() {
+        return filters.size();
+    }
+
+    /**
+     * Releases the buckets' memory if they are off-heap. The filter must not be used afterwards
+     */
+    @Override
+    public void close() {
+        for(CuckooFilter<T> filter : filters) {
+            filter.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.mfondo;
+
+/**
+ * Semi-sorted buckets from section 5.2 of http://www.eecs.harvard.edu/~michaelm/postscripts/cuckoo-conext2014.pdf
+ *
+ * A bucket holds 4 fingerprints in ascending order, with 0 marking an empty entry. Sorted, their high 4 bit nibbles
+ * are one of only 3876 multisets of 4 nibbles, so the nibbles are stored as a 12 bit index into a precomputed table
+ * rather than as 16 bits, followed by the 4 remaining fingerprintBits - 4 low bits in the same order. 0 marking an
+ * empty entry also does away with the occupancy bits, so a bucket is 4 * fingerprintBits - 4 bits instead of the
+ * 4 * fingerprintBits + 4 bits of {@link BitPackedBucketLayout} - 2 bits less per entry.
+ *
+ * Changing a bucket decodes it into a scratch array owned by the layout, so like the filter's own writes those of
+ * one layout must come from one thread at a time. {@link #contains(FilterStorage, long, int)} does not touch it.
+ */
+final class SemiSortedBucketLayout extends BucketLayout {
+
+    private static final int ENTRIES = 4;
+    private static final int NIBBLE_BITS = 4;
+    private static final int CODE_BITS = 12;
+
+    //4 sorted nibbles packed as a | b << 4 | c << 8 | d << 12 to their 12 bit index, and back
+    private static final short[] ENCODE = new short[1 << (ENTRIES * NIBBLE_BITS)];
+    private static final char[] DECODE = new char[3876];
+
+    static {
+        int code = 0;
+        for(int a = 0; a < 16; a++) {
+            for(int b = a; b < 16; b++) {
+                for(int c = b; c < 16; c++) {
+                    for(int d = c; d < 16; d++) {
+                        int packed = a | (b << 4) | (c << 8) | (d << 12);
+                        ENCODE[packed] = (short) code;
+                        DECODE[code] = (char) packed;
+                        code++;
+                    }
+                }
+            }
+        }
+    }
+
+    private final int lowBits;
+    private final int lowMask;
+    //the decoded bucket being changed
+    private final int[] entries = new int[ENTRIES];
+
+    SemiSortedBucketLayout(int bucketEntries, int fingerprintBits) {
+        super(bucketEntries, fingerprintBits);
+        if(bucketEntries != ENTRIES) {
+            throw new IllegalArgumentException("Semi-sorted buckets need 4 bucket entries");
+        }
+        if(fingerprintBits < NIBBLE_BITS) {
+            throw new IllegalArgumentException("Semi-sorted buckets need at least 4 fingerprint bits");
+        }
+        lowBits = fingerprintBits - NIBBLE_BITS;
+        lowMask = (int) ((1L << lowBits) - 1);
+    }
+
+    @Override
+    int bucketBits() {
+        return CODE_BITS + (ENTRIES * lowBits);
+    }
+
+    @Override
+    int fingerprint(int bits) {
+        return bits == 0 ? 1 : bits;
+    }
+
+    @Override
+    boolean contains(FilterStorage data, long bucketBitOffset, int fingerprint) {
+        int nibbles = DECODE[CuckooFilter.getBits(data, bucketBitOffset, CODE_BITS)];
+        int nibble = fingerprint >>> lowBits;
+        int low = fingerprint & lowMask;
+        long lowBitOffset = bucketBitOffset + CODE_BITS;
+        for(int i = 0; i < ENTRIES; i++, lowBitOffset += lowBits) {
+            //only read the low bits when the nibble matches
+            if(((nibbles >>> (i * NIBBLE_BITS)) & 0xF) == nibble && (lowBits == 0 || CuckooFilter.getBits(data, lowBitOffset, lowBits) == low)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    boolean add(FilterStorage data, long bucketBitOffset, int fingerprint) {
+        read(data, bucketBitOffset);
+        //sorted, so an empty entry comes first
+        if(entries[0] != 0) {
+            return false;
+        }
+        entries[0] = fingerprint;
+        write(data, bucketBitOffset);
+        return true;
+    }
+
+    @Override
+    boolean remove(FilterStorage data, long bucketBitOffset, int fingerprint) {
+        if(!contains(data, bucketBitOffset, fingerprint)) {
+            return false;
+        }
+        read(data, bucketBitOffset);
+        for(int i = 0; i < ENTRIES; i++) {
+            if(entries[i] == fingerprint) {
+                entries[i] = 0;
+                break;
+            }
+        }
+        write(data, bucketBitOffset);
+        return true;
+    }
+
+    @Override
+    int get(FilterStorage data, long bucketBitOffset, int entry) {
+        int nibbles = DECODE[CuckooFilter.getBits(data, bucketBitOffset, CODE_BITS)];
+        int ret = ((nibbles >>> (entry * NIBBLE_BITS)) & 0xF) << lowBits;
+        if(lowBits > 0) {
+            ret |= CuckooFilter.getBits(data, bucketBitOffset + CODE_BITS + ((long) entry) * lowBits, lowBits);
+        }
+        return ret;
+    }
+
+    @Override
+    int swap(FilterStorage data, long bucketBitOffset, int entry, int fingerprint) {
+        read(data, bucketBitOffset);
+        int ret = entries[entry];
+        entries[entry] = fingerprint;
+        write(data, bucketBitOffset);
+        return ret;
+    }
+
+    //decodes the bucket into entries
+    private void read(FilterStorage data, long bucketBitOffset) {
+        int nibbles = DECODE[CuckooFilter.getBits(data, bucketBitOffset, CODE_BITS)];
+        long lowBitOffset = bucketBitOffset + CODE_BITS;
+        for(int i = 0; i < ENTRIES; i++, lowBitOffset += lowBits) {
+            entries[i] = ((nibbles >>> (i * NIBBLE_BITS)) & 0xF) << lowBits;
+            if(lowBits > 0) {
+                entries[i] |= CuckooFilter.getBits(data, lowBitOffset, lowBits);
+            }
+        }
+    }
+
+    //sorts entries and encodes them into the bucket
+    private void write(FilterStorage data, long bucketBitOffset) {
+        //sorting network for 4 entries, unsigned so that 32 bit fingerprints sort by their top nibble too
+        sort(entries, 0, 1);
+        sort(entries, 2, 3);
+        sort(entries, 0, 2);
+        sort(entries, 1, 3);
+        sort(entries, 1, 2);
+        int nibbles = 0;
+        long lowBitOffset = bucketBitOffset + CODE_BITS;
+        for(int i = 0; i < ENTRIES; i++, lowBitOffset += lowBits) {
+            nibbles |= (entries[i] >>> lowBits) << (i * NIBBLE_BITS);
+            if(lowBits > 0) {
+                CuckooFilter.setBits(data, lowBitOffset, lowBits, entries[i] & lowMask);
+            }
+        }
+        CuckooFilter.setBits(data, bucketBitOffset, CODE_BITS, ENCODE[nibbles]);
+    }
+
+    private static void sort(int[] entries, int i, int j) {
+        if((entries[i] ^ Integer.MIN_VALUE) > (entries[j] ^ Integer.MIN_VALUE)) {
+            int tmp = entries[i];
+            entries[i] = entries[j];
+            entries[j] = tmp;
+        }
+    }
+}
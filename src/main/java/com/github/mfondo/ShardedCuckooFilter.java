@@ -0,0 +1,284 @@
+package com.github.mfondo;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * One logical {@link CuckooFilter} split into independent shards, for many threads adding at once. An element's shard
+ * is picked by the high bits of a remix of its 64 bit hash, so that the choice is independent of the fingerprint and
+ * bucket the shard takes from the same hash, and contains stays a lookup in one shard.
+ *
+ * Each shard is a CuckooFilter with its own Random, behind its own lock: adds and removes take it exclusively, lookups
+ * shared. Threads only contend when they hit the same shard, so with a few shards per thread adds scale with cores.
+ *
+ * {@link #addAll(Object[], ForkJoinPool)} bulk loads on a fork/join pool: it hashes the keys in parallel, groups the
+ * hashes by shard, then fills every shard in a task of its own, taking each shard's lock once.
+ *
+ * Unlike {@link ConcurrentCuckooFilter}, shards keep every {@link CuckooFilter.Layout} and fingerprint size, and can be
+ * off-heap, at the cost of readers blocking while a writer holds their shard.
+ */
+public class ShardedCuckooFilter<T> implements Closeable {
+
+    //keys hashed per task by addAll
+    private static final int HASH_BATCH = 1 << 13;
+
+    private final List<CuckooFilter<T>> shards;
+    private final StampedLock[] locks;
+    private final int shardMask;
+    private final ElementHasher64<? super T> hashFunction;
+    private final int seed;
+
+    /**
+     * @param shards number of shards, a power of 2 - a few per writing thread
+     * @param layout how buckets are encoded
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets of all shards together, divided evenly between them
+     * @param maxInsertLoops maximum number of loop iterations on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param offHeap if true, the buckets are kept in direct memory outside the heap until {@link #close()}
+     */
+    public ShardedCuckooFilter(int shards, CuckooFilter.Layout layout, int bucketEntries, int numBuckets, int maxInsertLoops,
+                               int fingerprintBits, boolean offHeap) {
+        this(shards, layout, bucketEntries, numBuckets, maxInsertLoops, fingerprintBits, offHeap, Murmur3.HASH_CODE, 0);
+    }
+
+    /**
+     * @param shards number of shards, a power of 2 - a few per writing thread
+     * @param layout how buckets are encoded
+     * @param bucketEntries number of entries per bucket
+     * @param numBuckets number of buckets of all shards together, divided evenly between them
+     * @param maxInsertLoops maximum number of loop iterations on insert before giving up
+     * @param fingerprintBits number of bits in fingerprint
+     * @param offHeap if true, the buckets are kept in direct memory outside the heap until {@link #close()}
+     * @param hashFunction hashes elements - see {@link CuckooFilter}
+     * @param seed passed to hashFunction
+     */
+    public ShardedCuckooFilter(int shards, CuckooFilter.Layout layout, int bucketEntries, int numBuckets, int maxInsertLoops,
+                               int fingerprintBits, boolean offHeap, ElementHasher64<? super T> hashFunction, int seed) {
+        if(shards < 1 || (shards & (shards - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid number of shards");
+        }
+        if(numBuckets < shards) {
+            throw new IllegalArgumentException("Invalid number of buckets");
+        }
+        if(hashFunction == null) {
+            throw new IllegalArgumentException("Invalid hash function");
+        }
+        this.hashFunction = hashFunction;
+        this.seed = seed;
+        shardMask = shards - 1;
+        int shardBuckets = (int) ((numBuckets + shards - 1L) / shards);
+        this.shards = new ArrayList<CuckooFilter<T>>(shards);
+        locks = new StampedLock[shards];
+        try {
+            for(int i = 0; i < shards; i++) {
+                this.shards.add(new CuckooFilter<T>(layout, bucketEntries, shardBuckets, maxInsertLoops, fingerprintBits, offHeap, hashFunction, seed));
+                locks[i] = new StampedLock();
+            }
+        } catch(RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param t element to add
+     * @return true if the element was successfully added - see {@link CuckooFilter#add(Object)}
+     */
+    public boolean add(T t) {
+        if(t == null) {
+            throw new IllegalArgumentException();
+        }
+        long hash = hashFunction.hash(t, seed);
+        int shard = shard(hash);
+        long stamp = locks[shard].writeLock();
+        try {
+            return shards.get(shard).addHash(hash);
+        } finally {
+            locks[shard].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param t element to remove
+     * @return true if the element was contained in the filter
+     */
+    public boolean remove(T t) {
+        return containsOrRemove(t, true);
+    }
+
+    /**
+     * @param t T
+     * @return true if the filter possibly contains T, false if it definitely does not contain T
+     */
+    public boolean contains(T t) {
+        return containsOrRemove(t, false);
+    }
+
+    private boolean containsOrRemove(T t, boolean remove) {
+        long hash = hashFunction.hash(t, seed);
+        int shard = shard(hash);
+        StampedLock lock = locks[shard];
+        long stamp = remove ? lock.writeLock() : lock.readLock();
+        try {
+            return shards.get(shard).containsOrRemove(hash, remove);
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    /**
+     * Bulk loads keys on the common fork/join pool
+     * @see #addAll(Object[], ForkJoinPool)
+     */
+    public int addAll(T[] keys) {
+        return addAll(keys, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Bulk loads the elements of a stream on the common fork/join pool, collecting them into an array first
+     * @see #addAll(Object[], ForkJoinPool)
+     */
+    public int addAll(Stream<? extends T> keys) {
+        return load(keys.toArray(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Adds keys in parallel on pool: hashes them in tasks of 8192 keys, groups the hashes by shard, then adds each
+     * shard's hashes in a task holding that shard's lock. Takes 16 bytes per key of temporary memory. Other threads can
+     * keep using the filter meanwhile
+     * @return number of keys that were successfully added
+     */
+    public int addAll(T[] keys, ForkJoinPool pool) {
+        return load(keys, pool);
+    }
+
+    private int load(Object[] keys, ForkJoinPool pool) {
+        for(Object key : keys) {
+            if(key == null) {
+                throw new IllegalArgumentException();
+            }
+        }
+        long[] hashes = new long[keys.length];
+        pool.invoke(new HashTask<T>(this, keys, hashes, 0, keys.length));
+        //counting sort of the hashes by shard
+        int[] starts = new int[shards.size() + 1];
+        for(long hash : hashes) {
+            starts[shard(hash) + 1]++;
+        }
+        for(int i = 0; i < shards.size(); i++) {
+            starts[i + 1] += starts[i];
+        }
+        long[] sorted = new long[hashes.length];
+        int[] next = starts.clone();
+        for(long hash : hashes) {
+            sorted[next[shard(hash)]++] = hash;
+        }
+        List<ForkJoinTask<Integer>> tasks = new ArrayList<ForkJoinTask<Integer>>(shards.size());
+        for(int i = 0; i < shards.size(); i++) {
+            tasks.add(pool.submit(new ShardTask<T>(this, i, sorted, starts[i], starts[i + 1])));
+        }
+        int ret = 0;
+        for(ForkJoinTask<Integer> task : tasks) {
+            ret += task.join();
+        }
+        return ret;
+    }
+
+    private int shard(long hash) {
+        return (int) (CuckooHashing.mix64(hash) >>> Integer.SIZE) & shardMask;
+    }
+
+    //default access for unit testing
+    CuckooFilter<T> shard(int i) {
+        return shards.get(i);
+    }
+
+    /**
+     * Releases the buckets' memory if they are off-heap. The filter must not be used afterwards
+     */
+    @Override
+    public void close() {
+        for(CuckooFilter<T> shard : shards) {
+            shard.close();
+        }
+    }
+
+    //hashes keys[from, to) into hashes, splitting the range until it is HASH_BATCH keys
+    private static final class HashTask<T> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ShardedCuckooFilter<T> filter;
+        private final Object[] keys;
+        private final long[] hashes;
+        private final int from;
+        private final int to;
+
+        HashTask(ShardedCuckooFilter<T> filter, Object[] keys, long[] hashes, int from, int to) {
+            this.filter = filter;
+            this.keys = keys;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void compute() {
+            if(to - from <= HASH_BATCH) {
+                for(int i = from; i < to; i++) {
+                    hashes[i] = filter.hashFunction.hash((T) keys[i], filter.seed);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new HashTask<T>(filter, keys, hashes, from, mid), new HashTask<T>(filter, keys, hashes, mid, to));
+            }
+        }
+    }
+
+    //adds hashes[from, to), which all belong to one shard, under its lock
+    private static final class ShardTask<T> extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ShardedCuckooFilter<T> filter;
+        private final int shard;
+        private final long[] hashes;
+        private final int from;
+        private final int to;
+
+        ShardTask(ShardedCuckooFilter<T> filter, int shard, long[] hashes, int from, int to) {
+            this.filter = filter;
+            this.shard = shard;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            CuckooFilter<T> cuckooFilter = filter.shards.get(shard);
+            StampedLock lock = filter.locks[shard];
+            int ret = 0;
+            long stamp = lock.writeLock();
+            try {
+                for(int i = from; i < to; i++) {
+                    if(cuckooFilter.addHash(hashes[i])) {
+                        ret++;
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            return ret;
+        }
+    }
+}
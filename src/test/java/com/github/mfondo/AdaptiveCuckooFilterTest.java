@@ -0,0 +1,94 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AdaptiveCuckooFilterTest extends TestCase {
+
+    public void testReportFalsePositive() {
+        int numBuckets = 1 << 10;
+        //8 bit fingerprints, so that false positives are common
+        AdaptiveCuckooFilter<Integer> filter = new AdaptiveCuckooFilter<Integer>(4, numBuckets, 500, 8, 2);
+        int size = numBuckets * 4 * 9 / 10;
+        for(int i = 0; i < size; i++) {
+            assertTrue(filter.add(i));
+        }
+        List<Integer> falsePositives = new ArrayList<Integer>();
+        for(int i = size; i < size + 10000; i++) {
+            if(filter.contains(i)) {
+                falsePositives.add(i);
+            }
+        }
+        assertTrue(falsePositives.size() > 100);
+        for(Integer i : falsePositives) {
+            //unless re-encoding for an earlier one already fixed it
+            assertEquals(filter.contains(i), filter.reportFalsePositive(i));
+            assertFalse(filter.contains(i));
+        }
+        //re-encoding may bring back a few of the earlier ones, but never loses a member
+        int again = 0;
+        for(Integer i : falsePositives) {
+            if(filter.contains(i)) {
+                again++;
+            }
+        }
+        assertTrue(again < falsePositives.size() / 10);
+        for(int i = 0; i < size; i++) {
+            assertTrue(filter.contains(i));
+            assertFalse(filter.reportFalsePositive(i));
+        }
+    }
+
+    public void testRemove() {
+        AdaptiveCuckooFilter<Integer> filter = new AdaptiveCuckooFilter<Integer>(4, 1 << 10, 500, 8, 2);
+        int size = (1 << 10) * 4 * 9 / 10;
+        for(int i = 0; i < size; i++) {
+            assertTrue(filter.add(i));
+        }
+        //removes only members, even where a non-member matches an entry
+        for(int i = size; i < size * 2; i++) {
+            assertFalse(filter.remove(i));
+        }
+        for(int i = 0; i < size; i += 2) {
+            assertTrue(filter.remove(i));
+        }
+        for(int i = 1; i < size; i += 2) {
+            assertTrue(filter.contains(i));
+        }
+    }
+
+    public void testFullFilter() {
+        AdaptiveCuckooFilter<Integer> filter = new AdaptiveCuckooFilter<Integer>(2, 16, 50, 16, 2);
+        int key = 0;
+        while(filter.add(key)) {
+            key++;
+        }
+        //the failed add left the filter as it was
+        assertFalse(filter.remove(key));
+        for(int i = 0; i < key; i++) {
+            assertTrue(filter.contains(i));
+        }
+    }
+
+    public void testNonPowerOf2Buckets() {
+        //alternate buckets go up to 128, past the 100 asked for
+        AdaptiveCuckooFilter<Integer> filter = new AdaptiveCuckooFilter<Integer>(4, 100, 500, 12, 2);
+        int size = 380;
+        for(int i = 0; i < size; i++) {
+            assertTrue(filter.add(i));
+        }
+        for(int i = 0; i < size; i++) {
+            assertTrue(filter.contains(i));
+        }
+        for(int i = size; i < size + 1000; i++) {
+            if(filter.contains(i)) {
+                filter.reportFalsePositive(i);
+            }
+        }
+        for(int i = 0; i < size; i++) {
+            assertTrue(filter.remove(i));
+        }
+    }
+}
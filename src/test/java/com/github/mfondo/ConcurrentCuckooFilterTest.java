@@ -0,0 +1,140 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentCuckooFilterTest extends TestCase {
+
+    public void testFilter() {
+        ConcurrentCuckooFilter<String> cuckooFilter = new ConcurrentCuckooFilter<String>(4, 128, 50, 12);
+        for(int i = 0; i < 10; i++) {
+            String val = Integer.toString(i);
+            assertTrue(cuckooFilter.add(val));
+            assertTrue(cuckooFilter.contains(val));
+            assertTrue(cuckooFilter.remove(val));
+            assertFalse(cuckooFilter.contains(val));
+        }
+
+        //fill to 90% - nothing that was added can go missing
+        cuckooFilter = new ConcurrentCuckooFilter<String>(4, 256, 500, 16);
+        int added = 0;
+        for(int i = 0; i < 256 * 4 * 9 / 10; i++) {
+            if(cuckooFilter.add(Integer.toString(i))) {
+                added++;
+            }
+        }
+        assertTrue(added > 256 * 4 * 8 / 10);
+        for(int i = 0; i < added; i++) {
+            assertTrue(cuckooFilter.contains(Integer.toString(i)));
+        }
+        //a full filter rejects instead of dropping
+        for(int i = 0; i < 256 * 4; i++) {
+            cuckooFilter.add("x" + i);
+        }
+        for(int i = 0; i < added; i++) {
+            assertTrue(cuckooFilter.contains(Integer.toString(i)));
+        }
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new ConcurrentCuckooFilter<String>(4, 100, 50, 12);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            new ConcurrentCuckooFilter<String>(8, 128, 50, 12);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * Writers add and remove their own elements, which kicks, while readers check that elements added up front are
+     * never reported missing
+     */
+    public void testConcurrentAddContains() throws InterruptedException {
+        final ConcurrentCuckooFilter<Integer> filter = new ConcurrentCuckooFilter<Integer>(4, 1 << 14, 500, 16);
+        final int stable = 1000;
+        for(int i = 0; i < stable; i++) {
+            assertTrue(filter.add(-i - 1));
+        }
+        final int writers = 4;
+        final int readers = 4;
+        final int perWriter = 12000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger missing = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        Thread[] writerThreads = new Thread[writers];
+        for(int w = 0; w < writers; w++) {
+            final int offset = w * perWriter;
+            writerThreads[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    for(int i = 0; i < perWriter; i++) {
+                        if(!filter.add(offset + i)) {
+                            rejected.incrementAndGet();
+                        } else if(i % 3 == 0) {
+                            filter.remove(offset + i);
+                        }
+                    }
+                }
+            });
+        }
+        Thread[] readerThreads = new Thread[readers];
+        for(int r = 0; r < readers; r++) {
+            readerThreads[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    int i = 0;
+                    while(writing.get()) {
+                        if(!filter.contains(-(i % stable) - 1)) {
+                            missing.incrementAndGet();
+                        }
+                        i++;
+                    }
+                }
+            });
+        }
+        for(Thread thread : writerThreads) {
+            thread.start();
+        }
+        for(Thread thread : readerThreads) {
+            thread.start();
+        }
+        start.countDown();
+        for(Thread thread : writerThreads) {
+            thread.join();
+        }
+        writing.set(false);
+        for(Thread thread : readerThreads) {
+            thread.join();
+        }
+        assertEquals(0, missing.get());
+        assertEquals(0, rejected.get());
+        for(int w = 0; w < writers; w++) {
+            for(int i = 1; i < perWriter; i += 3) {
+                assertTrue(filter.contains(w * perWriter + i));
+            }
+        }
+        for(int i = 0; i < stable; i++) {
+            assertTrue(filter.contains(-i - 1));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentCuckooHashSetTest extends TestCase {
+
+    private static final CuckooHashSet.HashFunction<Integer> HASH_1 = new CuckooHashSet.HashFunction<Integer>() {
+        @Override
+        public int hash(Integer integer) {
+            return integer * 0x9E3779B9;
+        }
+    };
+
+    private static final CuckooHashSet.HashFunction<Integer> HASH_2 = new CuckooHashSet.HashFunction<Integer>() {
+        @Override
+        public int hash(Integer integer) {
+            int h = integer;
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h;
+        }
+    };
+
+    public void testSingleThreaded() {
+        runTests(new ConcurrentCuckooHashSet<Integer>(100, 0.9f, 1, HASH_1, HASH_2));
+        runTests(new ConcurrentCuckooHashSet<Integer>(100, 0.9f, 4, HASH_1, HASH_2));
+    }
+
+    /**
+     * Elements whose hashes all collide cannot be placed in any table size - add gives up instead of growing forever
+     */
+    public void testCollidingHashes() {
+        CuckooHashSet.HashFunction<Integer> constant = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return 7;
+            }
+        };
+        ConcurrentCuckooHashSet<Integer> cuckooSet = new ConcurrentCuckooHashSet<Integer>(10, 0.9f, 1, constant, constant, 1);
+        assertTrue(cuckooSet.add(1));
+        assertTrue(cuckooSet.add(2));
+        try {
+            cuckooSet.add(3);
+            fail();
+        } catch(IllegalStateException e) {
+            //expected
+        }
+        assertEquals(2, cuckooSet.size());
+        //the initial 16 slots, doubled at most 5 times
+        assertTrue(cuckooSet.tableLength() <= 512);
+    }
+
+    /**
+     * A free slot found on the last kick allowed still makes room, rather than resizing
+     */
+    public void testRoomOnLastKick() {
+        //with 8 buckets per half, x goes in bucket x / 100 % 8 or x % 100 % 8 + 8
+        CuckooHashSet.HashFunction<Integer> hundreds = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return integer / 100;
+            }
+        };
+        CuckooHashSet.HashFunction<Integer> units = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return integer % 100;
+            }
+        };
+        //kicks are random, so try a few times
+        for(int i = 0; i < 20; i++) {
+            ConcurrentCuckooHashSet<Integer> cuckooSet = new ConcurrentCuckooHashSet<Integer>(1, 0.9f, 1, hundreds, units, 1);
+            int tableLength = cuckooSet.tableLength();
+            //1 in bucket 0, free to move to 9
+            assertTrue(cuckooSet.add(1));
+            //502 in bucket 10, behind 503 in bucket 5, then free to move to 5
+            assertTrue(cuckooSet.add(503));
+            assertTrue(cuckooSet.add(502));
+            assertTrue(cuckooSet.remove(503));
+            //both buckets of 1602, 0 and 10, are full, and one kick from either makes room
+            assertTrue(cuckooSet.add(1602));
+            assertEquals(tableLength, cuckooSet.tableLength());
+            assertTrue(cuckooSet.contains(1));
+            assertTrue(cuckooSet.contains(502));
+        }
+    }
+
+    private void runTests(Set<Integer> cuckooSet) {
+        final Set<Integer> hashSet = new HashSet<Integer>();
+        final Random random = new Random(1);
+        for(int i = 0; i < 20000; i++) {
+            int val = random.nextInt(5000) - 2500;
+            if(random.nextFloat() > 0.25f) {
+                assertEquals(hashSet.add(val), cuckooSet.add(val));
+            } else {
+                assertEquals(hashSet.remove(val), cuckooSet.remove(val));
+            }
+            assertEquals(hashSet.size(), cuckooSet.size());
+        }
+        assertEquals(hashSet, cuckooSet);
+        cuckooSet.clear();
+        assertTrue(cuckooSet.isEmpty());
+    }
+
+    /**
+     * Writers insert disjoint ranges, which kicks and resizes, while readers check that elements inserted up front are
+     * never reported missing
+     */
+    public void testConcurrentAddContains() throws InterruptedException {
+        final ConcurrentCuckooHashSet<Integer> set = new ConcurrentCuckooHashSet<Integer>(20, 0.95f, 4, HASH_1, HASH_2);
+        final int stable = 1000;
+        for(int i = 0; i < stable; i++) {
+            set.add(-i - 1);
+        }
+        final int writers = 4;
+        final int readers = 4;
+        final int perWriter = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger missing = new AtomicInteger();
+        Thread[] writerThreads = new Thread[writers];
+        for(int w = 0; w < writers; w++) {
+            final int offset = w * perWriter;
+            writerThreads[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    for(int i = 0; i < perWriter; i++) {
+                        set.add(offset + i);
+                        if(i % 3 == 0) {
+                            set.remove(offset + i);
+                        }
+                    }
+                }
+            });
+        }
+        Thread[] readerThreads = new Thread[readers];
+        for(int r = 0; r < readers; r++) {
+            readerThreads[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    int i = 0;
+                    while(writing.get()) {
+                        if(!set.contains(-(i % stable) - 1)) {
+                            missing.incrementAndGet();
+                        }
+                        i++;
+                    }
+                }
+            });
+        }
+        for(Thread thread : writerThreads) {
+            thread.start();
+        }
+        for(Thread thread : readerThreads) {
+            thread.start();
+        }
+        start.countDown();
+        for(Thread thread : writerThreads) {
+            thread.join();
+        }
+        writing.set(false);
+        for(Thread thread : readerThreads) {
+            thread.join();
+        }
+        assertEquals(0, missing.get());
+        int expected = stable;
+        for(int w = 0; w < writers; w++) {
+            for(int i = 0; i < perWriter; i++) {
+                int val = w * perWriter + i;
+                assertEquals(i % 3 != 0, set.contains(val));
+                if(i % 3 != 0) {
+                    expected++;
+                }
+            }
+        }
+        for(int i = 0; i < stable; i++) {
+            assertTrue(set.contains(-i - 1));
+        }
+        assertEquals(expected, set.size());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
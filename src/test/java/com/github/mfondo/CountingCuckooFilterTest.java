@@ -0,0 +1,104 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class CountingCuckooFilterTest extends TestCase {
+
+    public void testHotKey() {
+        CountingCuckooFilter<Integer> filter = new CountingCuckooFilter<Integer>(4, 1024, 500, 16, 4);
+        //15 per entry, far more than the 8 entries of its two buckets could hold one at a time
+        for(int i = 0; i < 100; i++) {
+            assertTrue(filter.add(1));
+        }
+        assertEquals(100, filter.count(1));
+        //saturates every entry of both buckets, then fails without changing anything
+        int added = 100;
+        while(filter.add(1)) {
+            added++;
+        }
+        assertEquals(8 * 15, added);
+        assertEquals(added, filter.count(1));
+        for(int i = added; i > 0; i--) {
+            assertTrue(filter.remove(1));
+            assertEquals(i - 1, filter.count(1));
+        }
+        assertFalse(filter.contains(1));
+        assertFalse(filter.remove(1));
+    }
+
+    public void testCounts() {
+        int numBuckets = 1 << 12;
+        CountingCuckooFilter<Integer> filter = new CountingCuckooFilter<Integer>(4, numBuckets, 500, 16, 4);
+        Random random = new Random(42);
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        //each key added up to 20 times, a quarter of them taking a second entry - about 87% of the entries
+        for(int key = 0; key < numBuckets * 4 * 7 / 10; key++) {
+            int count = 1 + random.nextInt(20);
+            for(int i = 0; i < count; i++) {
+                assertTrue(filter.add(key));
+            }
+            counts.put(key, count);
+        }
+        int wrong = 0;
+        for(Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            int count = filter.count(entry.getKey());
+            //never lower, and only higher for a fingerprint collision
+            assertTrue(count >= entry.getValue());
+            if(count != entry.getValue()) {
+                wrong++;
+            }
+        }
+        assertTrue(wrong < 100);
+        for(Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            for(int i = 0; i < entry.getValue(); i++) {
+                assertTrue(filter.remove(entry.getKey()));
+            }
+        }
+        for(Integer key : counts.keySet()) {
+            assertFalse(filter.contains(key));
+        }
+    }
+
+    public void testFullFilter() {
+        CountingCuckooFilter<Integer> filter = new CountingCuckooFilter<Integer>(2, 16, 50, 16, 2);
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        int key = 0;
+        while(filter.add(key)) {
+            counts.put(key, 1);
+            key++;
+        }
+        //the failed add left the filter as it was
+        assertEquals(0, filter.count(key));
+        for(Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            assertTrue(filter.count(entry.getKey()) >= entry.getValue());
+        }
+        //keys already in still count, up to the counter maximum
+        assertTrue(filter.add(0));
+        assertTrue(filter.count(0) >= 2);
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new CountingCuckooFilter<Integer>(3, 16, 50, 16, 4);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            new CountingCuckooFilter<Integer>(4, 16, 50, 30, 4);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            new CountingCuckooFilter<Integer>(4, 16, 50, 16, 0);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
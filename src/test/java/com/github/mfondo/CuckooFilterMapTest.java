@@ -0,0 +1,77 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+public class CuckooFilterMapTest extends TestCase {
+
+    public void testPutGet() {
+        int numBuckets = 1 << 12;
+        CuckooFilterMap<Integer> map = new CuckooFilterMap<Integer>(4, numBuckets, 500, 16, 4);
+        //90% of the entries
+        int size = numBuckets * 4 * 9 / 10;
+        for(int i = 0; i < size; i++) {
+            assertTrue(map.put(i, i % 16));
+        }
+        int wrong = 0;
+        for(int i = 0; i < size; i++) {
+            int value = map.get(i);
+            //found, though a key sharing its fingerprint and bucket may have replaced its value
+            assertTrue(value != CuckooFilterMap.ABSENT);
+            if(value != i % 16) {
+                wrong++;
+            }
+        }
+        assertTrue(wrong < 20);
+        int falsePositives = 0;
+        for(int i = size; i < size * 2; i++) {
+            if(map.get(i) != CuckooFilterMap.ABSENT) {
+                falsePositives++;
+            }
+        }
+        //about 8 / 2^16 of them
+        assertTrue(falsePositives < 20);
+    }
+
+    public void testReplaceRemove() {
+        CuckooFilterMap<String> map = new CuckooFilterMap<String>(4, 1024, 500, 16, 8);
+        assertEquals(CuckooFilterMap.ABSENT, map.get("a"));
+        assertFalse(map.remove("a"));
+        assertTrue(map.put("a", 0));
+        assertTrue(map.put("b", 255));
+        assertEquals(0, map.get("a"));
+        assertEquals(255, map.get("b"));
+        assertTrue(map.put("a", 7));
+        assertEquals(7, map.get("a"));
+        assertTrue(map.remove("a"));
+        assertEquals(CuckooFilterMap.ABSENT, map.get("a"));
+        assertEquals(255, map.get("b"));
+        try {
+            map.put("c", 256);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            map.put("c", -1);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testFullMap() {
+        CuckooFilterMap<Integer> map = new CuckooFilterMap<Integer>(2, 16, 50, 16, 3);
+        int key = 0;
+        while(map.put(key, key % 8)) {
+            key++;
+        }
+        //the failed put left the map as it was
+        assertEquals(CuckooFilterMap.ABSENT, map.get(key));
+        for(int i = 0; i < key; i++) {
+            assertTrue(map.get(i) != CuckooFilterMap.ABSENT);
+        }
+        //keys already in can still be replaced
+        assertTrue(map.put(0, 5));
+        assertEquals(5, map.get(0));
+    }
+}
@@ -2,7 +2,19 @@ package com.github.mfondo;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -142,14 +154,705 @@ public class CuckooFilterTest extends TestCase {
         for(int i = 0; i < 1000; i++) {
             String val = Integer.toString((int) (Math.random() * 1000));
             vals.add(val);
-            cuckooFilter.add(val);
-            if(!cuckooFilter.contains(val)) {
+            if(cuckooFilter.add(val) && !cuckooFilter.contains(val)) {
                 falsePositives++;
             }
             //todo also check for elements not in the list
         }
-        //todo this shows that something is wrong if > 0
-        System.out.println("False positives " + falsePositives);
+        //an element that was added can no longer go missing, the victim slot keeps what a failed add kicks out
+        assertEquals(0, falsePositives);
+    }
+
+    public void testOffHeap() {
+        //consecutive keys are fine: the bucket index scales the lower 32 bits of their Murmur3 hash
+        CuckooFilter<Integer> cuckooFilter = new CuckooFilter<Integer>(4, 1024, 500, 12, true);
+        for(int i = 0; i < 2000; i++) {
+            assertTrue(cuckooFilter.add(i));
+        }
+        for(int i = 0; i < 2000; i++) {
+            assertTrue(cuckooFilter.contains(i));
+        }
+        for(int i = 0; i < 2000; i += 2) {
+            assertTrue(cuckooFilter.remove(i));
+        }
+        for(int i = 1; i < 2000; i += 2) {
+            assertTrue(cuckooFilter.contains(i));
+        }
+        cuckooFilter.close();
+        try {
+            cuckooFilter.contains(1);
+            fail();
+        } catch(IllegalStateException e) {
+            //expected
+        }
+    }
+
+    public void testOffHeapStorageAcrossChunks() {
+        //bits that straddle the boundary between two direct buffers
+        OffHeapFilterStorage storage = new OffHeapFilterStorage((1L << 28) + 1);
+        try {
+            long bitOffset = (1L << 28) * Integer.SIZE - 5;
+            CuckooFilter.setBits(storage, bitOffset, 12, 0xABC);
+            assertEquals(0xABC, CuckooFilter.getBits(storage, bitOffset, 12));
+            assertEquals(0xABC >>> 5, storage.getInt(1L << 28));
+        } finally {
+            storage.close();
+        }
+    }
+
+    public void testMappedFile() throws IOException {
+        File file = File.createTempFile("cuckoo", ".filter");
+        file.deleteOnExit();
+        CuckooFilter<Integer> cuckooFilter = CuckooFilter.create(file, 4, 1024, 500, 12, 0x5EED);
+        for(int i = 0; i < 2000; i++) {
+            assertTrue(cuckooFilter.add(i * 0x9E3779B9));
+        }
+        cuckooFilter.force();
+        cuckooFilter.close();
+
+        cuckooFilter = CuckooFilter.open(file, false);
+        for(int i = 0; i < 2000; i++) {
+            assertTrue(cuckooFilter.contains(i * 0x9E3779B9));
+        }
+        try {
+            cuckooFilter.add(-1);
+            fail();
+        } catch(ReadOnlyBufferException e) {
+            //expected
+        }
+        cuckooFilter.close();
+
+        //update in place
+        cuckooFilter = CuckooFilter.open(file, true);
+        for(int i = 0; i < 2000; i += 2) {
+            assertTrue(cuckooFilter.remove(i * 0x9E3779B9));
+        }
+        cuckooFilter.close();
+        cuckooFilter = CuckooFilter.open(file, false);
+        int falsePositives = 0;
+        for(int i = 0; i < 2000; i++) {
+            if(i % 2 == 1) {
+                assertTrue(cuckooFilter.contains(i * 0x9E3779B9));
+            } else if(cuckooFilter.contains(i * 0x9E3779B9)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 20);
+        cuckooFilter.close();
+    }
+
+    public void testWriteToReadFrom() throws IOException {
+        CuckooFilter<Integer> cuckooFilter = new CuckooFilter<Integer>(4, 1 << 14, 500, 16);
+        for(int i = 0; i < 40000; i++) {
+            assertTrue(cuckooFilter.add(i));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cuckooFilter.writeTo(Channels.newChannel(out));
+
+        for(boolean offHeap : new boolean[] {false, true}) {
+            CuckooFilter<Integer> read = CuckooFilter.readFrom(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), offHeap);
+            for(int i = 0; i < 40000; i++) {
+                assertTrue(read.contains(i));
+            }
+            //same format both ways
+            ByteArrayOutputStream again = new ByteArrayOutputStream();
+            read.writeTo(Channels.newChannel(again));
+            assertTrue(Arrays.equals(out.toByteArray(), again.toByteArray()));
+            read.close();
+        }
+
+        //a stream can be mapped once written to a file
+        File file = File.createTempFile("cuckoo", ".filter");
+        file.deleteOnExit();
+        FileOutputStream fileOut = new FileOutputStream(file);
+        try {
+            fileOut.write(out.toByteArray());
+        } finally {
+            fileOut.close();
+        }
+        CuckooFilter<Integer> mapped = CuckooFilter.open(file, false);
+        for(int i = 0; i < 40000; i++) {
+            assertTrue(mapped.contains(i));
+        }
+        mapped.close();
+    }
+
+    public void testSnapshot() throws IOException {
+        CuckooFilter<Integer> cuckooFilter = new CuckooFilter<Integer>(4, 1 << 14, 500, 16);
+        for(int i = 0; i < 20000; i++) {
+            assertTrue(cuckooFilter.add(i * 0x9E3779B9));
+        }
+        CuckooFilter<Integer> snapshot = cuckooFilter.snapshot();
+        ByteArrayOutputStream before = new ByteArrayOutputStream();
+        snapshot.writeTo(Channels.newChannel(before));
+        for(int i = 20000; i < 40000; i++) {
+            assertTrue(cuckooFilter.add(i * 0x9E3779B9));
+        }
+        for(int i = 0; i < 20000; i += 2) {
+            assertTrue(cuckooFilter.remove(i * 0x9E3779B9));
+        }
+        ByteArrayOutputStream after = new ByteArrayOutputStream();
+        snapshot.writeTo(Channels.newChannel(after));
+        assertTrue(Arrays.equals(before.toByteArray(), after.toByteArray()));
+        for(int i = 0; i < 20000; i++) {
+            assertTrue(snapshot.contains(i * 0x9E3779B9));
+        }
+        //the first snapshot paged the filter's buckets, later ones share those pages
+        CuckooFilter<Integer> second = cuckooFilter.snapshot();
+        assertTrue(cuckooFilter.add(-1));
+        assertFalse(second.contains(-1));
+        for(int i = 1; i < 40000; i += 2) {
+            assertTrue(second.contains(i * 0x9E3779B9));
+        }
+
+        CuckooFilter<Integer> offHeap = new CuckooFilter<Integer>(4, 1024, 500, 12, true);
+        try {
+            offHeap.snapshot();
+            fail();
+        } catch(UnsupportedOperationException e) {
+            //expected
+        } finally {
+            offHeap.close();
+        }
+    }
+
+    public void testSemiSortedBucket() {
+        //random adds and removes on one bucket against a list of the fingerprints it should hold
+        for(int fingerprintBits : new int[] {4, 5, 12, 32}) {
+            SemiSortedBucketLayout layout = new SemiSortedBucketLayout(4, fingerprintBits);
+            HeapFilterStorage data = new HeapFilterStorage(new int[8]);
+            List<Integer> expected = new ArrayList<Integer>();
+            Random random = new Random(fingerprintBits);
+            for(int n = 0; n < 5000; n++) {
+                int fingerprint = layout.fingerprint(random.nextInt() & (int) ((1L << fingerprintBits) - 1));
+                if(random.nextBoolean()) {
+                    assertEquals(expected.size() < 4, layout.add(data, 3, fingerprint));
+                    if(expected.size() < 4) {
+                        expected.add(fingerprint);
+                    }
+                } else if(!expected.isEmpty() && random.nextBoolean()) {
+                    Integer existing = expected.get(random.nextInt(expected.size()));
+                    assertTrue(layout.remove(data, 3, existing));
+                    expected.remove(existing);
+                } else {
+                    assertEquals(expected.contains(fingerprint), layout.remove(data, 3, fingerprint));
+                    expected.remove((Integer) fingerprint);
+                }
+                for(Integer existing : expected) {
+                    assertTrue(layout.contains(data, 3, existing));
+                }
+            }
+        }
+    }
+
+    public void testSemiSorted() throws IOException {
+        //consecutive keys spread over every bucket, as the bucket index comes from their Murmur3 hash
+        CuckooFilter<Integer> bitPacked = new CuckooFilter<Integer>(CuckooFilter.Layout.BIT_PACKED, 4, 4096, 500, 12, false);
+        CuckooFilter<Integer> semiSorted = new CuckooFilter<Integer>(CuckooFilter.Layout.SEMI_SORTED, 4, 4096, 500, 12, false);
+        final int n = 4096 * 4 * 8 / 10;
+        for(int i = 0; i < n; i++) {
+            assertTrue(bitPacked.add(i));
+            assertTrue(semiSorted.add(i));
+        }
+        for(int i = 0; i < n; i++) {
+            assertTrue(semiSorted.contains(i));
+        }
+        //same false positive rate
+        int bitPackedFalsePositives = 0;
+        int semiSortedFalsePositives = 0;
+        for(int i = n; i < n + 200000; i++) {
+            if(bitPacked.contains(i)) {
+                bitPackedFalsePositives++;
+            }
+            if(semiSorted.contains(i)) {
+                semiSortedFalsePositives++;
+            }
+        }
+        assertTrue(bitPackedFalsePositives > 0);
+        assertTrue(Math.abs(semiSortedFalsePositives - bitPackedFalsePositives) < bitPackedFalsePositives / 4);
+        //smaller - 44 rather than 52 bits per bucket
+        ByteArrayOutputStream bitPackedBytes = new ByteArrayOutputStream();
+        bitPacked.writeTo(Channels.newChannel(bitPackedBytes));
+        ByteArrayOutputStream semiSortedBytes = new ByteArrayOutputStream();
+        semiSorted.writeTo(Channels.newChannel(semiSortedBytes));
+        assertEquals((4096 * 44 / 8) + 64, semiSortedBytes.size());
+        assertEquals((4096 * 52 / 8) + 64, bitPackedBytes.size());
+
+        CuckooFilter<Integer> read = CuckooFilter.readFrom(Channels.newChannel(new ByteArrayInputStream(semiSortedBytes.toByteArray())));
+        for(int i = 0; i < n; i += 2) {
+            assertTrue(read.remove(i));
+        }
+        for(int i = 1; i < n; i += 2) {
+            assertTrue(read.contains(i));
+        }
+
+        try {
+            new CuckooFilter<Integer>(CuckooFilter.Layout.SEMI_SORTED, 8, 4096, 500, 12, false);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testPackedBucket() {
+        //random adds and removes on buckets at every alignment the filter puts them at against the fingerprints they
+        //should hold
+        for(int[] config : new int[][] {{4, 8}, {4, 12}, {4, 16}, {8, 8}, {8, 16}, {16, 8}, {16, 16}}) {
+            int bucketEntries = config[0];
+            int fingerprintBits = config[1];
+            PackedBucketLayout layout = new PackedBucketLayout(bucketEntries, fingerprintBits);
+            int bucketBits = layout.bucketBits();
+            for(int bucketBitOffset = 0; bucketBitOffset < 256; bucketBitOffset += Integer.lowestOneBit(bucketBits)) {
+                HeapFilterStorage data = new HeapFilterStorage(new int[16]);
+                for(int i = 0; i < 16; i++) {
+                    data.setInt(i, -1);
+                }
+                //neighbours of the bucket are all one bits, which it must leave alone
+                for(int i = 0; i < bucketEntries; i++) {
+                    layout.swap(data, bucketBitOffset, i, 0);
+                }
+                List<Integer> expected = new ArrayList<Integer>();
+                Random random = new Random(bucketEntries * fingerprintBits + bucketBitOffset);
+                for(int n = 0; n < 5000; n++) {
+                    int fingerprint = layout.fingerprint(random.nextInt() & ((1 << fingerprintBits) - 1));
+                    if(random.nextBoolean()) {
+                        assertEquals(expected.size() < bucketEntries, layout.add(data, bucketBitOffset, fingerprint));
+                        if(expected.size() < bucketEntries) {
+                            expected.add(fingerprint);
+                        }
+                    } else if(!expected.isEmpty() && random.nextBoolean()) {
+                        Integer existing = expected.get(random.nextInt(expected.size()));
+                        assertTrue(layout.remove(data, bucketBitOffset, existing));
+                        expected.remove(existing);
+                    } else {
+                        assertEquals(expected.contains(fingerprint), layout.contains(data, bucketBitOffset, fingerprint));
+                        assertEquals(expected.contains(fingerprint), layout.remove(data, bucketBitOffset, fingerprint));
+                        expected.remove((Integer) fingerprint);
+                    }
+                    for(Integer existing : expected) {
+                        assertTrue(layout.contains(data, bucketBitOffset, existing));
+                    }
+                }
+                for(int bit = 0; bit < 512; bit++) {
+                    if(bit < bucketBitOffset || bit >= bucketBitOffset + bucketBits) {
+                        assertEquals(1, CuckooFilter.getBits(data, bit, 1));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testPacked() throws IOException {
+        for(int fingerprintBits : new int[] {8, 12, 16}) {
+            int numBuckets = 1 << Math.min(fingerprintBits, 12);
+            CuckooFilter<Integer> packed = new CuckooFilter<Integer>(CuckooFilter.Layout.PACKED, 4, numBuckets, 500, fingerprintBits, false);
+            final int n = numBuckets * 4 * 8 / 10;
+            for(int i = 0; i < n; i++) {
+                assertTrue(packed.add(i * 0x9E3779B9));
+            }
+            for(int i = 0; i < n; i++) {
+                assertTrue(packed.contains(i * 0x9E3779B9));
+            }
+            //no occupancy bits
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            packed.writeTo(Channels.newChannel(bytes));
+            assertEquals((numBuckets * 4 * fingerprintBits / 8) + 64, bytes.size());
+
+            CuckooFilter<Integer> read = CuckooFilter.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), true);
+            try {
+                for(int i = 0; i < n; i += 2) {
+                    assertTrue(read.remove(i * 0x9E3779B9));
+                }
+                for(int i = 1; i < n; i += 2) {
+                    assertTrue(read.contains(i * 0x9E3779B9));
+                }
+            } finally {
+                read.close();
+            }
+        }
+
+        try {
+            new CuckooFilter<Integer>(CuckooFilter.Layout.PACKED, 4, 4096, 500, 10, false);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+        //larger buckets of more than one word
+        CuckooFilter<Integer> wide = new CuckooFilter<Integer>(CuckooFilter.Layout.PACKED, 16, 256, 500, 8, false);
+        for(int i = 0; i < 256 * 16 * 9 / 10; i++) {
+            assertTrue(wide.add(i * 0x9E3779B9));
+        }
+        for(int i = 0; i < 256 * 16 * 9 / 10; i++) {
+            assertTrue(wide.contains(i * 0x9E3779B9));
+        }
+
+        try {
+            new CuckooFilter<Integer>(CuckooFilter.Layout.PACKED, 8, 4096, 500, 12, false);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            new CuckooFilter<Integer>(CuckooFilter.Layout.PACKED, 2, 4096, 500, 16, false);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testContainsAllAddAll() {
+        for(CuckooFilter.Layout layout : CuckooFilter.Layout.values()) {
+            CuckooFilter<Integer> filter = new CuckooFilter<Integer>(layout, 4, 4096, 500, 12, false);
+            //not a multiple of the batch size
+            Integer[] keys = new Integer[4096 * 4 * 8 / 10 + 5];
+            for(int i = 0; i < keys.length; i++) {
+                keys[i] = i * 0x9E3779B9;
+            }
+            assertEquals(keys.length, filter.addAll(keys));
+            Integer[] lookups = new Integer[keys.length * 2];
+            for(int i = 0; i < lookups.length; i++) {
+                lookups[i] = i * 0x9E3779B9;
+            }
+            boolean[] out = new boolean[lookups.length];
+            filter.containsAll(lookups, out);
+            for(int i = 0; i < lookups.length; i++) {
+                assertEquals(filter.contains(lookups[i]), out[i]);
+                if(i < keys.length) {
+                    assertTrue(out[i]);
+                }
+            }
+        }
+
+        CuckooFilter<Integer> filter = new CuckooFilter<Integer>(4, 4096, 500, 12);
+        try {
+            filter.containsAll(new Integer[] {1, 2}, new boolean[1]);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            filter.addAll(new Integer[] {1, null});
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testContainsAllLongsAddAllLongs() {
+        for(CuckooFilter.Layout layout : CuckooFilter.Layout.values()) {
+            CuckooFilter<Long> filter = new CuckooFilter<Long>(layout, 4, 4096, 500, 12, false, Murmur3.LONGS, 3);
+            //not a multiple of the batch size
+            long[] keys = new long[4096 * 4 * 8 / 10 + 5];
+            for(int i = 0; i < keys.length; i++) {
+                keys[i] = i * 0x9E3779B97F4A7C15L;
+            }
+            assertEquals(keys.length, filter.addAllLongs(keys));
+            long[] lookups = new long[keys.length * 2];
+            for(int i = 0; i < lookups.length; i++) {
+                lookups[i] = i * 0x9E3779B97F4A7C15L;
+            }
+            boolean[] out = new boolean[lookups.length];
+            filter.containsAllLongs(lookups, out);
+            for(int i = 0; i < lookups.length; i++) {
+                assertEquals(filter.containsLong(lookups[i]), out[i]);
+                assertEquals(filter.contains(lookups[i]), out[i]);
+                if(i < keys.length) {
+                    assertTrue(out[i]);
+                }
+            }
+        }
+
+        CuckooFilter<Long> filter = new CuckooFilter<Long>(4, 4096, 500, 12);
+        assertEquals(2, filter.addAllLongs(new long[] {1, 2}));
+        assertTrue(filter.containsLong(1));
+        try {
+            filter.containsAllLongs(new long[] {1, 2}, new boolean[1]);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testVictim() throws IOException {
+        //twice what fits, with few kicks so that kick chains fail early
+        CuckooFilter<Integer> filter = new CuckooFilter<Integer>(4, 64, 5, 8);
+        List<Integer> added = new ArrayList<Integer>();
+        for(int i = 0; i < 64 * 4 * 2; i++) {
+            if(filter.add(i * 0x9E3779B9)) {
+                added.add(i * 0x9E3779B9);
+            }
+        }
+        assertTrue(added.size() < 64 * 4 * 2);
+        //nothing that was added is lost to a failed kick chain
+        for(Integer value : added) {
+            assertTrue(filter.contains(value));
+        }
+
+        //the victim is kept by writeTo and readFrom
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(Channels.newChannel(bytes));
+        CuckooFilter<Integer> read = CuckooFilter.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        for(Integer value : added) {
+            assertTrue(read.contains(value));
+        }
+        //and removing everything, victim included, empties the filter
+        for(Integer value : added) {
+            assertTrue(read.remove(value));
+        }
+        for(Integer value : added) {
+            assertFalse(read.contains(value));
+        }
+
+        //and by a mapped file
+        File file = File.createTempFile("cuckoo", ".filter");
+        file.deleteOnExit();
+        CuckooFilter<Integer> mapped = CuckooFilter.create(file, 4, 64, 5, 8, 0);
+        added.clear();
+        for(int i = 0; i < 64 * 4 * 2; i++) {
+            if(mapped.add(i * 0x9E3779B9)) {
+                added.add(i * 0x9E3779B9);
+            }
+        }
+        mapped.force();
+        mapped.close();
+        CuckooFilter<Integer> reopened = CuckooFilter.open(file, false);
+        try {
+            for(Integer value : added) {
+                assertTrue(reopened.contains(value));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    public void testBreadthFirst() throws IOException {
+        for(CuckooFilter.Layout layout : CuckooFilter.Layout.values()) {
+            CuckooFilter<Integer> filter = new CuckooFilter<Integer>(layout, 4, 4096, 500, 12, false);
+            filter.setInsertStrategy(InsertStrategy.BREADTH_FIRST);
+            //95% full
+            final int n = 4096 * 4 * 95 / 100;
+            for(int i = 0; i < n; i++) {
+                assertTrue(filter.add(i * 0x9E3779B9));
+            }
+            for(int i = 0; i < n; i++) {
+                assertTrue(filter.contains(i * 0x9E3779B9));
+            }
+            //keep adding until an add fails, which must leave the filter as it was
+            int i = n;
+            ByteArrayOutputStream before = new ByteArrayOutputStream();
+            while(true) {
+                before.reset();
+                filter.writeTo(Channels.newChannel(before));
+                if(!filter.add(i * 0x9E3779B9)) {
+                    break;
+                }
+                i++;
+            }
+            ByteArrayOutputStream after = new ByteArrayOutputStream();
+            filter.writeTo(Channels.newChannel(after));
+            assertTrue(Arrays.equals(before.toByteArray(), after.toByteArray()));
+            for(int j = 0; j < i; j++) {
+                assertTrue(filter.contains(j * 0x9E3779B9));
+            }
+        }
+    }
+
+    public void testSequentialIntegers() {
+        //Integer.hashCode() is the value itself, so with the old hashing these all shared the first few buckets
+        CuckooFilter<Integer> filter = new CuckooFilter<Integer>(4, 1 << 16, 500, 8);
+        final int n = (1 << 16) * 4 * 90 / 100;
+        for(int i = 0; i < n; i++) {
+            assertTrue(filter.add(i));
+        }
+        for(int i = 0; i < n; i++) {
+            assertTrue(filter.contains(i));
+        }
+        //about 2 * 4 / 2^8 for a full filter
+        int falsePositives = 0;
+        for(int i = n; i < 2 * n; i++) {
+            if(filter.contains(i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < n * 4 / 100);
+    }
+
+    public void testHashFunction() throws IOException {
+        //by contents rather than identity
+        CuckooFilter<byte[]> bytes = new CuckooFilter<byte[]>(CuckooFilter.Layout.PACKED, 4, 1024, 500, 16, false, Murmur3.BYTES, 7);
+        assertTrue(bytes.add(new byte[] {1, 2, 3}));
+        assertTrue(bytes.contains(new byte[] {1, 2, 3}));
+        assertFalse(bytes.contains(new byte[] {1, 2, 4}));
+        assertTrue(bytes.remove(new byte[] {1, 2, 3}));
+        assertFalse(bytes.contains(new byte[] {1, 2, 3}));
+
+        //addLong hashes a long as Murmur3.LONGS does
+        CuckooFilter<Long> longs = new CuckooFilter<Long>(CuckooFilter.Layout.BIT_PACKED, 4, 1024, 500, 16, false, Murmur3.LONGS, 3);
+        for(long l = 0; l < 3000; l++) {
+            assertTrue(longs.addLong(l * 0x9E3779B97F4A7C15L));
+        }
+        for(long l = 0; l < 3000; l++) {
+            assertTrue(longs.contains(l * 0x9E3779B97F4A7C15L));
+            assertTrue(longs.containsLong(l * 0x9E3779B97F4A7C15L));
+        }
+        assertTrue(longs.remove(0L));
+        assertFalse(longs.containsLong(0));
+
+        //kept by snapshot and the file format, given the same hash function
+        CuckooFilter<byte[]> snapshot = bytes.snapshot();
+        snapshot.add(new byte[] {4, 5});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.writeTo(Channels.newChannel(out));
+        CuckooFilter<byte[]> read = CuckooFilter.readFrom(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), false, Murmur3.BYTES);
+        assertTrue(read.contains(new byte[] {4, 5}));
+    }
+
+    public void testByteRanges() {
+        //16 byte records packed in one array, and in a direct buffer at a different offset
+        final int n = 3000;
+        byte[] records = new byte[n * 16];
+        new Random(42).nextBytes(records);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(records.length + 3);
+        buffer.position(3);
+        buffer.put(records);
+        CuckooFilter<byte[]> filter = new CuckooFilter<byte[]>(CuckooFilter.Layout.PACKED, 4, 1024, 500, 16, false, Murmur3.BYTES, 0);
+        for(int i = 0; i < n; i++) {
+            assertTrue(filter.add(records, i * 16, 16));
+        }
+        for(int i = 0; i < n; i++) {
+            assertTrue(filter.contains(records, i * 16, 16));
+            assertTrue(filter.contains(buffer, 3 + i * 16, 16));
+            //the same as a byte[] of just those bytes
+            assertTrue(filter.contains(Arrays.copyOfRange(records, i * 16, i * 16 + 16)));
+        }
+        for(int i = 0; i < n; i += 2) {
+            assertTrue(filter.remove(buffer, 3 + i * 16, 16));
+        }
+        //apart from the odd false positive
+        int removedFound = 0;
+        for(int i = 0; i < n; i += 2) {
+            if(filter.contains(records, i * 16, 16)) {
+                removedFound++;
+            }
+        }
+        assertTrue(removedFound < 10);
+        assertEquals(records.length + 3, buffer.position());
+        try {
+            filter.contains(records, records.length - 15, 16);
+            fail();
+        } catch(IndexOutOfBoundsException e) {
+            //expected
+        }
+        try {
+            filter.add(buffer, -1, 16);
+            fail();
+        } catch(IndexOutOfBoundsException e) {
+            //expected
+        }
+    }
+
+    public void testReadHashCodeFilter() throws IOException {
+        //a version 1 stream, from before 64 bit hashing, of an empty filter
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CuckooFilter<Integer>(4, 1024, 500, 12).writeTo(Channels.newChannel(out));
+        byte[] bytes = out.toByteArray();
+        bytes[4] = 1;
+        bytes[52] = 0;
+        CuckooFilter<Integer> old = CuckooFilter.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        for(int i = 0; i < 500; i++) {
+            assertTrue(old.add(i));
+        }
+        //written again, it still hashes that way
+        out.reset();
+        old.writeTo(Channels.newChannel(out));
+        bytes = out.toByteArray();
+        assertEquals(CuckooFilterFile.VERSION, bytes[4]);
+        assertEquals(CuckooFilterFile.HASHING_HASH_CODE, bytes[52]);
+        CuckooFilter<Integer> read = CuckooFilter.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        for(int i = 0; i < 500; i++) {
+            assertTrue(read.contains(i));
+        }
+        //while read with 64 bit hashing, most of the keys are not found
+        bytes[52] = CuckooFilterFile.HASHING_64;
+        read = CuckooFilter.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        int found = 0;
+        for(int i = 0; i < 500; i++) {
+            if(read.contains(i)) {
+                found++;
+            }
+        }
+        assertTrue(found < 100);
+    }
+
+    public void testStats() {
+        for(CuckooFilter.Layout layout : CuckooFilter.Layout.values()) {
+            CuckooFilter<Integer> filter = new CuckooFilter<Integer>(layout, 4, 1024, 500, 16, false);
+            filter.setStatsEnabled(true);
+            //about 73% of the entries, which all fit
+            for(int i = 0; i < 3000; i++) {
+                assertTrue(filter.add(i));
+            }
+            CuckooStatsSnapshot stats = filter.stats();
+            assertEquals(3000, stats.getInserts());
+            assertEquals(0, stats.getFailedInserts());
+            assertEquals(0, stats.getResizes());
+            assertTrue(stats.getKickHistogram()[0] > 2000);
+            assertEquals(3000.0 / 4096, stats.getLoadFactor());
+            long[] occupancy = stats.getOccupancyHistogram();
+            assertEquals(5, occupancy.length);
+            assertEquals(1024, occupancy[0] + occupancy[1] + occupancy[2] + occupancy[3] + occupancy[4]);
+            assertEquals(3000, occupancy[1] + 2 * occupancy[2] + 3 * occupancy[3] + 4 * occupancy[4]);
+            //about 8 * load / 2^16
+            assertTrue(stats.getEstimatedFalsePositiveRate() > 5.0 / 65536 && stats.getEstimatedFalsePositiveRate() < 6.0 / 65536);
+
+            //filling it makes kicks fail
+            int i = 3000;
+            while(filter.add(i)) {
+                i++;
+            }
+            stats = filter.stats();
+            assertEquals(i - 3000 + 1, stats.getInserts() - 3000 + stats.getFailedInserts());
+            assertTrue(stats.getFailedInserts() >= 2);
+            long kicked = 0;
+            for(int k = 1; k < stats.getKickHistogram().length; k++) {
+                kicked += stats.getKickHistogram()[k];
+            }
+            assertTrue(kicked > 0);
+
+            filter.setStatsEnabled(false);
+            assertEquals(0, filter.stats().getInserts());
+            assertTrue(filter.stats().getLoadFactor() > 0.9);
+        }
+    }
+
+    public void testStatsNonPowerOf2Buckets() {
+        //alternate buckets go up to 128, past the 100 asked for, so that is what the stats cover
+        CuckooFilter<Integer> filter = new CuckooFilter<Integer>(4, 100, 500, 16);
+        for(int i = 0; i < 380; i++) {
+            assertTrue(filter.add(i));
+        }
+        CuckooStatsSnapshot stats = filter.stats();
+        long[] occupancy = stats.getOccupancyHistogram();
+        assertEquals(128, occupancy[0] + occupancy[1] + occupancy[2] + occupancy[3] + occupancy[4]);
+        assertEquals(380, occupancy[1] + 2 * occupancy[2] + 3 * occupancy[3] + 4 * occupancy[4]);
+        assertEquals(380.0 / 512, stats.getLoadFactor());
+    }
+
+    public void testOpenInvalidFile() throws IOException {
+        File file = File.createTempFile("cuckoo", ".filter");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[100]);
+        } finally {
+            out.close();
+        }
+        try {
+            CuckooFilter.open(file, false);
+            fail();
+        } catch(IOException e) {
+            //expected
+        }
     }
 
     //reverse of CuckooFilter.toBitString()
@@ -0,0 +1,146 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+public class CuckooHashMapTest extends TestCase {
+
+    public void testPutGetRemove() {
+        final CuckooHashSet.HashFunction<Integer> intHashFunction = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                integer = ((integer >>> 16) ^ integer) * 0x45d9f3b;
+                integer = ((integer >>> 16) ^ integer) * 0x45d9f3b;
+                integer = ((integer >>> 16) ^ integer);
+                return integer;
+            }
+        };
+        runTests(new CuckooHashMap<Integer, String>(100, 0.9f, intHashFunction));
+        runTests(new CuckooHashMap<Integer, String>(100, 0.9f, new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return integer;
+            }
+        }, intHashFunction));
+    }
+
+    public void testEntries() {
+        Map<String, Integer> cuckooMap = new CuckooHashMap<String, Integer>(100, 0.9f);
+        for(int i = 0; i < 100; i++) {
+            cuckooMap.put(Integer.toString(i), i);
+        }
+        for(Map.Entry<String, Integer> entry : cuckooMap.entrySet()) {
+            entry.setValue(entry.getValue() * 2);
+        }
+        for(int i = 0; i < 100; i++) {
+            assertEquals(i * 2, (int) cuckooMap.get(Integer.toString(i)));
+        }
+        Iterator<Map.Entry<String, Integer>> iterator = cuckooMap.entrySet().iterator();
+        while(iterator.hasNext()) {
+            if(iterator.next().getValue() % 4 == 0) {
+                iterator.remove();
+            }
+        }
+        assertEquals(50, cuckooMap.size());
+        for(int i = 0; i < 100; i++) {
+            assertEquals(i % 2 != 0, cuckooMap.containsKey(Integer.toString(i)));
+        }
+        cuckooMap.put("null", null);
+        assertTrue(cuckooMap.containsKey("null"));
+        assertNull(cuckooMap.get("null"));
+        assertNull(cuckooMap.remove("missing"));
+        assertEquals(51, cuckooMap.size());
+    }
+
+    /**
+     * Entries keep writing through after the map resizes, while the iterator fails fast
+     */
+    public void testResizeDuringIteration() {
+        Map<String, Integer> cuckooMap = new CuckooHashMap<String, Integer>(100, 0.9f);
+        for(int i = 0; i < 10; i++) {
+            cuckooMap.put(Integer.toString(i), i);
+        }
+        Iterator<Map.Entry<String, Integer>> iterator = cuckooMap.entrySet().iterator();
+        Map.Entry<String, Integer> entry = iterator.next();
+        for(int i = 10; i < 1000; i++) {
+            cuckooMap.put(Integer.toString(i), i);
+        }
+        assertEquals(Integer.valueOf(entry.getKey()), entry.setValue(-1));
+        assertEquals(-1, (int) cuckooMap.get(entry.getKey()));
+        try {
+            iterator.remove();
+            fail();
+        } catch(ConcurrentModificationException e) {
+            //expected
+        }
+        try {
+            iterator.next();
+            fail();
+        } catch(ConcurrentModificationException e) {
+            //expected
+        }
+        assertEquals(1000, cuckooMap.size());
+        //an entry whose key was removed no longer writes to the map
+        cuckooMap.remove(entry.getKey());
+        entry.setValue(-2);
+        assertFalse(cuckooMap.containsKey(entry.getKey()));
+        //nor does one from a slot past the end of the table clear shrinks it to
+        Map.Entry<String, Integer> last = null;
+        for(Map.Entry<String, Integer> e : cuckooMap.entrySet()) {
+            last = e;
+        }
+        cuckooMap.clear();
+        last.setValue(-3);
+        assertTrue(cuckooMap.isEmpty());
+    }
+
+    /**
+     * Keys whose hashes all collide cannot be placed in any table size - put gives up instead of growing forever
+     */
+    public void testCollidingHashes() {
+        CuckooHashSet.HashFunction<String> constant = new CuckooHashSet.HashFunction<String>() {
+            @Override
+            public int hash(String s) {
+                return 7;
+            }
+        };
+        Map<String, Integer> cuckooMap = new CuckooHashMap<String, Integer>(100, 0.9f, constant, constant);
+        cuckooMap.put("a", 1);
+        cuckooMap.put("b", 2);
+        try {
+            cuckooMap.put("c", 3);
+            fail();
+        } catch(IllegalStateException e) {
+            //expected
+        }
+        assertEquals(2, cuckooMap.size());
+    }
+
+    private void runTests(Map<Integer, String> cuckooMap) {
+        final Map<Integer, String> hashMap = new HashMap<Integer, String>();
+        final Random random = new Random(1);
+        for(int i = 0; i < 20000; i++) {
+            int key = random.nextInt(5000) - 2500;
+            if(random.nextFloat() > 0.25f) {
+                String value = Integer.toString(random.nextInt());
+                assertEquals(hashMap.put(key, value), cuckooMap.put(key, value));
+            } else {
+                assertEquals(hashMap.remove(key), cuckooMap.remove(key));
+            }
+            assertEquals(hashMap.size(), cuckooMap.size());
+        }
+        for(int i = -2500; i < 2500; i++) {
+            assertEquals(hashMap.get(i), cuckooMap.get(i));
+        }
+        assertEquals(hashMap, cuckooMap);
+        assertEquals(cuckooMap, hashMap);
+        cuckooMap.clear();
+        assertTrue(cuckooMap.isEmpty());
+        assertNull(cuckooMap.get(1));
+    }
+}
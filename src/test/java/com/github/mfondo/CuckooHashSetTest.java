@@ -1,9 +1,22 @@
 package com.github.mfondo;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 import junit.framework.TestCase;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -42,6 +55,369 @@ public class CuckooHashSetTest extends TestCase {
 
         cuckooSet = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, intHashFunction);
         runTests(cuckooSet);
+
+        cuckooSet = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, intHashFunction, null);
+        runTests(cuckooSet);
+
+        cuckooSet = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, intHashFunction, null, true);
+        runTests(cuckooSet);
+
+        CuckooHashSet<Integer> breadthFirst = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, intHashFunction);
+        breadthFirst.setInsertStrategy(InsertStrategy.BREADTH_FIRST);
+        runTests(breadthFirst);
+    }
+
+    public void testIncrementalResize() {
+        CuckooHashSet<Integer> cuckooSet = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return integer * 0x9E3779B9;
+            }
+        }, null, true);
+        Set<Integer> expected = new HashSet<Integer>();
+        int resizingAdds = 0;
+        for(int i = 0; i < 50000; i++) {
+            assertTrue(cuckooSet.add(i));
+            expected.add(i);
+            if(cuckooSet.isResizing()) {
+                resizingAdds++;
+                //elements in either table are found, and none twice
+                if(i % 97 == 0) {
+                    assertEquals(expected, new HashSet<Integer>(cuckooSet));
+                    assertEquals(expected.size(), Iterators.size(cuckooSet.iterator()));
+                    assertTrue(cuckooSet.contains(i / 2));
+                    assertFalse(cuckooSet.add(i / 2));
+                }
+                //removes from either table
+                if(i % 3 == 0) {
+                    assertTrue(cuckooSet.remove(i / 3));
+                    expected.remove(i / 3);
+                    assertFalse(cuckooSet.contains(i / 3));
+                }
+            }
+        }
+        assertTrue(resizingAdds > 0);
+        assertEquals(expected.size(), cuckooSet.size());
+        assertEquals(expected, new HashSet<Integer>(cuckooSet));
+
+        //a snapshot taken mid-resize is unaffected by the rest of the move
+        while(!cuckooSet.isResizing()) {
+            cuckooSet.add(expected.size() * 7 + 1000000);
+            expected.add(expected.size() * 7 + 1000000);
+        }
+        CuckooHashSet<Integer> snapshot = cuckooSet.snapshot();
+        Set<Integer> snapshotExpected = new HashSet<Integer>(expected);
+        for(int i = 0; i < 10000; i++) {
+            cuckooSet.add(-i - 1);
+        }
+        assertFalse(cuckooSet.isResizing());
+        assertEquals(snapshotExpected, snapshot);
+        assertTrue(snapshot.isResizing());
+    }
+
+    public void testSnapshot() {
+        CuckooHashSet<Integer> cuckooSet = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return integer * 0x9E3779B9;
+            }
+        }, null);
+        for(int i = 0; i < 1000; i++) {
+            cuckooSet.add(i);
+        }
+        CuckooHashSet<Integer> snapshot = cuckooSet.snapshot();
+        Set<Integer> expected = new HashSet<Integer>(cuckooSet);
+        for(int i = 0; i < 1000; i += 2) {
+            assertTrue(cuckooSet.remove(i));
+        }
+        //enough to resize the live set
+        for(int i = 1000; i < 5000; i++) {
+            cuckooSet.add(i);
+        }
+        assertEquals(expected, snapshot);
+        assertEquals(1000, snapshot.size());
+
+        //the snapshot can be changed too, without affecting the live set
+        assertTrue(snapshot.remove(1));
+        assertTrue(snapshot.add(-1));
+        assertTrue(cuckooSet.contains(1));
+        assertFalse(cuckooSet.contains(-1));
+        assertEquals(500 + 4000, cuckooSet.size());
+    }
+
+    public void testBucketizedLoad() {
+        final CuckooHashSet.HashFunction<Integer> hashFunction1 = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return integer * 0x9E3779B9;
+            }
+        };
+        final CuckooHashSet.HashFunction<Integer> hashFunction2 = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                //murmur3 finalizer
+                int h = integer;
+                h ^= h >>> 16;
+                h *= 0x85ebca6b;
+                h ^= h >>> 13;
+                h *= 0xc2b2ae35;
+                h ^= h >>> 16;
+                return h;
+            }
+        };
+        final int n = 14000;
+        CuckooHashSet<Integer> plain = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, hashFunction1, hashFunction2);
+        CuckooHashSet<Integer> bucketized = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, hashFunction1, hashFunction2);
+        for(int i = 0; i < n; i++) {
+            assertTrue(plain.add(i));
+            assertTrue(bucketized.add(i));
+        }
+        for(int i = 0; i < n; i++) {
+            assertTrue(plain.contains(i));
+            assertTrue(bucketized.contains(i));
+        }
+        assertEquals(n, bucketized.size());
+        //85% full, which plain cuckoo hashing cannot reach
+        assertEquals(16384, bucketized.tableLength());
+        assertTrue(plain.tableLength() >= 32768);
+    }
+
+    public void testBreadthFirst() {
+        final CuckooHashSet.HashFunction<Integer> hashFunction1 = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return integer * 0x9E3779B9;
+            }
+        };
+        final CuckooHashSet.HashFunction<Integer> hashFunction2 = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                //murmur3 finalizer
+                int h = integer;
+                h ^= h >>> 16;
+                h *= 0x85ebca6b;
+                h ^= h >>> 13;
+                h *= 0xc2b2ae35;
+                h ^= h >>> 16;
+                return h;
+            }
+        };
+        //loadFactor above 1 so that only a failed insert resizes
+        for(int bucketEntries : new int[] {1, 4}) {
+            CuckooHashSet<Integer> cuckooSet = new CuckooHashSet<Integer>(Integer.class, 500, 2f, bucketEntries, hashFunction1, hashFunction2);
+            cuckooSet.setInsertStrategy(InsertStrategy.BREADTH_FIRST);
+            final int n = 15000;
+            for(int i = 0; i < n; i++) {
+                assertTrue(cuckooSet.add(i));
+            }
+            assertEquals(n, cuckooSet.size());
+            for(int i = 0; i < n; i++) {
+                assertTrue(cuckooSet.contains(i));
+            }
+            Set<Integer> expected = new HashSet<Integer>();
+            for(int i = 0; i < n; i++) {
+                expected.add(i);
+            }
+            assertEquals(expected, new HashSet<Integer>(cuckooSet));
+            if(bucketEntries == 4) {
+                //over 90% full
+                assertEquals(16384, cuckooSet.tableLength());
+            }
+        }
+    }
+
+    public void testDAry() {
+        List<CuckooHashSet.HashFunction<Integer>> hashFunctions = new ArrayList<CuckooHashSet.HashFunction<Integer>>();
+        for(int i = 0; i < 4; i++) {
+            final int seed = i * 0x9E3779B9;
+            hashFunctions.add(new CuckooHashSet.HashFunction<Integer>() {
+                @Override
+                public int hash(Integer integer) {
+                    //murmur3 finalizer
+                    int h = integer ^ seed;
+                    h ^= h >>> 16;
+                    h *= 0x85ebca6b;
+                    h ^= h >>> 13;
+                    h *= 0xc2b2ae35;
+                    h ^= h >>> 16;
+                    return h;
+                }
+            });
+        }
+        //loadFactor above 1 so that only a failed insert resizes
+        for(int k = 3; k <= 4; k++) {
+            CuckooHashSet<Integer> cuckooSet = new CuckooHashSet<Integer>(Integer.class, 500, 2f, 1, hashFunctions.subList(0, k), false);
+            //85% full, which 2 hash functions cannot reach with one entry per bucket
+            final int n = (int) (k * 4096 * 0.85f);
+            Set<Integer> expected = new HashSet<Integer>();
+            for(int i = 0; i < n; i++) {
+                assertTrue(cuckooSet.add(i));
+                expected.add(i);
+            }
+            assertEquals(n, cuckooSet.size());
+            assertEquals(k * 4096, cuckooSet.tableLength());
+            assertEquals(expected, new HashSet<Integer>(cuckooSet));
+            for(int i = 0; i < n; i += 2) {
+                assertTrue(cuckooSet.remove(i));
+                assertFalse(cuckooSet.contains(i));
+                assertTrue(cuckooSet.contains(i + 1));
+            }
+            //growing keeps the table a multiple of k partitions
+            for(int i = n; i < 2 * n; i++) {
+                assertTrue(cuckooSet.add(i));
+            }
+            assertEquals(0, cuckooSet.tableLength() % k);
+            runTests(new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 1, hashFunctions.subList(0, k), true));
+            CuckooHashSet<Integer> breadthFirst = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, hashFunctions.subList(0, k), false);
+            breadthFirst.setInsertStrategy(InsertStrategy.BREADTH_FIRST);
+            runTests(breadthFirst);
+        }
+        try {
+            new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 1, hashFunctions.subList(0, 1), false);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testStash() {
+        //every element hashes to the same two buckets, so only two fit in the table
+        final CuckooHashSet.HashFunction<Integer> constant = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return 7;
+            }
+        };
+        final CuckooHashSet.HashFunction<Integer> constant2 = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return 3;
+            }
+        };
+        CuckooHashSet<Integer> cuckooSet = new CuckooHashSet<Integer>(Integer.class, 100, 2f, constant, constant2);
+        final int tableLength = cuckooSet.tableLength();
+        Set<Integer> expected = new HashSet<Integer>();
+        for(int i = 0; i < 6; i++) {
+            assertTrue(cuckooSet.add(i));
+            expected.add(i);
+        }
+        assertEquals(tableLength, cuckooSet.tableLength());
+        assertEquals(6, cuckooSet.size());
+        assertEquals(expected, new HashSet<Integer>(cuckooSet));
+        assertEquals(6, Iterators.size(cuckooSet.iterator()));
+        for(int i = 0; i < 6; i++) {
+            assertTrue(cuckooSet.contains(i));
+            assertFalse(cuckooSet.add(i));
+        }
+        assertFalse(cuckooSet.contains(6));
+
+        //a snapshot has its own stash
+        CuckooHashSet<Integer> snapshot = cuckooSet.snapshot();
+
+        //removing from the table moves a stashed element back into it
+        for(int i = 0; i < 6; i++) {
+            assertTrue(cuckooSet.remove(i));
+            expected.remove(i);
+            assertFalse(cuckooSet.contains(i));
+            assertEquals(expected, new HashSet<Integer>(cuckooSet));
+        }
+        assertTrue(cuckooSet.isEmpty());
+        assertTrue(cuckooSet.add(10));
+        assertEquals(tableLength, cuckooSet.tableLength());
+        assertEquals(6, snapshot.size());
+        for(int i = 0; i < 6; i++) {
+            assertTrue(snapshot.contains(i));
+        }
+
+        snapshot.clear();
+        assertFalse(snapshot.contains(5));
+        assertTrue(snapshot.isEmpty());
+    }
+
+    /**
+     * Elements whose hashes all collide cannot be placed in any table size - add gives up instead of growing forever
+     */
+    public void testCollidingHashes() {
+        CuckooHashSet.HashFunction<Integer> constant = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return 7;
+            }
+        };
+        for(boolean incrementalResize : new boolean[] {false, true}) {
+            CuckooHashSet<Integer> cuckooSet = new CuckooHashSet<Integer>(Integer.class, 10, 0.9f, 1, constant, constant, incrementalResize);
+            try {
+                for(int i = 0; i < 20; i++) {
+                    cuckooSet.add(i);
+                }
+                fail();
+            } catch(IllegalStateException e) {
+                //expected
+            }
+            //the initial 16 slots, doubled at most 6 times
+            assertTrue(cuckooSet.tableLength() <= 1024);
+        }
+    }
+
+    public void testStats() throws Exception {
+        CuckooHashSet<Integer> cuckooSet = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return integer.hashCode();
+            }
+        }, null);
+        for(int i = 0; i < 1000; i++) {
+            cuckooSet.add(i);
+        }
+        //nothing counted while disabled, but the table is read either way
+        CuckooStatsSnapshot stats = cuckooSet.stats();
+        assertEquals(0, stats.getInserts());
+        assertEquals(0, stats.getResizes());
+        assertTrue(stats.getLoadFactor() > 0 && stats.getLoadFactor() <= 0.9);
+        assertEquals(0.0, stats.getEstimatedFalsePositiveRate());
+        assertOccupancy(stats, cuckooSet.tableLength() / 4, 1000);
+
+        cuckooSet.setStatsEnabled(true);
+        for(int i = 1000; i < 100000; i++) {
+            cuckooSet.add(i);
+        }
+        stats = cuckooSet.stats();
+        //and the placements of resizes
+        assertTrue(stats.getInserts() >= 99000);
+        assertTrue(stats.getKickHistogram()[0] > 0);
+        assertTrue(stats.getResizes() > 0);
+        assertTrue(stats.getResizeNanos() > 0);
+        assertEquals(stats.getLoadFactor(), 100000.0 / cuckooSet.tableLength());
+        assertOccupancy(stats, cuckooSet.tableLength() / 4, 100000);
+        assertTrue(stats.toString().contains("resizes=" + stats.getResizes()));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.github.mfondo:type=CuckooHashSet,name=testStats");
+        server.registerMBean(cuckooSet.statsMXBean(), name);
+        try {
+            cuckooSet.add(-1);
+            assertEquals(stats.getInserts() + 1, server.getAttribute(name, "Inserts"));
+            assertEquals(stats.getResizes(), server.getAttribute(name, "Resizes"));
+            assertEquals(5, ((long[]) server.getAttribute(name, "OccupancyHistogram")).length);
+        } finally {
+            server.unregisterMBean(name);
+        }
+
+        cuckooSet.setStatsEnabled(false);
+        cuckooSet.add(-2);
+        assertEquals(0, cuckooSet.stats().getInserts());
+    }
+
+    private static void assertOccupancy(CuckooStatsSnapshot stats, int buckets, int elements) {
+        long[] occupancy = stats.getOccupancyHistogram();
+        long bucketCount = 0;
+        long elementCount = 0;
+        for(int i = 0; i < occupancy.length; i++) {
+            bucketCount += occupancy[i];
+            elementCount += i * occupancy[i];
+        }
+        assertEquals(buckets, bucketCount);
+        assertEquals(elements, elementCount);
     }
 
     private void runTests(Set<Integer> cuckooSet) {
@@ -139,4 +515,89 @@ public class CuckooHashSetTest extends TestCase {
         hashSet.clear();
         assertEquals(cuckooSet, hashSet);
     }
+
+    private static final CuckooHashSet.ElementCodec<Integer> INTEGER_CODEC = new CuckooHashSet.ElementCodec<Integer>() {
+        @Override
+        public void write(Integer integer, DataOutput out) throws IOException {
+            out.writeInt(integer);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    public void testWriteToReadFrom() throws IOException {
+        CuckooHashSet.HashFunction<Integer> hashFunction = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return integer * 0x9E3779B9;
+            }
+        };
+        CuckooHashSet<Integer> cuckooSet = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, hashFunction, null, true);
+        Set<Integer> expected = new HashSet<Integer>();
+        for(int i = 0; i < 50000 || !cuckooSet.isResizing(); i++) {
+            cuckooSet.add(i);
+            expected.add(i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cuckooSet.writeTo(Channels.newChannel(out), INTEGER_CODEC);
+        //whatever follows the set is left in the channel
+        out.write(42);
+
+        CuckooHashSet<Integer> read = new CuckooHashSet<Integer>(Integer.class, 100, 0.9f, 4, hashFunction, null, true);
+        read.add(-1);
+        ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(out.toByteArray()));
+        read.readFrom(in, INTEGER_CODEC);
+        assertEquals(42, Channels.newInputStream(in).read());
+        assertTrue(read.isResizing());
+        assertEquals(expected.size(), read.size());
+        assertEquals(expected, new HashSet<Integer>(read));
+        assertFalse(read.contains(-1));
+        //still usable after reading, and the resize carries on
+        for(int i = 0; i < 10000; i++) {
+            assertTrue(read.add(-i - 1));
+            expected.add(-i - 1);
+        }
+        assertFalse(read.isResizing());
+        assertEquals(expected, new HashSet<Integer>(read));
+
+        try {
+            read.readFrom(Channels.newChannel(new ByteArrayInputStream(new byte[24])), INTEGER_CODEC);
+            fail();
+        } catch(IOException e) {
+            //expected
+        }
+        assertEquals(expected.size(), read.size());
+    }
+
+    public void testWriteToReadFromStash() throws IOException {
+        final CuckooHashSet.HashFunction<Integer> constant = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return 7;
+            }
+        };
+        final CuckooHashSet.HashFunction<Integer> constant2 = new CuckooHashSet.HashFunction<Integer>() {
+            @Override
+            public int hash(Integer integer) {
+                return 3;
+            }
+        };
+        CuckooHashSet<Integer> cuckooSet = new CuckooHashSet<Integer>(Integer.class, 100, 2f, constant, constant2);
+        for(int i = 0; i < 6; i++) {
+            cuckooSet.add(i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cuckooSet.writeTo(Channels.newChannel(out), INTEGER_CODEC);
+        CuckooHashSet<Integer> read = new CuckooHashSet<Integer>(Integer.class, 100, 2f, constant, constant2);
+        read.readFrom(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), INTEGER_CODEC);
+        assertEquals(6, read.size());
+        for(int i = 0; i < 6; i++) {
+            assertTrue(read.contains(i));
+        }
+        assertTrue(read.remove(5));
+        assertFalse(read.contains(5));
+    }
 }
@@ -0,0 +1,141 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class IntCuckooHashSetTest extends TestCase {
+
+    public void testAddContainsRemove() {
+        runTests(new IntCuckooHashSet(100, 0.9f));
+        runTests(new IntCuckooHashSet(100, 0.9f, new IntCuckooHashSet.IntHashFunction() {
+            @Override
+            public int hash(int i) {
+                return i;
+            }
+        }));
+        runTests(new IntCuckooHashSet(100, 0.9f, new IntCuckooHashSet.IntHashFunction() {
+            @Override
+            public int hash(int i) {
+                return i;
+            }
+        }, new IntCuckooHashSet.IntHashFunction() {
+            @Override
+            public int hash(int i) {
+                return (int) ((i * 0x9E3779B97F4A7C15L) >>> 32);
+            }
+        }));
+    }
+
+    public void testZero() {
+        IntCuckooHashSet set = new IntCuckooHashSet(100, 0.9f);
+        assertFalse(set.contains(0));
+        assertFalse(set.remove(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertEquals(0, set.toArray()[0]);
+        assertTrue(set.remove(0));
+        assertFalse(set.contains(0));
+        assertTrue(set.isEmpty());
+    }
+
+    /**
+     * Elements whose hashes all collide cannot be placed in any table size - add gives up instead of growing forever
+     */
+    public void testCollidingHashes() {
+        IntCuckooHashSet.IntHashFunction constant = new IntCuckooHashSet.IntHashFunction() {
+            @Override
+            public int hash(int i) {
+                return 7;
+            }
+        };
+        IntCuckooHashSet set = new IntCuckooHashSet(100, 0.9f, constant, constant);
+        assertTrue(set.add(1));
+        assertTrue(set.add(2));
+        try {
+            set.add(3);
+            fail();
+        } catch(IllegalStateException e) {
+            //expected
+        }
+        assertEquals(2, set.size());
+    }
+
+    public void testLarge() {
+        IntCuckooHashSet set = new IntCuckooHashSet(100, 0.9f);
+        final int n = 200000;
+        for(int i = 0; i < n; i++) {
+            assertTrue(set.add(i));
+        }
+        assertEquals(n, set.size());
+        for(int i = 0; i < n; i++) {
+            assertTrue(set.contains(i));
+        }
+        assertFalse(set.contains(-1));
+        assertFalse(set.contains(n));
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(1));
+    }
+
+    public void testWriteToReadFrom() throws IOException {
+        IntCuckooHashSet set = new IntCuckooHashSet(100, 0.9f);
+        for(int i = 0; i < 50000; i += 3) {
+            set.add(i * 0x9E3779B9);
+        }
+        set.add(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        set.writeTo(Channels.newChannel(out));
+
+        IntCuckooHashSet read = new IntCuckooHashSet(100, 0.9f);
+        read.add(7);
+        read.readFrom(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(set.size(), read.size());
+        assertTrue(read.contains(0));
+        assertFalse(read.contains(7));
+        for(int i = 1; i < 50000; i++) {
+            assertEquals(set.contains(i * 0x9E3779B9), read.contains(i * 0x9E3779B9));
+        }
+        //still usable after reading
+        assertTrue(read.add(7));
+        assertTrue(read.remove(0));
+
+        try {
+            read.readFrom(Channels.newChannel(new ByteArrayInputStream(new byte[16])));
+            fail();
+        } catch(IOException e) {
+            //expected
+        }
+    }
+
+    private void runTests(IntCuckooHashSet cuckooSet) {
+        final Set<Integer> hashSet = new HashSet<Integer>();
+        final Random random = new Random(1);
+        for(int i = 0; i < 20000; i++) {
+            //small range so that adds and removes hit existing elements
+            int val = random.nextInt(5000) - 2500;
+            if(random.nextFloat() > 0.25f) {
+                assertEquals(hashSet.add(val), cuckooSet.add(val));
+            } else {
+                assertEquals(hashSet.remove(val), cuckooSet.remove(val));
+            }
+            assertEquals(hashSet.size(), cuckooSet.size());
+        }
+        for(int i = -2500; i < 2500; i++) {
+            assertEquals(hashSet.contains(i), cuckooSet.contains(i));
+        }
+        Set<Integer> fromArray = new HashSet<Integer>();
+        for(int i : cuckooSet.toArray()) {
+            fromArray.add(i);
+        }
+        assertEquals(hashSet, fromArray);
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IntObjectCuckooHashMapTest extends TestCase {
+
+    public void testPutGetRemove() {
+        runTests(new IntObjectCuckooHashMap<String>(100, 0.9f));
+        runTests(new IntObjectCuckooHashMap<String>(100, 0.9f, new IntCuckooHashSet.IntHashFunction() {
+            @Override
+            public int hash(int i) {
+                return i;
+            }
+        }));
+    }
+
+    public void testZeroKey() {
+        IntObjectCuckooHashMap<String> map = new IntObjectCuckooHashMap<String>(100, 0.9f);
+        assertFalse(map.containsKey(0));
+        assertNull(map.put(0, "a"));
+        assertEquals("a", map.put(0, "b"));
+        assertEquals("b", map.get(0));
+        assertEquals(1, map.size());
+        assertEquals("b", map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertTrue(map.isEmpty());
+    }
+
+    private void runTests(IntObjectCuckooHashMap<String> cuckooMap) {
+        final Map<Integer, String> hashMap = new HashMap<Integer, String>();
+        final Random random = new Random(1);
+        for(int i = 0; i < 20000; i++) {
+            int key = random.nextInt(5000) - 2500;
+            if(random.nextFloat() > 0.25f) {
+                String value = Integer.toString(random.nextInt());
+                assertEquals(hashMap.put(key, value), cuckooMap.put(key, value));
+            } else {
+                assertEquals(hashMap.remove(key), cuckooMap.remove(key));
+            }
+            assertEquals(hashMap.size(), cuckooMap.size());
+        }
+        for(int i = -2500; i < 2500; i++) {
+            assertEquals(hashMap.containsKey(i), cuckooMap.containsKey(i));
+            assertEquals(hashMap.get(i), cuckooMap.get(i));
+        }
+        int[] keys = cuckooMap.keys();
+        assertEquals(hashMap.size(), keys.length);
+        for(int key : keys) {
+            assertTrue(hashMap.containsKey(key));
+        }
+    }
+}
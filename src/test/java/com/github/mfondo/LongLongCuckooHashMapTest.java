@@ -0,0 +1,69 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongLongCuckooHashMapTest extends TestCase {
+
+    public void testPutGetRemove() {
+        runTests(new LongLongCuckooHashMap(100, 0.9f));
+        runTests(new LongLongCuckooHashMap(100, 0.9f, new LongCuckooHashSet.LongHashFunction() {
+            @Override
+            public int hash(long l) {
+                return (int) ((l * 0x9E3779B97F4A7C15L) >>> 32);
+            }
+        }));
+    }
+
+    public void testZeroKey() {
+        LongLongCuckooHashMap map = new LongLongCuckooHashMap(100, 0.9f);
+        assertFalse(map.containsKey(0));
+        assertEquals(-1L, map.get(0, -1L));
+        assertTrue(map.put(0, 5L));
+        assertFalse(map.put(0, 6L));
+        assertEquals(6L, map.get(0, -1L));
+        assertEquals(1, map.size());
+        assertTrue(map.remove(0));
+        assertFalse(map.remove(0));
+        assertTrue(map.isEmpty());
+    }
+
+    public void testLarge() {
+        LongLongCuckooHashMap map = new LongLongCuckooHashMap(100, 0.9f);
+        final int n = 200000;
+        for(long i = 0; i < n; i++) {
+            assertTrue(map.put(i << 32, i));
+        }
+        assertEquals(n, map.size());
+        for(long i = 0; i < n; i++) {
+            assertEquals(i, map.get(i << 32, -1L));
+        }
+        assertEquals(-1L, map.get(((long) n) << 32, -1L));
+    }
+
+    private void runTests(LongLongCuckooHashMap cuckooMap) {
+        final Map<Long, Long> hashMap = new HashMap<Long, Long>();
+        final Random random = new Random(1);
+        for(int i = 0; i < 20000; i++) {
+            long key = random.nextInt(5000) - 2500 + (random.nextBoolean() ? Integer.MAX_VALUE * 4L : 0L);
+            if(random.nextFloat() > 0.25f) {
+                long value = random.nextLong();
+                assertEquals(hashMap.put(key, value) == null, cuckooMap.put(key, value));
+            } else {
+                assertEquals(hashMap.remove(key) != null, cuckooMap.remove(key));
+            }
+            assertEquals(hashMap.size(), cuckooMap.size());
+        }
+        for(Map.Entry<Long, Long> entry : hashMap.entrySet()) {
+            assertEquals((long) entry.getValue(), cuckooMap.get(entry.getKey(), -1L));
+        }
+        long[] keys = cuckooMap.keys();
+        assertEquals(hashMap.size(), keys.length);
+        for(long key : keys) {
+            assertTrue(hashMap.containsKey(key));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.mfondo;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+public class Murmur3Test extends TestCase {
+
+    public void testMatchesGuava() {
+        Random random = new Random(42);
+        //not negative, which Guava treats differently
+        for(int seed : new int[] {0, 1, 42, Integer.MAX_VALUE}) {
+            HashFunction guava = Hashing.murmur3_128(seed);
+            //every tail length, and a few blocks
+            for(int length = 0; length <= 50; length++) {
+                byte[] bytes = new byte[length + 3];
+                random.nextBytes(bytes);
+                assertEquals(guava.hashBytes(bytes, 3, length).asLong(), Murmur3.hash64(bytes, 3, length, seed));
+            }
+            for(int i = 0; i < 1000; i++) {
+                long l = random.nextLong();
+                assertEquals(guava.hashLong(l).asLong(), Murmur3.hash64(l, seed));
+                assertEquals(guava.hashLong(l).asLong(), Murmur3.LONGS.hash(l, seed));
+                assertEquals(guava.hashInt((int) l).asLong(), Murmur3.hash64((int) l, seed));
+                assertEquals(guava.hashInt("x".hashCode()).asLong(), Murmur3.HASH_CODE.hash("x", seed));
+            }
+        }
+        assertEquals(Murmur3.BYTES.hash(new byte[] {1, 2, 3}, 7), Murmur3.BYTES.hash(new byte[] {1, 2, 3}, 7));
+    }
+
+    public void testByteBuffer() {
+        Random random = new Random(42);
+        byte[] bytes = new byte[100];
+        random.nextBytes(bytes);
+        ByteBuffer heap = ByteBuffer.wrap(bytes);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        direct.put(bytes);
+        direct.position(5);
+        for(int offset = 0; offset < 10; offset++) {
+            for(int length = 0; length <= 50; length++) {
+                long expected = Murmur3.hash64(bytes, offset, length, 42);
+                assertEquals(expected, Murmur3.hash64(heap, offset, length, 42));
+                assertEquals(expected, Murmur3.hash64(direct, offset, length, 42));
+            }
+        }
+        assertEquals(0, heap.position());
+        assertEquals(5, direct.position());
+        assertTrue(Murmur3.BYTES.hash(new byte[] {1, 2, 3}, 7) != Murmur3.BYTES.hash(new byte[] {1, 2, 3}, 8));
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+public class ScalableCuckooFilterTest extends TestCase {
+
+    public void testGrow() {
+        ScalableCuckooFilter<Integer> filter = new ScalableCuckooFilter<Integer>(4, 64, 50, 8);
+        //far more than the first filter's 256 entries
+        final int n = 20000;
+        for(int i = 0; i < n; i++) {
+            assertTrue(filter.add(i * 0x9E3779B9));
+        }
+        assertTrue(filter.filterCount() > 1);
+        for(int i = 0; i < n; i++) {
+            assertTrue(filter.contains(i * 0x9E3779B9));
+        }
+        //below twice the first filter's rate of about 2 * 4 / 2^8
+        int falsePositives = 0;
+        for(int i = n; i < n + 100000; i++) {
+            if(filter.contains(i * 0x9E3779B9)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100000 * 2 * 2 * 4 / 256);
+
+        assertTrue(filter.remove(0));
+        assertFalse(filter.contains(0));
+        filter.close();
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new ScalableCuckooFilter<Integer>(3, 64, 50, 8);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.mfondo;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShardedCuckooFilterTest extends TestCase {
+
+    public void testFilter() {
+        ShardedCuckooFilter<String> filter = new ShardedCuckooFilter<String>(4, CuckooFilter.Layout.BIT_PACKED, 4, 128, 50, 12, false);
+        for(int i = 0; i < 10; i++) {
+            String val = Integer.toString(i);
+            assertTrue(filter.add(val));
+            assertTrue(filter.contains(val));
+            assertTrue(filter.remove(val));
+            assertFalse(filter.contains(val));
+        }
+        filter.close();
+    }
+
+    public void testAddAll() {
+        int numBuckets = 1 << 12;
+        ShardedCuckooFilter<Integer> filter = new ShardedCuckooFilter<Integer>(8, CuckooFilter.Layout.BIT_PACKED, 4, numBuckets, 500, 16, false);
+        Integer[] keys = new Integer[numBuckets * 4 * 8 / 10];
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(keys.length, filter.addAll(keys, pool));
+        } finally {
+            pool.shutdown();
+        }
+        for(Integer key : keys) {
+            assertTrue(filter.contains(key));
+        }
+        //every shard got its share
+        for(int i = 0; i < 8; i++) {
+            long[] occupancy = filter.shard(i).stats().getOccupancyHistogram();
+            assertTrue(occupancy[0] < numBuckets / 8);
+        }
+        List<Integer> more = new ArrayList<Integer>();
+        for(int i = 0; i < 100; i++) {
+            more.add(-i - 1);
+        }
+        assertEquals(100, filter.addAll(more.stream()));
+        for(Integer key : more) {
+            assertTrue(filter.contains(key));
+        }
+        filter.close();
+    }
+
+    public void testConcurrentAdd() throws InterruptedException {
+        final ShardedCuckooFilter<Integer> filter = new ShardedCuckooFilter<Integer>(16, CuckooFilter.Layout.BIT_PACKED, 4, 1 << 14, 500, 16, false);
+        final int writers = 4;
+        final int perWriter = 10000;
+        final AtomicInteger rejected = new AtomicInteger();
+        Thread[] threads = new Thread[writers];
+        for(int w = 0; w < writers; w++) {
+            final int offset = w * perWriter;
+            threads[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < perWriter; i++) {
+                        if(!filter.add(offset + i)) {
+                            rejected.incrementAndGet();
+                        } else if(i % 3 == 0) {
+                            filter.remove(offset + i);
+                        }
+                    }
+                }
+            });
+        }
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, rejected.get());
+        for(int w = 0; w < writers; w++) {
+            for(int i = 1; i < perWriter; i += 3) {
+                assertTrue(filter.contains(w * perWriter + i));
+            }
+        }
+        filter.close();
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new ShardedCuckooFilter<String>(3, CuckooFilter.Layout.BIT_PACKED, 4, 128, 50, 12, false);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            new ShardedCuckooFilter<String>(256, CuckooFilter.Layout.BIT_PACKED, 4, 128, 50, 12, false);
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        }
+        ShardedCuckooFilter<String> filter = new ShardedCuckooFilter<String>(4, CuckooFilter.Layout.BIT_PACKED, 4, 128, 50, 12, false);
+        try {
+            filter.addAll(new String[]{"a", null});
+            fail();
+        } catch(IllegalArgumentException e) {
+            //expected
+        } finally {
+            filter.close();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.mfondo.vector;
+
+import com.github.mfondo.LaneMatcher;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link LaneMatcher} on the Vector API: loads a bucket's ints into one vector, or two on hardware with only 128 bit
+ * vectors, reinterprets them as byte or short lanes and compares them all with the broadcast fingerprint.
+ *
+ * Reinterpreting is in little-endian memory order on every platform, so lane 0 is the lowest bits of the first int as
+ * {@link LaneMatcher} requires.
+ */
+public final class VectorLaneMatcher implements LaneMatcher {
+
+    private static final int MIN_BITS = 128;
+
+    //by number of ints, 4 or 8
+    private final VectorSpecies<Integer> species4;
+    private final VectorSpecies<Integer> species8;
+
+    public VectorLaneMatcher() {
+        int maxBits = IntVector.SPECIES_PREFERRED.vectorBitSize();
+        if(maxBits < MIN_BITS) {
+            throw new UnsupportedOperationException("Vectors are only " + maxBits + " bits");
+        }
+        species4 = IntVector.SPECIES_128;
+        species8 = maxBits >= 256 ? IntVector.SPECIES_256 : IntVector.SPECIES_128;
+    }
+
+    @Override
+    public int indexOf(int[] data, int offset, int length, int laneBits, int value) {
+        VectorSpecies<Integer> species = length <= 4 ? species4 : species8;
+        int lanesPerInt = Integer.SIZE / laneBits;
+        for(int i = 0; i < length; i += species.length()) {
+            IntVector ints = IntVector.fromArray(species, data, offset + i);
+            VectorMask<?> equal;
+            if(laneBits == Byte.SIZE) {
+                equal = ints.reinterpretAsBytes().eq((byte) value);
+            } else {
+                equal = ints.reinterpretAsShorts().eq((short) value);
+            }
+            int first = equal.firstTrue();
+            if(first < equal.length()) {
+                return i * lanesPerInt + first;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.mfondo.vector;
+
+import com.github.mfondo.CuckooFilter;
+import com.github.mfondo.LaneMatcher;
+import junit.framework.TestCase;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.ServiceLoader;
+
+public class VectorLaneMatcherTest extends TestCase {
+
+    public void testIndexOf() {
+        VectorLaneMatcher matcher = new VectorLaneMatcher();
+        Random random = new Random(42);
+        for(int length : new int[] {4, 8}) {
+            for(int laneBits : new int[] {8, 16}) {
+                int lanes = length * Integer.SIZE / laneBits;
+                int[] data = new int[length + 3];
+                for(int n = 0; n < 10000; n++) {
+                    //few distinct values so that most lookups find something
+                    for(int i = 0; i < data.length; i++) {
+                        data[i] = random.nextInt() & 0x03030303;
+                    }
+                    int value = random.nextInt(4);
+                    assertEquals(scalarIndexOf(data, 3, lanes, laneBits, value), matcher.indexOf(data, 3, length, laneBits, value));
+                }
+            }
+        }
+    }
+
+    public void testServiceLoader() {
+        //the lookup the filter makes - without --add-modules jdk.incubator.vector it fails and the filter falls back to
+        //comparing a long at a time, which testFilter alone would not notice
+        Iterator<LaneMatcher> matchers = ServiceLoader.load(LaneMatcher.class, CuckooFilter.class.getClassLoader()).iterator();
+        assertTrue(matchers.hasNext());
+        assertTrue(matchers.next() instanceof VectorLaneMatcher);
+    }
+
+    public void testFilter() {
+        //the filter finds VectorLaneMatcher through ServiceLoader - see testServiceLoader
+        for(int fingerprintBits : new int[] {8, 16}) {
+            CuckooFilter<Integer> filter = new CuckooFilter<Integer>(CuckooFilter.Layout.PACKED, 16, 256, 500, fingerprintBits, false);
+            int n = 256 * 16 * 9 / 10;
+            for(int i = 0; i < n; i++) {
+                assertTrue(filter.add(i * 0x9E3779B9));
+            }
+            for(int i = 0; i < n; i++) {
+                assertTrue(filter.contains(i * 0x9E3779B9));
+            }
+            for(int i = 0; i < n; i += 2) {
+                assertTrue(filter.remove(i * 0x9E3779B9));
+            }
+            for(int i = 1; i < n; i += 2) {
+                assertTrue(filter.contains(i * 0x9E3779B9));
+            }
+        }
+    }
+
+    private static int scalarIndexOf(int[] data, int offset, int lanes, int laneBits, int value) {
+        int lanesPerInt = Integer.SIZE / laneBits;
+        for(int lane = 0; lane < lanes; lane++) {
+            int bits = data[offset + lane / lanesPerInt] >>> ((lane % lanesPerInt) * laneBits);
+            if((bits & ((1 << laneBits) - 1)) == value) {
+                return lane;
+            }
+        }
+        return -1;
+    }
+}